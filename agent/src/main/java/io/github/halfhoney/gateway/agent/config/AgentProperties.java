@@ -1,9 +1,12 @@
 package io.github.halfhoney.gateway.agent.config;
 
+import com.achance.gateway.common.health.CircuitBreaker;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -12,15 +15,57 @@ public class AgentProperties {
     /** 唯一客户端ID（用于注册到网关） */
     private String clientId = "client-001";
 
-    /** 网关 RSocket WebSocket 地址，如 ws://localhost:9000/rsocket */
+    /**
+     * 网关 RSocket 地址，scheme 决定传输：ws://localhost:9000/rsocket 为 WebSocket（可经 HTTP 反向代理），
+     * tcp://localhost:7000 为直连网关 TCP 监听（需网关开启 gateway.proxy.tcp）
+     */
     private String gatewayUrl = "ws://localhost:9000/rsocket";
 
+    /** 是否优先使用 Netty 原生传输（Linux 上为 epoll，不可用时自动回退），关闭后固定使用 NIO */
+    private boolean nativeTransport = true;
+
+    /** 同时连接并注册的其他网关节点（集群部署时用于故障转移），每个地址同样建立 connections 条连接 */
+    private List<String> additionalGatewayUrls = List.of();
+
     /** 本地目标基础URL（Agent 将把请求转发到这里） */
     private String targetBaseUrl = "http://127.0.0.1:9000";
 
+    /** 与网关建立的并行连接数，网关按在途请求数在连接间分发 */
+    private int connections = 1;
+
     /** 默认超时（毫秒） */
     private int defaultTimeoutMs = 30_000;
 
+    /** 与网关之间的 data 编解码：binary（紧凑二进制，带静态头部表；网关拒绝时依次回退为不带头部表的二进制、json）或 json */
+    private String codec = "binary";
+
+    /** 流式转发时向网关/下游请求的分块窗口（背压） */
+    private int streamPrefetch = 32;
+
+    /** 下游 HTTP 连接池：每个 targetBaseUrl 一个 WebClient 与连接池，targets 中可按地址单独覆盖 */
+    private Upstream upstream = new Upstream();
+
+    /** RSocket lease：由 Agent 按下游负载向网关发放请求许可，默认关闭（需网关 lease-enabled） */
+    private Lease lease = new Lease();
+
+    /** RSocket 会话恢复：断线后以原会话重连，在途请求不失败，默认关闭（需网关 resume.enabled） */
+    private Resume resume = new Resume();
+
+    /** 优先级通道：connections 条默认连接为 interactive 通道，可另建 bulk 通道连接承载大传输（需网关配置通道规则） */
+    private Lanes lanes = new Lanes();
+
+    /** 隧道内响应体压缩：网关声明可解码时按阈值与内容类型以 deflate 压缩，默认关闭 */
+    private Compression compression = new Compression();
+
+    /** 按 targetBaseUrl 的熔断与主动健康检查，打开时本地快速失败并上报网关，默认关闭 */
+    private Breaker circuitBreaker = new Breaker();
+
+    /** WebSocket 转发：每个会话一条独立的上游连接 */
+    private WebSocket websocket = new WebSocket();
+
+    /** 进程级在途字节预算：缓冲模式的请求/响应体在持有期间记账，预算不足时排队，超时回 503 */
+    private Memory memory = new Memory();
+
     /** 可选的前缀路由映射，优先匹配。按顺序匹配第一个前缀。 */
     private List<Route> routes;
 
@@ -32,4 +77,119 @@ public class AgentProperties {
         /** 命中的目标基础URL，例如 http://127.0.0.1:7001 */
         private String targetBaseUrl;
     }
+
+    @Getter
+    @Setter
+    public static class Lease {
+        private boolean enabled = false;
+        /** 期望的最大并发（所有连接合计） */
+        private int maxConcurrency = 64;
+        /** 每个租约的有效期（毫秒），按此周期重新计算并发放 */
+        private long ttlMs = 1_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Resume {
+        private boolean enabled = false;
+        /** 断线后尝试恢复会话的时长（毫秒），超过后放弃并重新建立连接、重新注册 */
+        private long sessionDurationMs = 30_000;
+        /** 每条连接缓存的未确认帧上限（字节），断线期间超出时恢复失败并退化为重新连接 */
+        private int bufferBytes = 4 * 1024 * 1024;
+    }
+
+    @Getter
+    @Setter
+    public static class Lanes {
+        /** interactive 通道的 RSocket 分片大小（字节），大于该值的帧被拆分，0 表示不分片 */
+        private int interactiveMtu = 0;
+        /** 每个网关地址额外建立的 bulk 通道连接数，0 表示不区分通道 */
+        private int bulkConnections = 0;
+        /** bulk 通道的 RSocket 分片大小（字节），0 表示不分片 */
+        private int bulkMtu = 0;
+    }
+
+    @Getter
+    @Setter
+    public static class Compression {
+        private boolean enabled = false;
+        /** 压缩阈值（字节）：缓冲模式按响应体大小，流式按 Content-Length 判断，未知长度的流式响应一律压缩 */
+        private int minBytes = 8 * 1024;
+        /** deflate 级别 1-9，1 最快；隧道压缩以延迟为先 */
+        private int level = 1;
+    }
+
+    @Getter
+    @Setter
+    public static class WebSocket {
+        /** 上游单条消息（含分片聚合后）的最大字节数，超出时关闭会话 */
+        private int maxFramePayloadBytes = 1024 * 1024;
+    }
+
+    @Getter
+    @Setter
+    public static class Memory {
+        private boolean enabled = true;
+        /** 在途字节预算，0 表示取最大堆的 25% */
+        private long maxBytes = 0;
+        /** 上游响应体等待预算的最长时间（毫秒，同时受请求超时约束） */
+        private long maxWaitMs = 1_000;
+        /** 预算不足回 503 时的 Retry-After（秒） */
+        private int retryAfterSeconds = 1;
+    }
+
+    /** 阈值与时长见 {@link CircuitBreaker.Settings}，每个目标一个熔断器 */
+    @Getter
+    @Setter
+    public static class Breaker extends CircuitBreaker.Settings {
+        private boolean enabled = false;
+        /** 记为失败的上游状态码；连接失败与超时始终记为失败 */
+        private List<Integer> failureStatuses = List.of(502, 503, 504);
+        private HealthCheck healthCheck = new HealthCheck();
+    }
+
+    @Getter
+    @Setter
+    public static class HealthCheck {
+        /** 主动检查的路径（GET，状态码小于 500 为健康），为空则不检查 */
+        private String path;
+        private long intervalMs = 5_000;
+        private long timeoutMs = 2_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Upstream {
+        /** 每个目标的最大连接数 */
+        private int maxConnections = 200;
+        /** 连接最大空闲时间（毫秒），超过后关闭 */
+        private long maxIdleTimeMs = 60_000;
+        /** 连接最大存活时间（毫秒），0 为不限制 */
+        private long maxLifeTimeMs = 0;
+        /** 等待获取连接的最大排队数 */
+        private int pendingAcquireMaxCount = 1_000;
+        /** 等待获取连接的超时（毫秒） */
+        private long pendingAcquireTimeoutMs = 10_000;
+        /** 是否启用 HTTP/2（https 协商 h2，http 直接使用 h2c），不支持的目标请保持关闭 */
+        private boolean http2 = false;
+        /** 是否复用连接（keep-alive） */
+        private boolean keepAlive = true;
+        /** 目标闲置（无请求）超过该时间（毫秒）后回收其 WebClient 与连接池，0 为不回收 */
+        private long evictIdleTargetMs = 600_000;
+        /** 按 targetBaseUrl 覆盖，key 含 : / 时需写成 "[http://127.0.0.1:7001]" */
+        private Map<String, Target> targets = new LinkedHashMap<>();
+    }
+
+    @Getter
+    @Setter
+    public static class Target {
+        /** 不配置则沿用 upstream 中的同名配置 */
+        private Integer maxConnections;
+        private Long maxIdleTimeMs;
+        private Long maxLifeTimeMs;
+        private Integer pendingAcquireMaxCount;
+        private Long pendingAcquireTimeoutMs;
+        private Boolean http2;
+        private Boolean keepAlive;
+    }
 }
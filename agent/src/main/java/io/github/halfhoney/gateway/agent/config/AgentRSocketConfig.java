@@ -1,20 +1,36 @@
 package io.github.halfhoney.gateway.agent.config;
 
+import com.achance.gateway.common.codec.ProxyBinaryDecoder;
+import com.achance.gateway.common.codec.ProxyBinaryEncoder;
+import com.achance.gateway.common.codec.ProxyWireFormat;
+import com.achance.gateway.common.dto.Lane;
+import com.achance.gateway.common.transport.TunnelTransports;
 import io.github.halfhoney.gateway.agent.rsocket.AgentHandler;
+import io.github.halfhoney.gateway.agent.rsocket.AgentLeaseSender;
+import io.github.halfhoney.gateway.agent.upstream.UpstreamClients;
+import io.rsocket.core.Resume;
+import io.rsocket.exceptions.InvalidSetupException;
+import io.rsocket.exceptions.RejectedSetupException;
+import io.rsocket.exceptions.UnsupportedSetupException;
+import io.rsocket.resume.InMemoryResumableFramesStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.rsocket.messaging.RSocketStrategiesCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.messaging.rsocket.RSocketStrategies;
 import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.util.MimeType;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import io.rsocket.metadata.WellKnownMimeType;
 import org.springframework.util.MimeTypeUtils;
 import reactor.core.publisher.Mono;
+import reactor.netty.resources.LoopResources;
 import reactor.util.retry.Retry;
 
 @Configuration
@@ -22,13 +38,37 @@ public class AgentRSocketConfig {
 
     private static final Logger log = LoggerFactory.getLogger(AgentRSocketConfig.class);
 
+    /** 当前连接使用的 data MimeType；网关拒绝时依次回退：二进制格式 2 -> 二进制格式 1 -> JSON */
+    private volatile MimeType dataMimeType = MimeTypeUtils.APPLICATION_JSON;
+
+    /** 是否以 lease 模式连接；网关不支持时关闭，网关要求时开启 */
+    private volatile boolean leaseEnabled;
+
+    /** 是否请求会话恢复；网关不支持时关闭 */
+    private volatile boolean resumeEnabled;
+
+    private AgentLeaseSender leaseSender;
+
+    @Bean
+    public RSocketStrategiesCustomizer proxyBinaryCodecCustomizer() {
+        return strategies -> strategies
+                .encoder(new ProxyBinaryEncoder())
+                .decoder(new ProxyBinaryDecoder());
+    }
+
     @Bean
     public RSocketRequester rSocketRequester(RSocketRequester.Builder builder,
                                              RSocketStrategies strategies,
                                              AgentProperties props,
-                                             AgentHandler agentHandler) {
+                                             AgentHandler agentHandler,
+                                             UpstreamClients upstreams) {
         var uri = UriComponentsBuilder.fromUriString(props.getGatewayUrl()).build().toUri();
-        log.info("Connecting RSocket to {} ...", uri);
+        dataMimeType = "json".equalsIgnoreCase(props.getCodec()) ? MimeTypeUtils.APPLICATION_JSON : ProxyWireFormat.MIME_TYPE_HEADER_TABLE;
+        leaseEnabled = props.getLease().isEnabled();
+        resumeEnabled = props.getResume().isEnabled();
+        leaseSender = new AgentLeaseSender(props, upstreams);
+        log.info("Connecting RSocket to {} (dataMimeType={}, lease={}, resume={}, nativeTransport={}) ...",
+                uri, dataMimeType, leaseEnabled, resumeEnabled, props.isNativeTransport() && LoopResources.hasNativeSupport());
 
         // Configure client-side responder so gateway can invoke @MessageMapping on Agent
         RSocketMessageHandler messageHandler = new RSocketMessageHandler();
@@ -44,26 +84,77 @@ public class AgentRSocketConfig {
             log.debug("RSocket handler destinations mapped: {}", keys);
         }
 
-        RSocketRequester requester = connect(builder, strategies, messageHandler, uri)
+        RSocketRequester requester = connect(builder, strategies, messageHandler, uri, Lane.INTERACTIVE, props)
                 .doOnSuccess(r -> log.info("RSocket connected to {}", uri))
                 .block();
 
         if (requester != null) {
-            attachOnClose(requester, builder, strategies, messageHandler, uri, props);
+            attachOnClose(requester, builder, strategies, messageHandler, uri, Lane.INTERACTIVE, props);
+        }
+        // 额外的并行连接、bulk 通道连接及其他网关节点的连接在后台建立并各自注册/重连；主连接由 AgentRegisterRunner 注册
+        List<java.net.URI> uris = new ArrayList<>();
+        uris.add(uri);
+        for (String url : props.getAdditionalGatewayUrls()) {
+            uris.add(UriComponentsBuilder.fromUriString(url.trim()).build().toUri());
+        }
+        for (java.net.URI target : uris) {
+            for (int i = target == uri ? 1 : 0; i < props.getConnections(); i++) {
+                connectExtra(builder, strategies, messageHandler, target, Lane.INTERACTIVE, i, props);
+            }
+            for (int i = 0; i < props.getLanes().getBulkConnections(); i++) {
+                connectExtra(builder, strategies, messageHandler, target, Lane.BULK, i, props);
+            }
         }
         return requester;
     }
 
+    private void connectExtra(RSocketRequester.Builder builder,
+                              RSocketStrategies strategies,
+                              RSocketMessageHandler messageHandler,
+                              java.net.URI target,
+                              Lane lane,
+                              int index,
+                              AgentProperties props) {
+        connect(builder, strategies, messageHandler, target, lane, props)
+                .subscribe(extra -> {
+                    log.info("RSocket extra {} connection #{} connected to {}", lane.wireName(), index, target);
+                    register(extra, lane, props);
+                    attachOnClose(extra, builder, strategies, messageHandler, target, lane, props);
+                });
+    }
+
+    private void register(RSocketRequester requester, Lane lane, AgentProperties props) {
+        requester.route(lane.registerRoute()).data(props.getClientId()).send()
+                .doOnSuccess(v -> log.info("Re-register sent successfully: clientId={}, lane={}", props.getClientId(), lane.wireName()))
+                .doOnError(ex -> log.error("Re-register failed: clientId={}, lane={}, err={}", props.getClientId(), lane.wireName(), ex.toString()))
+                .subscribe(null, ex -> { });
+    }
+
     private Mono<RSocketRequester> connect(RSocketRequester.Builder builder,
                                            RSocketStrategies strategies,
                                            RSocketMessageHandler messageHandler,
-                                           java.net.URI uri) {
-        return builder
-                .dataMimeType(MimeTypeUtils.APPLICATION_JSON)
-                .metadataMimeType(MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_ROUTING.getString()))
-                .rsocketStrategies(strategies)
-                .rsocketConnector(connector -> connector.acceptor(messageHandler.responder()))
-                .connectWebSocket(uri)
+                                           java.net.URI uri,
+                                           Lane lane,
+                                           AgentProperties props) {
+        int mtu = lane == Lane.BULK ? props.getLanes().getBulkMtu() : props.getLanes().getInteractiveMtu();
+        return Mono.defer(() -> builder
+                        .dataMimeType(dataMimeType)
+                        .metadataMimeType(MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_ROUTING.getString()))
+                        .rsocketStrategies(strategies)
+                        .rsocketConnector(connector -> {
+                            connector.acceptor(messageHandler.responder());
+                            if (leaseEnabled) {
+                                connector.lease(spec -> spec.sender(leaseSender));
+                            }
+                            if (resumeEnabled) {
+                                connector.resume(resume(props.getResume(), uri));
+                            }
+                            // 分片只作用于本端发出的帧（响应体），较小的分片让同一连接上的其他流可以穿插发送
+                            if (mtu > 0) {
+                                connector.fragment(mtu);
+                            }
+                        })
+                        .connect(TunnelTransports.client(uri, props.isNativeTransport())))
                 .doOnSubscribe(s -> log.debug("RSocket connect subscribe -> {}", uri))
                 .doOnError(ex -> log.error("RSocket connect failed to {}: {}", uri, ex.toString()))
                 .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
@@ -73,28 +164,72 @@ public class AgentRSocketConfig {
                                 rs.totalRetries() + 1, uri, rs.failure().toString())));
     }
 
+    /**
+     * 会话恢复：传输断开后按退避重连并发送 RESUME，双方重发对端未确认的帧，期间 requester 与在途请求保持不变，
+     * 也无需重新注册；恢复失败（会话过期、缓存溢出）时 requester 关闭，由 attachOnClose 重新建立连接。
+     */
+    private Resume resume(AgentProperties.Resume props, java.net.URI uri) {
+        return new Resume()
+                .sessionDuration(Duration.ofMillis(props.getSessionDurationMs()))
+                .storeFactory(token -> new InMemoryResumableFramesStore("client", token, props.getBufferBytes()))
+                .retry(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(200))
+                        .maxBackoff(Duration.ofSeconds(5))
+                        .doBeforeRetry(rs -> log.warn("RSocket resume attempt #{} to {} (reason: {})",
+                                rs.totalRetries() + 1, uri, rs.failure().toString())));
+    }
+
     private void attachOnClose(RSocketRequester req,
                                RSocketRequester.Builder builder,
                                RSocketStrategies strategies,
                                RSocketMessageHandler messageHandler,
                                java.net.URI uri,
+                               Lane lane,
                                AgentProperties props) {
         req.rsocket().onClose()
                 .doFirst(() -> log.debug("onClose subscribed for {}", uri))
                 .doFinally(signal -> {
-                    log.warn("RSocket disconnected from {}: signal={}", uri, signal);
-                    connect(builder, strategies, messageHandler, uri)
+                    log.warn("RSocket {} connection disconnected from {}: signal={}", lane.wireName(), uri, signal);
+                    connect(builder, strategies, messageHandler, uri, lane, props)
                             .doOnSuccess(newReq -> {
-                                log.info("RSocket reconnected to {}", uri);
-                                newReq.route("register").data(props.getClientId()).send()
-                                        .doOnSuccess(v -> log.info("Re-register sent successfully: clientId={}", props.getClientId()))
-                                        .doOnError(ex -> log.error("Re-register failed: clientId={}, err={}", props.getClientId(), ex.toString()))
-                                        .subscribe();
+                                log.info("RSocket {} connection reconnected to {}", lane.wireName(), uri);
+                                register(newReq, lane, props);
                                 // recursively attach for subsequent disconnects
-                                attachOnClose(newReq, builder, strategies, messageHandler, uri, props);
+                                attachOnClose(newReq, builder, strategies, messageHandler, uri, lane, props);
                             })
                             .subscribe();
                 })
+                .onErrorResume(ex -> {
+                    // 网关未开启 lease 时以 InvalidSetupException 拒绝 SETUP，下次重连关闭 lease
+                    if (ex instanceof InvalidSetupException && leaseEnabled
+                            && ex.getMessage() != null && ex.getMessage().contains("lease")) {
+                        log.warn("Gateway does not support lease ({}), reconnecting without lease", ex.getMessage());
+                        leaseEnabled = false;
+                        return Mono.empty();
+                    }
+                    // 网关未开启 resume 时以 UnsupportedSetupException 拒绝带恢复令牌的 SETUP，下次重连不再请求恢复
+                    if (ex instanceof UnsupportedSetupException && resumeEnabled
+                            && ex.getMessage() != null && ex.getMessage().contains("resume")) {
+                        log.warn("Gateway does not support resume ({}), reconnecting without resume", ex.getMessage());
+                        resumeEnabled = false;
+                        return Mono.empty();
+                    }
+                    // 网关开启 lease 时拒绝未声明 lease 的 SETUP，下次重连开启 lease
+                    if (ex instanceof RejectedSetupException && !leaseEnabled
+                            && ex.getMessage() != null && ex.getMessage().contains("lease required")) {
+                        log.warn("Gateway requires lease ({}), reconnecting with lease", ex.getMessage());
+                        leaseEnabled = true;
+                        return Mono.empty();
+                    }
+                    // 网关不支持当前编解码时拒绝 SETUP，下次重连回退一级（旧网关只认格式 1 或只认 JSON）
+                    if (ex instanceof RejectedSetupException && !MimeTypeUtils.APPLICATION_JSON.equals(dataMimeType)) {
+                        MimeType fallback = ProxyWireFormat.usesHeaderTable(dataMimeType)
+                                ? ProxyWireFormat.MIME_TYPE : MimeTypeUtils.APPLICATION_JSON;
+                        log.warn("Gateway rejected dataMimeType={} ({}), falling back to {}",
+                                dataMimeType, ex.getMessage(), fallback);
+                        dataMimeType = fallback;
+                    }
+                    return Mono.empty();
+                })
                 .subscribe();
     }
 }
@@ -1,35 +1,69 @@
 package io.github.halfhoney.gateway.agent.rsocket;
 
+import com.achance.gateway.common.codec.BodyCompression;
+import com.achance.gateway.common.dto.ProxyHeaders;
 import com.achance.gateway.common.dto.ProxyRequest;
 import com.achance.gateway.common.dto.ProxyResponse;
+import com.achance.gateway.common.health.UpstreamHealth;
+import com.achance.gateway.common.memory.MemoryBudget;
+import com.achance.gateway.common.stream.ProxyFrames;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.github.halfhoney.gateway.agent.config.AgentProperties;
+import io.github.halfhoney.gateway.agent.support.AgentMemoryBudget;
+import io.github.halfhoney.gateway.agent.upstream.UpstreamCircuitBreakers;
+import io.github.halfhoney.gateway.agent.upstream.UpstreamClients;
+import io.github.halfhoney.gateway.agent.upstream.UpstreamWebSockets;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Base64;
-import java.util.Map;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Controller
 public class AgentHandler {
 
     private static final Logger log = LoggerFactory.getLogger(AgentHandler.class);
-    private final WebClient.Builder webClientBuilder;
+    private final UpstreamClients upstreams;
+    private final UpstreamCircuitBreakers breakers;
+    private final UpstreamWebSockets webSockets;
     private final AgentProperties props;
+    private final AgentMemoryBudget memory;
+    /** agent.proxy.upstream{target,method,status}：缓冲模式为完整响应耗时，流式为首字节耗时 */
+    private final Meter.MeterProvider<Timer> upstreamTimer;
 
-    public AgentHandler(WebClient.Builder webClientBuilder, AgentProperties props) {
-        this.webClientBuilder = webClientBuilder;
+    public AgentHandler(UpstreamClients upstreams, UpstreamCircuitBreakers breakers, UpstreamWebSockets webSockets,
+                        AgentProperties props, AgentMemoryBudget memory, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.upstreams = upstreams;
+        this.breakers = breakers;
+        this.webSockets = webSockets;
         this.props = props;
+        this.memory = memory;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        this.upstreamTimer = registry != null
+                ? Timer.builder("agent.proxy.upstream").description("Local upstream HTTP latency").withRegistry(registry)
+                : null;
     }
 
     @MessageMapping("agent.proxy.request")
     public Mono<ProxyResponse> handle(ProxyRequest req) {
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         String method = req.getMethod();
         String path = req.getPath();
         log.debug("Agent handle -> method={}, path={}, reqId={}", method, path, req.getRequestId());
@@ -38,70 +72,324 @@ public class AgentHandler {
         String baseUrl = req.getTargetBaseUrl();
         if (baseUrl == null || baseUrl.isBlank()) {
             log.warn("Missing targetBaseUrl from gateway for reqId={}, path={}", req.getRequestId(), path);
-            ProxyResponse resp = new ProxyResponse();
-            resp.setRequestId(req.getRequestId());
-            resp.setStatus(502);
-            ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
-            err.setCode("TARGET_NOT_RESOLVED");
-            err.setMessage("No targetBaseUrl provided by gateway");
-            resp.setError(err);
-            return Mono.just(resp);
+            return Mono.just(targetNotResolved(req));
         }
-        WebClient client = webClientBuilder.baseUrl(baseUrl).build();
-        WebClient.RequestBodySpec spec = client.method(HttpMethod.valueOf(method))
-                .uri(uriBuilder -> uriBuilder.path(path).build());
-        if (req.getHeaders() != null) {
-            for (Map.Entry<String, String> e : req.getHeaders().entrySet()) {
-                spec.header(e.getKey(), e.getValue());
-            }
+        UpstreamCircuitBreakers.Call call = breakers.tryAcquire(baseUrl);
+        if (call == null) {
+            log.debug("Local HTTP rejected by open circuit <- {} {}, target={}, reqId={}", method, path, baseUrl, req.getRequestId());
+            return Mono.just(circuitOpen(req, baseUrl));
         }
-        Mono<byte[]> bodyMono = Mono.justOrEmpty(req.getBodyBase64())
-                .map(s -> Base64.getDecoder().decode(s));
-
+        int timeout = timeoutMs(req);
+        // 网关下发的请求体已在内存中，上游调用期间一直记账
+        MemoryBudget.Lease held = memory.hold(req.getBody() != null ? req.getBody().length : 0);
         // 透明透传：使用 exchangeToMono 获取状态码与头部，无论 2xx/4xx/5xx 都构造 ProxyResponse
-        Mono<ProxyResponse> respMono = ((req.getBodyBase64() != null)
-                ? spec.body(BodyInserters.fromPublisher(bodyMono, byte[].class))
-                : spec)
-                .exchangeToMono(clientResp -> clientResp
-                        .bodyToMono(byte[].class)
-                        .defaultIfEmpty(new byte[0])
-                        .map(bytes -> {
-                            long cost = System.currentTimeMillis() - start;
-                            int status = clientResp.rawStatusCode();
-                            log.info("Local HTTP response <- {} {}, status={}, bytes={}, cost={}ms, reqId={}",
-                                    method, path, status, bytes.length, cost, req.getRequestId());
-                            ProxyResponse resp = new ProxyResponse();
-                            resp.setRequestId(req.getRequestId());
-                            resp.setStatus(status);
-                            // 拷贝下游响应头
-                            Map<String, String> hdrs = new java.util.HashMap<>();
-                            clientResp.headers().asHttpHeaders().forEach((k, v) -> hdrs.put(k, String.join(",", v)));
-                            resp.setHeaders(hdrs);
-                            if (bytes.length > 0) {
-                                resp.setBodyBase64(Base64.getEncoder().encodeToString(bytes));
-                            }
-                            return resp;
-                        })
-                );
-
-        int timeout = (req.getTimeoutMs() != null && req.getTimeoutMs() > 0) ? req.getTimeoutMs() : props.getDefaultTimeoutMs();
+        Mono<ProxyResponse> respMono = upstreams.mono(baseUrl, client -> {
+            WebClient.RequestBodySpec spec = buildRequest(client, req);
+            return ((req.getBody() != null)
+                    ? spec.bodyValue(req.getBody())
+                    : spec)
+                    .exchangeToMono(clientResp -> {
+                        // 读取响应体之前按声明长度预留；预算不足时不读取，由 exchangeToMono 释放连接上的响应体
+                        long declared = Math.max(0, clientResp.headers().contentLength().orElse(0));
+                        return memory.reserve(declared, Duration.ofMillis(timeout))
+                                .flatMap(lease -> readBody(clientResp, req, baseUrl, start, lease, declared)
+                                        .doFinally(s -> lease.close()))
+                                .switchIfEmpty(Mono.fromSupplier(() -> {
+                                    int status = clientResp.statusCode().value();
+                                    record(baseUrl, method, status, start);
+                                    call.complete(status);
+                                    log.warn("Local HTTP response dropped, memory budget exhausted <- {} {}, status={}, contentLength={}, reqId={}",
+                                            method, path, status, declared, req.getRequestId());
+                                    return memoryExhausted(req);
+                                }));
+                    });
+        });
 
+        // 网关下发的是剩余预算；超时或网关取消（调用方断开/网关超时）都会取消 exchange，由连接池关闭该上游连接
         return respMono
+                .timeout(Duration.ofMillis(timeout))
                 .doOnSubscribe(s -> log.debug("Local HTTP dispatch -> {} {}", method, path))
+                .doOnCancel(() -> log.debug("Local HTTP cancelled by gateway <- {} {}, reqId={}", method, path, req.getRequestId()))
+                .onErrorResume(TimeoutException.class, ex -> {
+                    log.warn("Local HTTP timeout <- {} {}, timeoutMs={}, reqId={}", method, path, timeout, req.getRequestId());
+                    return Mono.just(upstreamTimeout(req, timeout));
+                })
                 .onErrorResume(ex -> {
-                    long cost = System.currentTimeMillis() - start;
+                    long cost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
                     log.error("Local HTTP transport error <- {} {}, cost={}ms, reqId={}, err={}",
                             method, path, cost, req.getRequestId(), ex.toString());
-                    ProxyResponse resp = new ProxyResponse();
-                    resp.setRequestId(req.getRequestId());
-                    resp.setStatus(502);
-                    ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
-                    err.setCode("DOWNSTREAM_UNAVAILABLE");
-                    err.setMessage(ex.getMessage());
-                    resp.setError(err);
-                    return Mono.just(resp);
+                    return Mono.just(downstreamUnavailable(req, ex));
+                })
+                .doOnNext(call::complete)
+                .doFinally(s -> {
+                    call.ignore();
+                    held.close();
+                });
+    }
+
+    /** 读取缓冲的上游响应体并构造 ProxyResponse；未声明长度的响应体读取后补记 */
+    private Mono<ProxyResponse> readBody(ClientResponse clientResp, ProxyRequest req, String baseUrl, long start,
+                                         MemoryBudget.Lease lease, long declared) {
+        String method = req.getMethod();
+        String path = req.getPath();
+        return clientResp.bodyToMono(byte[].class)
+                .defaultIfEmpty(new byte[0])
+                .map(bytes -> {
+                    lease.add(bytes.length - declared);
+                    int status = clientResp.rawStatusCode();
+                    int cost = record(baseUrl, method, status, start);
+                    log.debug("Local HTTP response <- {} {}, status={}, bytes={}, cost={}ms, reqId={}",
+                            method, path, status, bytes.length, cost, req.getRequestId());
+                    ProxyResponse resp = responseHeader(req, status, clientResp.headers().asHttpHeaders());
+                    resp.setUpstreamMs(cost);
+                    if (bytes.length > 0) {
+                        if (shouldCompress(req, status, resp.getHeaders(), bytes.length)) {
+                            resp.setBody(BodyCompression.deflate(bytes, props.getCompression().getLevel()));
+                            resp.setBodyEncoding(BodyCompression.DEFLATE);
+                        } else {
+                            resp.setBody(bytes);
+                        }
+                    }
+                    return resp;
                 });
     }
 
+    /**
+     * 流式转发：首帧为 ProxyRequest 头部，其后为请求体分块；
+     * 回写首帧 ProxyResponse 头部（状态码/响应头），随后逐块透传下游响应体，不做整体缓冲。
+     */
+    @MessageMapping(ProxyFrames.STREAM_ROUTE)
+    public Flux<DataBuffer> stream(Flux<DataBuffer> frames, RSocketRequester requester) {
+        return ProxyFrames.splitHeader(frames,
+                head -> ProxyFrames.decode(requester.strategies(), requester.dataMimeType(), head, ProxyRequest.class),
+                (req, body) -> forwardStream(req, body, requester));
+    }
+
+    private Flux<DataBuffer> forwardStream(ProxyRequest req, Flux<DataBuffer> body, RSocketRequester requester) {
+        long start = System.nanoTime();
+        String method = req.getMethod();
+        String path = req.getPath();
+        log.debug("Agent stream -> method={}, path={}, reqId={}", method, path, req.getRequestId());
+
+        String baseUrl = req.getTargetBaseUrl();
+        if (baseUrl == null || baseUrl.isBlank()) {
+            log.warn("Missing targetBaseUrl from gateway for reqId={}, path={}", req.getRequestId(), path);
+            return body.doOnNext(DataBufferUtils::release)
+                    .thenMany(Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), targetNotResolved(req))));
+        }
+        UpstreamCircuitBreakers.Call call = breakers.tryAcquire(baseUrl);
+        if (call == null) {
+            log.debug("Local HTTP stream rejected by open circuit <- {} {}, target={}, reqId={}", method, path, baseUrl, req.getRequestId());
+            return body.doOnNext(DataBufferUtils::release)
+                    .thenMany(Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), circuitOpen(req, baseUrl))));
+        }
+        // 未声明请求体时仍需排空并释放入站分块，使 channel 的入站方向正常结束
+        Mono<Void> drain = req.isStreamBody() ? Mono.empty() : body.doOnNext(DataBufferUtils::release).then();
+
+        AtomicBoolean headerSent = new AtomicBoolean();
+        int timeout = timeoutMs(req);
+        return drain.thenMany(upstreams.flux(baseUrl, client -> {
+                    WebClient.RequestBodySpec spec = buildRequest(client, req);
+                    WebClient.RequestHeadersSpec<?> withBody = req.isStreamBody()
+                            ? spec.body(BodyInserters.fromDataBuffers(body.limitRate(props.getStreamPrefetch())))
+                            : spec;
+                    return withBody.exchangeToFlux(clientResp -> {
+                        int status = clientResp.statusCode().value();
+                        int ttfb = record(baseUrl, method, status, start);
+                        call.complete(status);
+                        log.debug("Local HTTP stream response <- {} {}, status={}, ttfb={}ms, reqId={}",
+                                method, path, status, ttfb, req.getRequestId());
+                        ProxyResponse head = responseHeader(req, status, clientResp.headers().asHttpHeaders());
+                        head.setUpstreamMs(ttfb);
+                        Flux<DataBuffer> respBody = clientResp.bodyToFlux(DataBuffer.class).limitRate(props.getStreamPrefetch());
+                        long length = clientResp.headers().contentLength().orElse(-1);
+                        if (shouldCompress(req, status, head.getHeaders(), length < 0 ? Long.MAX_VALUE : length)) {
+                            head.setBodyEncoding(BodyCompression.DEFLATE);
+                            respBody = BodyCompression.deflate(respBody, props.getCompression().getLevel(), requester.strategies().dataBufferFactory());
+                        }
+                        return Flux.concat(
+                                Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), head)).doOnNext(b -> headerSent.set(true)),
+                                respBody);
+                    });
+                })
+                // 截止时间只约束到响应头（首帧）为止，响应体按背压持续透传
+                .timeout(Mono.delay(Duration.ofMillis(timeout)), first -> Mono.never())
+                .doOnSubscribe(s -> log.debug("Local HTTP stream dispatch -> {} {}", method, path))
+                .doOnCancel(() -> log.debug("Local HTTP stream cancelled by gateway <- {} {}, reqId={}", method, path, req.getRequestId()))
+                .onErrorResume(ex -> !headerSent.get(), ex -> {
+                    call.failure();
+                    if (ex instanceof TimeoutException) {
+                        log.warn("Local HTTP stream timeout <- {} {}, timeoutMs={}, reqId={}", method, path, timeout, req.getRequestId());
+                        return Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), upstreamTimeout(req, timeout)));
+                    }
+                    long cost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    log.error("Local HTTP stream transport error <- {} {}, cost={}ms, reqId={}, err={}",
+                            method, path, cost, req.getRequestId(), ex.toString());
+                    return Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), downstreamUnavailable(req, ex)));
+                })
+                .doFinally(s -> call.ignore()));
+    }
+
+    /**
+     * WebSocket 转发：首帧为 ProxyRequest 头部，其后为调用方消息；上游握手成功后回写 101 头部，随后逐条透传上游消息。
+     * 上游拒绝握手时回写其状态码，连接失败 502、握手超时 504；熔断与 agent.proxy.upstream 只统计握手。
+     */
+    @MessageMapping(ProxyFrames.WEBSOCKET_ROUTE)
+    public Flux<DataBuffer> websocket(Flux<DataBuffer> frames, RSocketRequester requester) {
+        return ProxyFrames.splitHeader(frames,
+                head -> ProxyFrames.decode(requester.strategies(), requester.dataMimeType(), head, ProxyRequest.class),
+                (req, messages) -> forwardWebSocket(req, messages, requester));
+    }
+
+    private Flux<DataBuffer> forwardWebSocket(ProxyRequest req, Flux<DataBuffer> messages, RSocketRequester requester) {
+        long start = System.nanoTime();
+        String path = req.getPath();
+        log.debug("Agent websocket -> path={}, reqId={}", path, req.getRequestId());
+
+        String baseUrl = req.getTargetBaseUrl();
+        if (baseUrl == null || baseUrl.isBlank()) {
+            log.warn("Missing targetBaseUrl from gateway for reqId={}, path={}", req.getRequestId(), path);
+            return messages.doOnNext(DataBufferUtils::release)
+                    .thenMany(Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), targetNotResolved(req))));
+        }
+        UpstreamCircuitBreakers.Call call = breakers.tryAcquire(baseUrl);
+        if (call == null) {
+            log.debug("Local websocket rejected by open circuit <- {}, target={}, reqId={}", path, baseUrl, req.getRequestId());
+            return messages.doOnNext(DataBufferUtils::release)
+                    .thenMany(Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), circuitOpen(req, baseUrl))));
+        }
+        AtomicBoolean headerSent = new AtomicBoolean();
+        int timeout = timeoutMs(req);
+        return webSockets.connect(baseUrl, req, messages, requester.strategies().dataBufferFactory(), (status, headers) -> {
+                    int cost = record(baseUrl, req.getMethod(), status, start);
+                    call.complete(status);
+                    log.debug("Local websocket handshake <- {}, status={}, cost={}ms, reqId={}", path, status, cost, req.getRequestId());
+                    ProxyResponse head = responseHeader(req, status, headers);
+                    head.setUpstreamMs(cost);
+                    DataBuffer frame = ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), head);
+                    headerSent.set(true);
+                    return frame;
+                })
+                // 截止时间只约束到握手完成为止，会话期间不限时
+                .timeout(Mono.delay(Duration.ofMillis(timeout)), first -> Mono.never())
+                .doOnCancel(() -> log.debug("Local websocket cancelled by gateway <- {}, reqId={}", path, req.getRequestId()))
+                .onErrorResume(ex -> !headerSent.get(), ex -> {
+                    call.failure();
+                    if (ex instanceof TimeoutException) {
+                        log.warn("Local websocket handshake timeout <- {}, timeoutMs={}, reqId={}", path, timeout, req.getRequestId());
+                        return Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), upstreamTimeout(req, timeout)));
+                    }
+                    log.error("Local websocket transport error <- {}, reqId={}, err={}", path, req.getRequestId(), ex.toString());
+                    return Mono.fromCallable(() -> ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), downstreamUnavailable(req, ex)));
+                })
+                .doFinally(s -> call.ignore());
+    }
+
+    /** 网关在连接注册后订阅：先回当前熔断打开的目标，此后每次变化推送一份完整快照 */
+    @MessageMapping(UpstreamHealth.ROUTE)
+    public Flux<String> upstreamHealth() {
+        return breakers.snapshots();
+    }
+
+    /** 记录上游耗时并返回毫秒数，用于回传网关拆分隧道/上游延迟 */
+    private int record(String baseUrl, String method, int status, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        if (upstreamTimer != null) {
+            upstreamTimer.withTags("target", baseUrl, "method", method, "status", Integer.toString(status))
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+        return (int) TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /** 网关声明可解码、达到阈值且不是已压缩内容时压缩；无响应体的状态与 HEAD 不压缩 */
+    private boolean shouldCompress(ProxyRequest req, int status, ProxyHeaders headers, long bodyBytes) {
+        AgentProperties.Compression compression = props.getCompression();
+        return compression.isEnabled()
+                && BodyCompression.DEFLATE.equals(req.getAcceptBodyEncoding())
+                && bodyBytes >= compression.getMinBytes()
+                && status != 204 && status != 304 && !"HEAD".equals(req.getMethod())
+                && BodyCompression.isCompressible(headers.getFirst(HttpHeaders.CONTENT_TYPE), headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    private WebClient.RequestBodySpec buildRequest(WebClient client, ProxyRequest req) {
+        WebClient.RequestBodySpec spec = client.method(HttpMethod.valueOf(req.getMethod()))
+                .uri(uriBuilder -> uriBuilder.path(req.getPath()).build());
+        if (req.getHeaders() != null) {
+            req.getHeaders().forEach((name, value) -> spec.header(name, value));
+        }
+        return spec;
+    }
+
+    private ProxyResponse responseHeader(ProxyRequest req, int status, HttpHeaders upstreamHeaders) {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId(req.getRequestId());
+        resp.setStatus(status);
+        // 拷贝下游响应头，同名多值（Set-Cookie 等）逐条保留
+        resp.setHeaders(ProxyHeaders.fromHttpHeaders(upstreamHeaders));
+        return resp;
+    }
+
+    private ProxyResponse targetNotResolved(ProxyRequest req) {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId(req.getRequestId());
+        resp.setStatus(502);
+        ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
+        err.setCode("TARGET_NOT_RESOLVED");
+        err.setMessage("No targetBaseUrl provided by gateway");
+        resp.setError(err);
+        return resp;
+    }
+
+    private int timeoutMs(ProxyRequest req) {
+        return req.getTimeoutMs() != null && req.getTimeoutMs() > 0 ? req.getTimeoutMs() : props.getDefaultTimeoutMs();
+    }
+
+    private ProxyResponse upstreamTimeout(ProxyRequest req, int timeoutMs) {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId(req.getRequestId());
+        resp.setStatus(504);
+        ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
+        err.setCode("UPSTREAM_TIMEOUT");
+        err.setMessage("No upstream response within " + timeoutMs + "ms");
+        resp.setError(err);
+        return resp;
+    }
+
+    private ProxyResponse circuitOpen(ProxyRequest req, String baseUrl) {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId(req.getRequestId());
+        resp.setStatus(503);
+        long retryAfterSeconds = Math.max(1, (breakers.retryAfterMs(baseUrl) + 999) / 1000);
+        resp.setHeaders(ProxyHeaders.of(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds)));
+        ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
+        err.setCode("UPSTREAM_CIRCUIT_OPEN");
+        err.setMessage("Circuit breaker open for " + baseUrl);
+        resp.setError(err);
+        return resp;
+    }
+
+    private ProxyResponse memoryExhausted(ProxyRequest req) {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId(req.getRequestId());
+        resp.setStatus(503);
+        resp.setHeaders(ProxyHeaders.of(HttpHeaders.RETRY_AFTER, Integer.toString(memory.getRetryAfterSeconds())));
+        ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
+        err.setCode("AGENT_MEMORY_EXHAUSTED");
+        err.setMessage("Agent body byte budget exhausted");
+        resp.setError(err);
+        return resp;
+    }
+
+    private ProxyResponse downstreamUnavailable(ProxyRequest req, Throwable ex) {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId(req.getRequestId());
+        resp.setStatus(502);
+        ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
+        err.setCode("DOWNSTREAM_UNAVAILABLE");
+        err.setMessage(ex.getMessage());
+        resp.setError(err);
+        return resp;
+    }
+
     // 网关统一配置后，不再在 Agent 侧进行前缀路由匹配
 }
@@ -0,0 +1,46 @@
+package io.github.halfhoney.gateway.agent.rsocket;
+
+import io.github.halfhoney.gateway.agent.config.AgentProperties;
+import io.github.halfhoney.gateway.agent.upstream.UpstreamClients;
+import io.rsocket.lease.Lease;
+import io.rsocket.lease.LeaseSender;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+/**
+ * 单条连接的 lease 发放：每个 ttl 周期向网关发放一次请求许可。
+ * 许可数 = max-concurrency × max(1, ttl / 近期下游耗时) − 当前在途数，按连接数均分，至少为 1；
+ * 下游变慢时许可减少，网关超出许可的请求在网关侧排队或快速失败。
+ */
+public class AgentLeaseSender implements LeaseSender {
+
+    private final AgentProperties props;
+    private final UpstreamClients upstreams;
+
+    public AgentLeaseSender(AgentProperties props, UpstreamClients upstreams) {
+        this.props = props;
+        this.upstreams = upstreams;
+    }
+
+    @Override
+    public Flux<Lease> send() {
+        long ttlMs = props.getLease().getTtlMs();
+        // 有效期比发放周期长一半，避免新旧租约交替的间隙里请求因租约过期被拒
+        Duration leaseTtl = Duration.ofMillis(ttlMs + ttlMs / 2);
+        return Flux.interval(Duration.ZERO, Duration.ofMillis(ttlMs))
+                .map(tick -> Lease.create(leaseTtl, permits(ttlMs)))
+                .onBackpressureLatest();
+    }
+
+    int permits(long ttlMs) {
+        return permits(props.getLease().getMaxConcurrency(), ttlMs, upstreams.latencyMs(),
+                upstreams.inFlight(), Math.max(1, props.getConnections()));
+    }
+
+    static int permits(int maxConcurrency, long ttlMs, double latencyMs, int inFlight, int connections) {
+        double turnover = latencyMs > 0 ? Math.max(1.0, ttlMs / latencyMs) : 1.0;
+        long total = Math.round(maxConcurrency * turnover) - inFlight;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, total / connections));
+    }
+}
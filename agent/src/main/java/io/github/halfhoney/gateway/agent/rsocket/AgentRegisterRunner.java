@@ -1,5 +1,6 @@
 package io.github.halfhoney.gateway.agent.rsocket;
 
+import com.achance.gateway.common.dto.Lane;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.github.halfhoney.gateway.agent.config.AgentProperties;
@@ -23,10 +24,11 @@ public class AgentRegisterRunner implements CommandLineRunner {
     public void run(String... args) {
         String clientId = props.getClientId();
         log.info("Agent registering to gateway, clientId={}", clientId);
-        requester.route("register").data(clientId).send()
+        requester.route(Lane.REGISTER_ROUTE).data(clientId).send()
                 .doOnSubscribe(s -> log.debug("Send register started: clientId={}", clientId))
                 .doOnSuccess(v -> log.info("Register sent successfully: clientId={}", clientId))
                 .doOnError(ex -> log.error("Register send failed: clientId={}, err={}", clientId, ex.toString()))
-                .subscribe();
+                // 失败时由断线重连逻辑重新注册
+                .subscribe(null, ex -> { });
     }
 }
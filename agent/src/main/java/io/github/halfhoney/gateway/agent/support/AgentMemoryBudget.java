@@ -0,0 +1,78 @@
+package io.github.halfhoney.gateway.agent.support;
+
+import com.achance.gateway.common.memory.MemoryBudget;
+import io.github.halfhoney.gateway.agent.config.AgentProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Agent 的在途字节预算（缓冲模式）：网关下发的请求体在上游调用期间记账；上游响应体在读取之前按 Content-Length 预留，
+ * 预算不足时排队至多 memory.max-wait-ms，仍不足则不读取响应体、回 503（AGENT_MEMORY_EXHAUSTED）；未声明长度的响应体读取后补记。
+ * 流式与 WebSocket 转发按背压窗口持有分块，不经此记账。
+ * 指标：agent.proxy.memory.reserved / limit / waiting、agent.proxy.memory.rejected。
+ */
+@Component
+public class AgentMemoryBudget {
+
+    private static final String KEY = "agent";
+
+    private final AgentProperties.Memory config;
+    private final MemoryBudget budget = new MemoryBudget();
+    private final MemoryBudget untracked = new MemoryBudget();
+    private final Counter rejected;
+
+    public AgentMemoryBudget(AgentProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.config = props.getMemory();
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("agent.proxy.memory.reserved", budget, MemoryBudget::reserved)
+                    .description("Bytes of buffered proxy bodies currently held").baseUnit("bytes").register(registry);
+            Gauge.builder("agent.proxy.memory.limit", this, AgentMemoryBudget::limit)
+                    .description("In-flight body byte budget").baseUnit("bytes").register(registry);
+            Gauge.builder("agent.proxy.memory.waiting", budget, MemoryBudget::waiting)
+                    .description("Upstream responses waiting for body byte budget").register(registry);
+            this.rejected = Counter.builder("agent.proxy.memory.rejected")
+                    .description("Upstream responses dropped because the body byte budget was exhausted").register(registry);
+        } else {
+            this.rejected = null;
+        }
+    }
+
+    /** 预算总量：memory.max-bytes，未配置时为最大堆的 25% */
+    public long limit() {
+        return config.getMaxBytes() > 0 ? config.getMaxBytes() : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /** 为已在内存中的字节记账 */
+    public MemoryBudget.Lease hold(long bytes) {
+        return (config.isEnabled() ? budget : untracked).hold(KEY, bytes);
+    }
+
+    /** 预留 bytes，排队不超过 memory.max-wait-ms 与 maxWait 中较短者；仍不足时为空 */
+    public Mono<MemoryBudget.Lease> reserve(long bytes, Duration maxWait) {
+        if (!config.isEnabled()) {
+            return Mono.just(untracked.hold(KEY, 0));
+        }
+        long limit = limit();
+        // 单独超出总量的响应体永远无法预留，不必排队
+        Duration wait = bytes > limit ? Duration.ZERO : Duration.ofMillis(Math.min(config.getMaxWaitMs(), maxWait.toMillis()));
+        return budget.reserve(KEY, Math.max(0, bytes), limit, limit, wait)
+                .onErrorResume(TimeoutException.class, ex -> {
+                    if (rejected != null) {
+                        rejected.increment();
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    public int getRetryAfterSeconds() {
+        return Math.max(1, config.getRetryAfterSeconds());
+    }
+}
@@ -0,0 +1,290 @@
+package io.github.halfhoney.gateway.agent.upstream;
+
+import com.achance.gateway.common.dto.ProxyResponse;
+import com.achance.gateway.common.health.CircuitBreaker;
+import com.achance.gateway.common.health.UpstreamHealth;
+import io.github.halfhoney.gateway.agent.config.AgentProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按 targetBaseUrl 的熔断器：打开期间本地直接返回 503（UPSTREAM_CIRCUIT_OPEN），不再等待连接或读取失败；
+ * 可选的主动健康检查定期 GET health-check.path，失败时提前打开，打开后检查成功则提前进入半开试探。
+ * 打开/恢复的目标经 {@link #snapshots()} 发布，网关订阅后对已知不可用的目标直接 503，不再经过隧道。
+ * 指标：agent.upstream.circuit.state{target}（0 关闭、1 半开、2 打开）、agent.upstream.circuit.rejected{target}。
+ */
+@Component
+public class UpstreamCircuitBreakers {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamCircuitBreakers.class);
+
+    /** 熔断关闭时使用，不做任何统计 */
+    private static final Call NOOP = new Call(null, null, 0);
+
+    private final AgentProperties.Breaker config;
+    private final UpstreamClients upstreams;
+    private final long evictIdleTargetMs;
+    private final MeterRegistry meterRegistry;
+    private final Meter.MeterProvider<Counter> rejected;
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+    private final Sinks.Many<Map<String, Long>> down = Sinks.many().replay().latest();
+    private Disposable healthChecks;
+
+    public UpstreamCircuitBreakers(AgentProperties props, UpstreamClients upstreams, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.config = props.getCircuitBreaker();
+        this.upstreams = upstreams;
+        this.evictIdleTargetMs = props.getUpstream().getEvictIdleTargetMs();
+        this.meterRegistry = meterRegistry.getIfAvailable();
+        this.rejected = this.meterRegistry != null
+                ? Counter.builder("agent.upstream.circuit.rejected")
+                        .description("Upstream calls failed fast by an open circuit breaker")
+                        .withRegistry(this.meterRegistry)
+                : null;
+        down.tryEmitNext(Map.of());
+    }
+
+    /** 放行时返回调用凭证（结束时须报告结果），熔断打开时返回 null */
+    public Call tryAcquire(String baseUrl) {
+        if (!config.isEnabled()) {
+            return NOOP;
+        }
+        Target target = target(baseUrl);
+        target.lastUsed = System.nanoTime();
+        boolean permitted = target.breaker.tryAcquire();
+        sync(target);
+        if (!permitted) {
+            if (rejected != null) {
+                rejected.withTags("target", target.baseUrl).increment();
+            }
+            return null;
+        }
+        return new Call(this, target, System.nanoTime());
+    }
+
+    /** 熔断打开的目标距离半开试探的剩余毫秒数 */
+    public long retryAfterMs(String baseUrl) {
+        Target target = targets.get(UpstreamHealth.normalize(baseUrl));
+        return target != null ? target.breaker.retryAfterMs() : 0;
+    }
+
+    /** 当前不可用目标的快照（{@link UpstreamHealth} 文本格式），订阅时先收到最新一份 */
+    public Flux<String> snapshots() {
+        return down.asFlux().map(UpstreamHealth::encode);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startHealthChecks() {
+        AgentProperties.HealthCheck check = config.getHealthCheck();
+        if (!config.isEnabled() || check.getPath() == null || check.getPath().isBlank()) {
+            return;
+        }
+        log.info("Upstream health checks enabled: path={}, intervalMs={}", check.getPath(), check.getIntervalMs());
+        healthChecks = Flux.interval(Duration.ofMillis(Math.max(100, check.getIntervalMs())), Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.fromIterable(targets.values())
+                        .filter(this::shouldProbe)
+                        .flatMap(t -> probe(t, check)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (healthChecks != null) {
+            healthChecks.dispose();
+        }
+        targets.values().forEach(t -> {
+            if (t.timer != null) {
+                t.timer.dispose();
+            }
+        });
+    }
+
+    /** 非关闭状态的目标始终检查；关闭的目标只在近期有请求时检查，闲置目标不因检查而保持连接池 */
+    private boolean shouldProbe(Target t) {
+        return t.breaker.state() != CircuitBreaker.State.CLOSED
+                || evictIdleTargetMs <= 0
+                || System.nanoTime() - t.lastUsed < TimeUnit.MILLISECONDS.toNanos(evictIdleTargetMs) / 2;
+    }
+
+    private Mono<Void> probe(Target t, AgentProperties.HealthCheck check) {
+        return upstreams.mono(t.baseUrl, client -> client.get()
+                        .uri(check.getPath())
+                        .exchangeToMono(resp -> resp.releaseBody().thenReturn(resp.statusCode().value())))
+                .timeout(Duration.ofMillis(check.getTimeoutMs()))
+                .map(status -> status < 500)
+                .onErrorResume(ex -> {
+                    log.debug("Upstream health check failed: target={}, err={}", t.baseUrl, ex.toString());
+                    return Mono.just(false);
+                })
+                .doOnNext(healthy -> {
+                    if (healthy) {
+                        t.breaker.probeSucceeded();
+                    } else {
+                        t.breaker.forceOpen();
+                    }
+                    sync(t);
+                })
+                .then();
+    }
+
+    private Target target(String baseUrl) {
+        return targets.computeIfAbsent(UpstreamHealth.normalize(baseUrl), key -> {
+            Target t = new Target(key, new CircuitBreaker(config, System::nanoTime));
+            if (meterRegistry != null) {
+                Gauge.builder("agent.upstream.circuit.state", t, UpstreamCircuitBreakers::stateValue)
+                        .description("Upstream circuit breaker state: 0 closed, 1 half-open, 2 open")
+                        .tag("target", key)
+                        .register(meterRegistry);
+            }
+            return t;
+        });
+    }
+
+    private static double stateValue(Target t) {
+        switch (t.reported) {
+            case OPEN:
+                return 2;
+            case HALF_OPEN:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /** 比较熔断器状态与上次发布的状态，打开/恢复时发布快照；打开时定时到期后再次检查以发布半开 */
+    private void sync(Target t) {
+        CircuitBreaker.State now;
+        CircuitBreaker.State prev;
+        synchronized (t) {
+            now = t.breaker.state();
+            prev = t.reported;
+            if (now == prev) {
+                return;
+            }
+            t.reported = now;
+            if (now == CircuitBreaker.State.OPEN) {
+                schedule(t);
+            }
+        }
+        if (now == CircuitBreaker.State.OPEN) {
+            log.warn("Upstream circuit opened: target={}, retryAfterMs={}", t.baseUrl, t.breaker.retryAfterMs());
+        } else {
+            log.info("Upstream circuit {}: target={}", now == CircuitBreaker.State.CLOSED ? "closed" : "half-open", t.baseUrl);
+        }
+        if (now == CircuitBreaker.State.OPEN || prev == CircuitBreaker.State.OPEN) {
+            publish();
+        }
+    }
+
+    private void schedule(Target t) {
+        if (t.timer != null) {
+            t.timer.dispose();
+        }
+        t.timer = Schedulers.parallel().schedule(() -> {
+            sync(t);
+            synchronized (t) {
+                // 健康检查失败会重新计时，到期时仍为打开则继续等待
+                if (t.reported == CircuitBreaker.State.OPEN) {
+                    schedule(t);
+                }
+            }
+        }, Math.max(1, t.breaker.retryAfterMs()), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void publish() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        targets.values().forEach(t -> {
+            if (t.reported == CircuitBreaker.State.OPEN) {
+                snapshot.put(t.baseUrl, t.breaker.retryAfterMs());
+            }
+        });
+        down.tryEmitNext(snapshot);
+    }
+
+    private static final class Target {
+        final String baseUrl;
+        final CircuitBreaker breaker;
+        volatile CircuitBreaker.State reported = CircuitBreaker.State.CLOSED;
+        volatile long lastUsed;
+        Disposable timer;
+
+        Target(String baseUrl, CircuitBreaker breaker) {
+            this.baseUrl = baseUrl;
+            this.breaker = breaker;
+        }
+    }
+
+    /** 一次被放行的上游调用；结果只报告一次，后续调用忽略 */
+    public static final class Call {
+        private final UpstreamCircuitBreakers owner;
+        private final Target target;
+        private final long startNanos;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Call(UpstreamCircuitBreakers owner, Target target, long startNanos) {
+            this.owner = owner;
+            this.target = target;
+            this.startNanos = startNanos;
+        }
+
+        /** 按响应判定：Agent 生成的错误（连接失败、超时）与 failure-statuses 中的状态码为失败 */
+        public void complete(ProxyResponse resp) {
+            if (resp.getError() != null) {
+                failure();
+            } else {
+                complete(resp.getStatus());
+            }
+        }
+
+        /** 按上游状态码判定，failure-statuses 中的为失败 */
+        public void complete(int status) {
+            if (owner != null && owner.config.getFailureStatuses().contains(status)) {
+                failure();
+            } else {
+                success();
+            }
+        }
+
+        public void success() {
+            if (target != null && done.compareAndSet(false, true)) {
+                target.breaker.onSuccess(System.nanoTime() - startNanos);
+                owner.sync(target);
+            }
+        }
+
+        public void failure() {
+            if (target != null && done.compareAndSet(false, true)) {
+                target.breaker.onFailure(System.nanoTime() - startNanos);
+                owner.sync(target);
+            }
+        }
+
+        /** 取消或未产生结果时调用；已报告结果时无作用 */
+        public void ignore() {
+            if (target != null && done.compareAndSet(false, true)) {
+                target.breaker.onIgnored();
+            }
+        }
+    }
+}
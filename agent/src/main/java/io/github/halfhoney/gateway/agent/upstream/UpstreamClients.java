@@ -0,0 +1,199 @@
+package io.github.halfhoney.gateway.agent.upstream;
+
+import io.github.halfhoney.gateway.agent.config.AgentProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 按 targetBaseUrl 缓存 WebClient 及其独立连接池，避免每个请求重建 WebClient。
+ * 连接池指标由 Reactor Netty 以 reactor.netty.connection.provider.* 上报（name 标签为目标地址）；
+ * 闲置超过 evict-idle-target-ms 且无在途请求的目标会被回收。
+ */
+@Component
+public class UpstreamClients {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamClients.class);
+
+    private final WebClient.Builder webClientBuilder;
+    private final AgentProperties.Upstream config;
+    private final Map<String, Entry> clients = new ConcurrentHashMap<>();
+    /** 所有目标合计的在途请求数与耗时 EWMA（毫秒），供 lease 计算可接受的请求量 */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double latencyEwmaMs;
+    private Disposable evictor;
+
+    public UpstreamClients(WebClient.Builder webClientBuilder, AgentProperties props,
+                           ObjectProvider<MeterRegistry> meterRegistry) {
+        this.webClientBuilder = webClientBuilder;
+        this.config = props.getUpstream();
+        meterRegistry.ifAvailable(registry -> {
+            Gauge.builder("agent.upstream.targets", clients, Map::size)
+                    .description("Cached upstream WebClients (one connection pool each)")
+                    .register(registry);
+            Gauge.builder("agent.upstream.inflight", inFlight, AtomicInteger::get)
+                    .description("In-flight upstream HTTP calls across all targets")
+                    .register(registry);
+        });
+    }
+
+    /** 以目标的 WebClient 执行调用，调用结束（含取消）前该目标不会被回收 */
+    public <T> Mono<T> mono(String baseUrl, Function<WebClient, Mono<T>> call) {
+        return Mono.using(() -> acquire(baseUrl), c -> call.apply(c.entry.client), this::release);
+    }
+
+    public <T> Flux<T> flux(String baseUrl, Function<WebClient, Flux<T>> call) {
+        return Flux.using(() -> acquire(baseUrl), c -> call.apply(c.entry.client), this::release);
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /** 近期下游调用耗时的指数移动平均（毫秒），尚无样本时为 0 */
+    public double latencyMs() {
+        return latencyEwmaMs;
+    }
+
+    private Call acquire(String baseUrl) {
+        Entry entry = clients.compute(normalize(baseUrl), (key, cur) -> {
+            Entry e = cur != null ? cur : create(key);
+            e.inFlight.incrementAndGet();
+            e.lastUsed = System.nanoTime();
+            return e;
+        });
+        inFlight.incrementAndGet();
+        return new Call(entry, System.nanoTime());
+    }
+
+    private void release(Call call) {
+        double costMs = (System.nanoTime() - call.startNanos) / 1e6;
+        call.entry.release();
+        inFlight.decrementAndGet();
+        double prev = latencyEwmaMs;
+        latencyEwmaMs = prev == 0 ? costMs : prev * 0.8 + costMs * 0.2;
+    }
+
+    private Entry create(String baseUrl) {
+        AgentProperties.Target t = config.getTargets().getOrDefault(baseUrl,
+                config.getTargets().getOrDefault(baseUrl + "/", new AgentProperties.Target()));
+        long maxLifeTimeMs = or(t.getMaxLifeTimeMs(), config.getMaxLifeTimeMs());
+        ConnectionProvider.Builder pool = ConnectionProvider.builder(baseUrl)
+                .maxConnections(or(t.getMaxConnections(), config.getMaxConnections()))
+                .maxIdleTime(Duration.ofMillis(or(t.getMaxIdleTimeMs(), config.getMaxIdleTimeMs())))
+                .pendingAcquireMaxCount(or(t.getPendingAcquireMaxCount(), config.getPendingAcquireMaxCount()))
+                .pendingAcquireTimeout(Duration.ofMillis(or(t.getPendingAcquireTimeoutMs(), config.getPendingAcquireTimeoutMs())))
+                .metrics(true);
+        if (maxLifeTimeMs > 0) {
+            pool.maxLifeTime(Duration.ofMillis(maxLifeTimeMs));
+        }
+        ConnectionProvider provider = pool.build();
+
+        HttpClient http = HttpClient.create(provider)
+                .keepAlive(or(t.getKeepAlive(), config.isKeepAlive()));
+        if (or(t.getHttp2(), config.isHttp2())) {
+            http = baseUrl.startsWith("https:")
+                    ? http.protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                    : http.protocol(HttpProtocol.H2C);
+        }
+        WebClient client = webClientBuilder.clone()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(http))
+                .build();
+        log.info("Upstream client created: target={}, maxConnections={}", baseUrl, provider.maxConnections());
+        return new Entry(client, provider);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startEvictor() {
+        long ttl = config.getEvictIdleTargetMs();
+        if (ttl <= 0) {
+            return;
+        }
+        Duration period = Duration.ofMillis(Math.max(1_000, Math.min(ttl / 4, 60_000)));
+        evictor = Flux.interval(period, Schedulers.boundedElastic())
+                .subscribe(tick -> evictIdle(System.nanoTime(), Duration.ofMillis(ttl).toNanos()));
+    }
+
+    void evictIdle(long now, long ttlNanos) {
+        List<Entry> evicted = new ArrayList<>();
+        for (String key : clients.keySet()) {
+            clients.computeIfPresent(key, (k, e) -> {
+                if (e.inFlight.get() == 0 && now - e.lastUsed >= ttlNanos) {
+                    evicted.add(e);
+                    log.info("Upstream client evicted after idle: target={}", k);
+                    return null;
+                }
+                return e;
+            });
+        }
+        evicted.forEach(e -> e.provider.disposeLater().subscribe());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (evictor != null) {
+            evictor.dispose();
+        }
+        clients.values().forEach(e -> e.provider.disposeLater().subscribe());
+        clients.clear();
+    }
+
+    private static String normalize(String baseUrl) {
+        return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    private static <T> T or(T override, T fallback) {
+        return override != null ? override : fallback;
+    }
+
+    private static final class Call {
+        final Entry entry;
+        final long startNanos;
+
+        Call(Entry entry, long startNanos) {
+            this.entry = entry;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final class Entry {
+        final WebClient client;
+        final ConnectionProvider provider;
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile long lastUsed;
+
+        Entry(WebClient client, ConnectionProvider provider) {
+            this.client = client;
+            this.provider = provider;
+        }
+
+        void release() {
+            lastUsed = System.nanoTime();
+            inFlight.decrementAndGet();
+        }
+    }
+}
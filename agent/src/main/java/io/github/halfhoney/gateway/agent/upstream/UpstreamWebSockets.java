@@ -0,0 +1,182 @@
+package io.github.halfhoney.gateway.agent.upstream;
+
+import com.achance.gateway.common.dto.ProxyHeaders;
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.health.UpstreamHealth;
+import com.achance.gateway.common.stream.WebSocketFrames;
+import io.github.halfhoney.gateway.agent.config.AgentProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakeException;
+import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.WebsocketClientSpec;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * 上游 WebSocket 连接：每个会话一条独立连接（不占用 {@link UpstreamClients} 的连接池），
+ * 上游消息与隧道帧（{@link WebSocketFrames}）逐条互转，ping/pong 原样转发、由两端的真实对端应答。
+ * 会话全程非阻塞，不占用线程。指标：agent.websocket.sessions（当前打开的上游会话数）。
+ */
+@Component
+public class UpstreamWebSockets {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamWebSockets.class);
+
+    /** 由本端握手重新生成、不从调用方请求转发的请求头（小写） */
+    private static final Set<String> HANDSHAKE_HEADERS = Set.of("host", "upgrade", "connection", "sec-websocket-key",
+            "sec-websocket-version", "sec-websocket-extensions", "sec-websocket-protocol", "content-length", "transfer-encoding");
+
+    private final HttpClient http;
+    private final int maxFramePayloadBytes;
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    public UpstreamWebSockets(AgentProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.http = HttpClient.create(ConnectionProvider.newConnection());
+        this.maxFramePayloadBytes = props.getWebsocket().getMaxFramePayloadBytes();
+        meterRegistry.ifAvailable(registry -> Gauge.builder("agent.websocket.sessions", sessions, AtomicInteger::get)
+                .description("Open upstream WebSocket sessions")
+                .register(registry));
+    }
+
+    /**
+     * 连接 baseUrl + path 并桥接会话。返回的帧流以 handshake(状态码, 响应头) 生成的头部帧开始：
+     * 握手成功为 101，随后是上游消息，上游关闭时以 CLOSE 帧结束；上游拒绝握手时只有该头部帧。
+     * fromGateway 为调用方消息，结束（或收到 CLOSE 帧）时向上游发送关闭。连接失败以错误结束。
+     */
+    public Flux<DataBuffer> connect(String baseUrl, ProxyRequest req, Flux<DataBuffer> fromGateway,
+                                    DataBufferFactory bufferFactory, BiFunction<Integer, HttpHeaders, DataBuffer> handshake) {
+        ProxyHeaders requestHeaders = req.getHeaders() != null ? req.getHeaders() : new ProxyHeaders(0);
+        List<String> offered = requestHeaders.getAll("Sec-WebSocket-Protocol");
+        String protocols = offered.isEmpty() ? null : String.join(",", offered);
+        WebsocketClientSpec spec = WebsocketClientSpec.builder()
+                .protocols(protocols)
+                .maxFramePayloadLength(maxFramePayloadBytes)
+                .handlePing(true)
+                .build();
+        return http
+                .headers(h -> requestHeaders.forEach((name, value) -> {
+                    if (!HANDSHAKE_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                        h.add(name, value);
+                    }
+                }))
+                .websocket(spec)
+                .uri(uri(baseUrl, req))
+                .handle((in, out) -> {
+                    sessions.incrementAndGet();
+                    // 上游消息在 onNext 返回后即被释放，须在 map 中同步复制。
+                    // 收到关闭码即发出 CLOSE 帧：Reactor Netty 随后才结束 receiveFrames 并取消 fromGateway，
+                    // 否则网关先收到取消、以不带关闭码的 CLOSE 关闭调用方
+                    Mono<WebSocketCloseStatus> closeStatus = in.receiveCloseStatus();
+                    Flux<DataBuffer> upstream = Flux.concat(
+                            Mono.fromCallable(() -> handshake.apply(101, headers(in.headers()))),
+                            in.aggregateFrames(maxFramePayloadBytes).receiveFrames()
+                                    .takeUntilOther(closeStatus)
+                                    .map(frame -> WebSocketFrames.encode(bufferFactory, opcode(frame), frame.content().nioBuffer())),
+                            closeStatus.map(status -> WebSocketFrames.close(bufferFactory, status.code(), status.reasonText())));
+                    int[] close = {WebSocketFrames.NO_STATUS_CODE};
+                    String[] reason = {null};
+                    Flux<WebSocketFrame> downstream = fromGateway.handle((buf, sink) -> {
+                        int opcode = WebSocketFrames.opcode(buf);
+                        if (opcode == WebSocketFrames.CLOSE) {
+                            close[0] = WebSocketFrames.closeCode(buf);
+                            reason[0] = WebSocketFrames.closeReason(buf);
+                            DataBufferUtils.release(buf);
+                            return;
+                        }
+                        WebSocketFrame frame = frame(opcode, NettyDataBufferFactory.toByteBuf(buf));
+                        if (frame != null) {
+                            sink.next(frame);
+                        }
+                    });
+                    Mono<Void> send = out.sendObject(downstream).then()
+                            .then(Mono.defer(() -> WebSocketFrames.isSendableCloseCode(close[0])
+                                    ? out.sendClose(close[0], reason[0])
+                                    : out.sendClose()))
+                            // 上游先关闭时连接已不可写
+                            .onErrorResume(ex -> {
+                                log.debug("Upstream websocket send ended: uri={}, err={}", baseUrl + req.getPath(), ex.toString());
+                                return Mono.empty();
+                            });
+                    return Flux.merge(upstream, send.then(Mono.<DataBuffer>empty()))
+                            .doFinally(s -> sessions.decrementAndGet());
+                })
+                .onErrorResume(WebSocketClientHandshakeException.class, ex -> ex.response() != null
+                        ? Mono.fromCallable(() -> handshake.apply(ex.response().status().code(), headers(ex.response().headers())))
+                        : Mono.error(ex));
+    }
+
+    /** http(s) 目标改用 ws(s) 连接，调用方的查询参数原样带上 */
+    static URI uri(String baseUrl, ProxyRequest req) {
+        String base = UpstreamHealth.normalize(baseUrl);
+        if (base.startsWith("http")) {
+            base = "ws" + base.substring(4);
+        }
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(base).path(req.getPath());
+        if (req.getQuery() != null) {
+            req.getQuery().forEach(builder::queryParam);
+        }
+        return builder.build().encode().toUri();
+    }
+
+    private static HttpHeaders headers(io.netty.handler.codec.http.HttpHeaders nettyHeaders) {
+        HttpHeaders headers = new HttpHeaders();
+        nettyHeaders.forEach(e -> headers.add(e.getKey(), e.getValue()));
+        return headers;
+    }
+
+    private static int opcode(WebSocketFrame frame) {
+        if (frame instanceof TextWebSocketFrame) {
+            return WebSocketFrames.TEXT;
+        }
+        if (frame instanceof PingWebSocketFrame) {
+            return WebSocketFrames.PING;
+        }
+        if (frame instanceof PongWebSocketFrame) {
+            return WebSocketFrames.PONG;
+        }
+        return WebSocketFrames.BINARY;
+    }
+
+    /** 未知 opcode 时释放内容并返回 null */
+    private static WebSocketFrame frame(int opcode, ByteBuf content) {
+        switch (opcode) {
+            case WebSocketFrames.TEXT:
+                return new TextWebSocketFrame(content);
+            case WebSocketFrames.BINARY:
+                return new BinaryWebSocketFrame(content);
+            case WebSocketFrames.PING:
+                return new PingWebSocketFrame(content);
+            case WebSocketFrames.PONG:
+                return new PongWebSocketFrame(content);
+            default:
+                content.release();
+                return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.halfhoney.benchmarks;
+
+import com.achance.gateway.common.codec.ProxyWireFormat;
+import com.achance.gateway.common.dto.ProxyHeaders;
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.dto.ProxyResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProxyRequest / ProxyResponse 编解码：二进制格式 1、带静态头部表的格式 2（ProxyWireFormat）对比 JSON（body 为 Base64）。
+ * 编码写入池化 buffer 后立即释放，与 RSocket 发送路径一致；解码输入为已编码的完整帧。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    @Param({"0", "1024", "65536", "1048576"})
+    public int bodySize;
+
+    private final NettyDataBufferFactory pooled = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+
+    private ProxyRequest request;
+    private ProxyResponse response;
+    private byte[] binaryResponse;
+    private byte[] headerTableResponse;
+    private byte[] jsonResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        ProxyHeaders headers = ProxyHeaders.of(
+                "Accept", "application/json",
+                "Accept-Encoding", "gzip, deflate, br",
+                "User-Agent", "Mozilla/5.0 (X11; Linux x86_64)",
+                "Cookie", "session=4f1c2e9a; theme=dark",
+                "Content-Type", "application/octet-stream");
+        byte[] body = new byte[bodySize];
+        ThreadLocalRandom.current().nextBytes(body);
+
+        request = new ProxyRequest();
+        request.setRequestId("3f0d8a43-6f5e-4a5c-9a89-0f6f5b7f4c21");
+        request.setMethod("POST");
+        request.setPath("/api/orders/1001");
+        request.setQuery(Map.of("page", "1", "size", "20"));
+        request.setHeaders(headers);
+        request.setTimeoutMs(30_000);
+        request.setTargetBaseUrl("http://127.0.0.1:7001");
+        request.setBody(bodySize > 0 ? body : null);
+
+        response = new ProxyResponse();
+        response.setRequestId(request.getRequestId());
+        response.setStatus(200);
+        response.setHeaders(ProxyHeaders.of("Content-Type", "application/octet-stream", "Content-Length", Integer.toString(bodySize)));
+        response.setBody(bodySize > 0 ? body : null);
+        response.setUpstreamMs(12);
+
+        binaryResponse = bytes(ProxyWireFormat.write(response, pooled));
+        headerTableResponse = bytes(ProxyWireFormat.write(response, pooled, true));
+        jsonResponse = json.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public int binaryEncodeRequest() {
+        DataBuffer buf = ProxyWireFormat.write(request, pooled);
+        int size = buf.readableByteCount();
+        DataBufferUtils.release(buf);
+        return size;
+    }
+
+    @Benchmark
+    public int headerTableEncodeRequest() {
+        DataBuffer buf = ProxyWireFormat.write(request, pooled, true);
+        int size = buf.readableByteCount();
+        DataBufferUtils.release(buf);
+        return size;
+    }
+
+    @Benchmark
+    public Object binaryDecodeResponse() {
+        return ProxyWireFormat.read(DefaultDataBufferFactory.sharedInstance.wrap(binaryResponse));
+    }
+
+    @Benchmark
+    public Object headerTableDecodeResponse() {
+        return ProxyWireFormat.read(DefaultDataBufferFactory.sharedInstance.wrap(headerTableResponse));
+    }
+
+    @Benchmark
+    public int jsonEncodeRequest() throws IOException {
+        return json.writeValueAsBytes(request).length;
+    }
+
+    @Benchmark
+    public Object jsonDecodeResponse() throws IOException {
+        return json.readValue(jsonResponse, ProxyResponse.class);
+    }
+
+    private static byte[] bytes(DataBuffer encoded) {
+        byte[] bytes = new byte[encoded.readableByteCount()];
+        encoded.read(bytes);
+        DataBufferUtils.release(encoded);
+        return bytes;
+    }
+}
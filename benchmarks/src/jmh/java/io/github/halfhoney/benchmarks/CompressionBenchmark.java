@@ -0,0 +1,64 @@
+package io.github.halfhoney.benchmarks;
+
+import com.achance.gateway.common.codec.BodyCompression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 隧道压缩的 CPU 成本：agent 侧 deflate 与网关侧 inflate，响应体为 JSON 列表（典型的可压缩负载）。
+ * 结合目标链路带宽估算收益：节省的传输时间 = (原始字节 - 压缩字节) / 带宽，需大于两次耗时之和。
+ * 压缩后大小在每轮结束时打印，用于计算压缩率。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+    @Param({"102400", "1048576", "10485760"})
+    public int bodySize;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private byte[] body;
+    private byte[] deflated;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(bodySize + 128).append('[');
+        for (int i = 0; sb.length() < bodySize; i++) {
+            sb.append("{\"id\":").append(i).append(",\"sku\":\"SKU-").append(i * 7919 % 100_000)
+                    .append("\",\"price\":").append(i % 997).append(".").append(i % 100)
+                    .append(",\"inStock\":").append(i % 3 != 0).append("},");
+        }
+        body = sb.substring(0, bodySize).getBytes(StandardCharsets.UTF_8);
+        deflated = BodyCompression.deflate(body, level);
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%n[compression] bodySize=%d level=%d deflated=%d ratio=%.3f%n",
+                bodySize, level, deflated.length, (double) deflated.length / bodySize);
+    }
+
+    @Benchmark
+    public int deflate() {
+        return BodyCompression.deflate(body, level).length;
+    }
+
+    @Benchmark
+    public int inflate() {
+        return BodyCompression.inflate(deflated).length;
+    }
+}
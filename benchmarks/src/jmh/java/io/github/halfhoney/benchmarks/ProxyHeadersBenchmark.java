@@ -0,0 +1,59 @@
+package io.github.halfhoney.benchmarks;
+
+import com.achance.gateway.common.dto.ProxyHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求头在 Spring {@link HttpHeaders} 与隧道内 {@link ProxyHeaders} 之间互转：
+ * 网关每个代理请求转入一次（fromHttpHeaders），收到响应后转出一次（copyTo）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProxyHeadersBenchmark {
+
+    /** 典型浏览器请求约 12 个头，API 网关后方的调用常带 30 个以上 */
+    @Param({"12", "32"})
+    public int headerCount;
+
+    private HttpHeaders headers;
+    private ProxyHeaders proxyHeaders;
+
+    @Setup
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.add(HttpHeaders.ACCEPT, "application/json");
+        headers.add(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+        headers.add(HttpHeaders.ACCEPT_LANGUAGE, "zh-CN,zh;q=0.9,en;q=0.8");
+        headers.add(HttpHeaders.USER_AGENT, "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36");
+        headers.add(HttpHeaders.CONNECTION, "keep-alive");
+        headers.add(HttpHeaders.COOKIE, "session=4f1c2e9a; theme=dark");
+        headers.add(HttpHeaders.COOKIE, "tracking=off");
+        for (int i = headers.size(); i < headerCount; i++) {
+            headers.add("X-Custom-" + i, "value-" + i);
+        }
+        proxyHeaders = ProxyHeaders.fromHttpHeaders(headers);
+    }
+
+    @Benchmark
+    public ProxyHeaders fromHttpHeaders() {
+        return ProxyHeaders.fromHttpHeaders(headers);
+    }
+
+    @Benchmark
+    public HttpHeaders copyTo() {
+        HttpHeaders out = new HttpHeaders();
+        proxyHeaders.copyTo(out);
+        return out;
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.halfhoney.benchmarks;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.routing.ClientRoutes;
+import io.github.halfhoney.gateway.routing.RouteTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由 / ACL 解析：预编译快照（RouteTable）对比直接遍历 GatewayProxyProperties 的线性匹配。
+ * 每次调用完成一次 方法校验 + 路径校验 + 目标解析，路径在命中/未命中之间轮换。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoutingBenchmark {
+
+    private static final int CLIENTS = 100;
+    private static final int SAMPLES = 1024;
+
+    @Param({"4", "64"})
+    public int routesPerClient;
+
+    private GatewayProxyProperties props;
+    private RouteTable table;
+    private String[] clientIds;
+    private String[] paths;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        props = new GatewayProxyProperties();
+        props.setDefaultTargetBaseUrl("http://default");
+        Map<String, GatewayProxyProperties.ClientPolicy> clients = new LinkedHashMap<>();
+        for (int c = 0; c < CLIENTS; c++) {
+            GatewayProxyProperties.ClientPolicy policy = new GatewayProxyProperties.ClientPolicy();
+            List<GatewayProxyProperties.Route> routes = new ArrayList<>();
+            List<String> allowed = new ArrayList<>();
+            for (int r = 0; r < routesPerClient; r++) {
+                GatewayProxyProperties.Route route = new GatewayProxyProperties.Route();
+                route.setPrefix("/svc" + r + "/api");
+                route.setTargetBaseUrl("http://target-" + r);
+                routes.add(route);
+                allowed.add("/svc" + r);
+            }
+            policy.setRoutes(routes);
+            policy.setAllowedPathPrefixes(allowed);
+            policy.setAllowedMethods(List.of("GET", "POST"));
+            clients.put("client-" + c, policy);
+        }
+        props.setClients(clients);
+        table = RouteTable.compile(props, 1);
+
+        clientIds = new String[SAMPLES];
+        paths = new String[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            clientIds[i] = "client-" + (i * 31 % CLIENTS);
+            int r = i * 17 % (routesPerClient + 1);
+            // 最后一个编号不存在，覆盖 ACL 拒绝与全部前缀都未命中的最坏情况
+            paths[i] = "/svc" + r + "/api/orders/" + i;
+        }
+    }
+
+    @Benchmark
+    public String compiledSnapshot() {
+        int i = next();
+        ClientRoutes routes = table.client(clientIds[i]);
+        String path = paths[i];
+        if (!routes.isMethodAllowed(HttpMethod.GET) || !routes.isPathAllowed(path)) {
+            return null;
+        }
+        return routes.resolveTarget(path);
+    }
+
+    /** 预编译之前的做法：每个请求遍历配置列表 */
+    @Benchmark
+    public String linearScan() {
+        int i = next();
+        GatewayProxyProperties.ClientPolicy policy = props.getClients().get(clientIds[i]);
+        String path = paths[i];
+        boolean methodAllowed = false;
+        for (String m : policy.getAllowedMethods()) {
+            if (m.equalsIgnoreCase("GET")) {
+                methodAllowed = true;
+                break;
+            }
+        }
+        if (!methodAllowed) {
+            return null;
+        }
+        boolean pathAllowed = false;
+        for (String p : policy.getAllowedPathPrefixes()) {
+            if (path.startsWith(p)) {
+                pathAllowed = true;
+                break;
+            }
+        }
+        if (!pathAllowed) {
+            return null;
+        }
+        for (GatewayProxyProperties.Route r : policy.getRoutes()) {
+            if (path.startsWith(r.getPrefix())) {
+                return r.getTargetBaseUrl();
+            }
+        }
+        return props.getDefaultTargetBaseUrl();
+    }
+
+    private int next() {
+        int i = cursor;
+        cursor = (i + 1) & (SAMPLES - 1);
+        return i;
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.halfhoney.benchmarks;
+
+import com.achance.gateway.common.transport.TunnelTransports;
+import io.rsocket.Payload;
+import io.rsocket.RSocket;
+import io.rsocket.core.RSocketConnector;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.transport.ServerTransport;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import io.rsocket.transport.netty.server.WebsocketServerTransport;
+import io.rsocket.util.DefaultPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.tcp.TcpResources;
+import reactor.netty.tcp.TcpServer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 隧道传输对比（回环）：裸 RSocket 在 WebSocket、TCP（epoll）与 TCP（NIO）上的单帧往返耗时与流式帧吞吐，
+ * 不含 Spring 编解码与代理逻辑。客户端传输与 agent 相同，经 {@link TunnelTransports} 按地址 scheme 创建。
+ * 非 Linux 或缺少 epoll 库时 tcp 自动回退 NIO，与 tcp-nio 结果相同。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransportBenchmark {
+
+    /** 每次 requestStream 下发的帧数 */
+    private static final int STREAM_FRAMES = 1000;
+
+    @Param({"ws", "tcp", "tcp-nio"})
+    public String transport;
+
+    @Param({"128", "16384"})
+    public int payloadSize;
+
+    private CloseableChannel server;
+    private RSocket client;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        boolean preferNative = !transport.endsWith("-nio");
+        data = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(data);
+        byte[] frame = data;
+        RSocket responder = new RSocket() {
+            @Override
+            public Mono<Payload> requestResponse(Payload payload) {
+                return Mono.just(payload);
+            }
+
+            @Override
+            public Flux<Payload> requestStream(Payload payload) {
+                payload.release();
+                return Flux.range(0, STREAM_FRAMES).map(i -> DefaultPayload.create(frame));
+            }
+        };
+        ServerTransport<CloseableChannel> serverTransport = transport.startsWith("tcp")
+                ? TcpServerTransport.create(TcpServer.create().host("127.0.0.1").port(0)
+                        .runOn(TcpResources.get(), preferNative))
+                : WebsocketServerTransport.create(HttpServer.create().host("127.0.0.1").port(0)
+                        .runOn(HttpResources.get(), preferNative));
+        server = RSocketServer.create((setup, sendingSocket) -> Mono.just(responder))
+                .bind(serverTransport)
+                .block(Duration.ofSeconds(10));
+        String scheme = transport.startsWith("tcp") ? "tcp" : "ws";
+        URI uri = URI.create(scheme + "://127.0.0.1:" + server.address().getPort() + (scheme.equals("ws") ? "/" : ""));
+        client = RSocketConnector.connectWith(TunnelTransports.client(uri, preferNative))
+                .block(Duration.ofSeconds(10));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (client != null) {
+            client.dispose();
+        }
+        if (server != null) {
+            server.dispose();
+            server.onClose().block(Duration.ofSeconds(10));
+        }
+    }
+
+    /** 单帧往返：请求与响应各一个 payloadSize 大小的帧 */
+    @Benchmark
+    public int requestResponse() {
+        Payload resp = client.requestResponse(DefaultPayload.create(data)).block(Duration.ofSeconds(10));
+        if (resp == null) {
+            throw new IllegalStateException("Empty response");
+        }
+        int size = resp.data().readableBytes();
+        resp.release();
+        return size;
+    }
+
+    /** 流式吞吐：结果为每帧平均耗时，倒数即帧吞吐 */
+    @Benchmark
+    @OperationsPerInvocation(STREAM_FRAMES)
+    public long requestStream() {
+        Long frames = client.requestStream(DefaultPayload.create(new byte[0]))
+                .doOnNext(Payload::release)
+                .count()
+                .block(Duration.ofSeconds(30));
+        if (frames == null || frames != STREAM_FRAMES) {
+            throw new IllegalStateException("Unexpected frame count: " + frames);
+        }
+        return frames;
+    }
+}
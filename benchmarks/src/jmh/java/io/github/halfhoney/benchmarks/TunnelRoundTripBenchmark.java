@@ -0,0 +1,139 @@
+package io.github.halfhoney.benchmarks;
+
+import io.github.halfhoney.gateway.agent.AgentApplication;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.rsocket.ClientRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内端到端往返：HTTP 客户端 -> 网关 -> RSocket over WebSocket -> agent -> 本地桩上游（回显请求体）。
+ * 每组参数在独立 fork 中启动一套网关与 agent，测得单请求往返耗时（客户端串行调用）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TunnelRoundTripBenchmark {
+
+    private static final String CLIENT_ID = "bench";
+
+    @Param({"128", "65536"})
+    public int bodySize;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    @Param({"binary", "json"})
+    public String codec;
+
+    private DisposableServer upstream;
+    private ConfigurableApplicationContext gateway;
+    private ConfigurableApplicationContext agent;
+    private WebClient client;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        upstream = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes.post("/echo", (req, resp) -> resp
+                        .header("Content-Type", "application/octet-stream")
+                        .send(req.receive().retain())))
+                .bindNow();
+        String upstreamUrl = "http://127.0.0.1:" + upstream.port();
+
+        gateway = new SpringApplicationBuilder(BenchGateway.class)
+                .properties("spring.config.name=bench-gateway",
+                        "gateway.proxy.default-target-base-url=" + upstreamUrl,
+                        "gateway.proxy.streaming=" + streaming)
+                .run();
+        int port = gateway.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+
+        agent = new SpringApplicationBuilder(AgentApplication.class)
+                .properties("spring.config.name=bench-agent",
+                        "agent.gateway-url=ws://127.0.0.1:" + port + "/rsocket",
+                        "agent.client-id=" + CLIENT_ID,
+                        "agent.codec=" + codec)
+                .run();
+        ClientRegistry registry = gateway.getBean(ClientRegistry.class);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (registry.connections(CLIENT_ID).isEmpty()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Agent did not register within 30s");
+            }
+            Thread.sleep(50);
+        }
+
+        client = WebClient.builder()
+                .baseUrl("http://127.0.0.1:" + port)
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(4 * 1024 * 1024))
+                .build();
+        body = new byte[bodySize];
+        ThreadLocalRandom.current().nextBytes(body);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (agent != null) {
+            agent.close();
+        }
+        if (gateway != null) {
+            gateway.close();
+        }
+        if (upstream != null) {
+            upstream.disposeNow();
+        }
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        byte[] resp = client.post()
+                .uri("/proxy/" + CLIENT_ID + "/echo")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .block(Duration.ofSeconds(10));
+        if (resp == null || resp.length != bodySize) {
+            throw new IllegalStateException("Unexpected echo length: " + (resp == null ? -1 : resp.length));
+        }
+        return resp.length;
+    }
+
+    /**
+     * 等价于 GatewayApplication，但扫描时排除 agent 包：两者同处一个 classpath，
+     * 而 agent 位于网关基础包之下，直接使用 GatewayApplication 会把 agent 的 Bean 一并装配。
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EnableConfigurationProperties(GatewayProxyProperties.class)
+    @ComponentScan(basePackages = "io.github.halfhoney.gateway",
+            excludeFilters = @ComponentScan.Filter(type = FilterType.REGEX,
+                    pattern = "io\\.github\\.halfhoney\\.gateway\\.(agent\\..*|GatewayApplication)"))
+    static class BenchGateway {
+    }
+}
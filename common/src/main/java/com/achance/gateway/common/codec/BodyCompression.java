@@ -0,0 +1,159 @@
+package com.achance.gateway.common.codec;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 隧道内响应体压缩（zlib / deflate，JDK 自带实现）。
+ * 网关在 ProxyRequest.acceptBodyEncoding 中声明可解码的编码，Agent 按阈值与内容类型决定是否压缩，
+ * 并在 ProxyResponse.bodyEncoding 中标明；网关在写回调用方之前解压，HTTP 语义（响应头、Content-Length）不变。
+ * 流式响应使用同一个 Deflater 逐块 SYNC_FLUSH，每块压缩结果可独立解出，整体仍是一个完整的 zlib 流。
+ */
+public final class BodyCompression {
+
+    /** 隧道内的 zlib 压缩编码 */
+    public static final String DEFLATE = "deflate";
+
+    /** 已压缩或压缩收益极低的类型；image/svg+xml 为文本，仍压缩 */
+    private static final Set<String> INCOMPRESSIBLE_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-xz",
+            "application/x-7z-compressed", "application/x-rar-compressed", "application/zstd", "application/pdf",
+            "application/octet-stream", "font/woff", "font/woff2");
+
+    private static final int CHUNK = 8192;
+
+    private BodyCompression() {
+    }
+
+    /** 是否值得压缩：上游已带 Content-Encoding（调用方的 Accept-Encoding 已生效）或为已压缩类型时原样透传 */
+    public static boolean isCompressible(String contentType, String contentEncoding) {
+        if (contentEncoding != null && !contentEncoding.isBlank() && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+            return false;
+        }
+        if (contentType == null) {
+            return true;
+        }
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ROOT);
+        if (type.startsWith("image/")) {
+            return type.equals("image/svg+xml");
+        }
+        return !type.startsWith("video/") && !type.startsWith("audio/") && !INCOMPRESSIBLE_TYPES.contains(type);
+    }
+
+    public static byte[] deflate(byte[] body, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            byte[] chunk = new byte[CHUNK];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static byte[] inflate(byte[] body) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+            byte[] chunk = new byte[CHUNK];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated deflate body");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("Malformed deflate body: " + ex.getMessage(), ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** 流式压缩：每个输入分块产出一个 SYNC_FLUSH 分块，结束时追加 zlib 尾部；取消或出错时释放 Deflater */
+    public static Flux<DataBuffer> deflate(Flux<DataBuffer> body, int level, DataBufferFactory bufferFactory) {
+        return Flux.using(() -> new Deflater(level),
+                deflater -> body
+                        .map(buf -> {
+                            deflater.setInput(drain(buf));
+                            return bufferFactory.wrap(run(deflater, Deflater.SYNC_FLUSH));
+                        })
+                        .concatWith(Mono.fromSupplier(() -> {
+                            deflater.finish();
+                            return bufferFactory.wrap(run(deflater, Deflater.NO_FLUSH));
+                        })),
+                Deflater::end);
+    }
+
+    /** 流式解压：与 {@link #deflate(Flux, int, DataBufferFactory)} 对应，空输出的分块被跳过 */
+    public static Flux<DataBuffer> inflate(Flux<DataBuffer> body, DataBufferFactory bufferFactory) {
+        return Flux.using(Inflater::new,
+                inflater -> body.<DataBuffer>handle((buf, sink) -> {
+                    inflater.setInput(drain(buf));
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK);
+                    byte[] chunk = new byte[CHUNK];
+                    try {
+                        while (!inflater.finished() && !inflater.needsInput()) {
+                            int n = inflater.inflate(chunk);
+                            if (n == 0 && inflater.needsDictionary()) {
+                                throw new DataFormatException("Preset dictionary not supported");
+                            }
+                            out.write(chunk, 0, n);
+                        }
+                    } catch (DataFormatException ex) {
+                        sink.error(new IllegalArgumentException("Malformed deflate stream: " + ex.getMessage(), ex));
+                        return;
+                    }
+                    if (out.size() > 0) {
+                        sink.next(bufferFactory.wrap(out.toByteArray()));
+                    }
+                }),
+                Inflater::end);
+    }
+
+    private static byte[] drain(DataBuffer buf) {
+        try {
+            byte[] bytes = new byte[buf.readableByteCount()];
+            buf.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(buf);
+        }
+    }
+
+    /** flush 为 SYNC_FLUSH 时输出到字节边界；已调用 finish() 时以 NO_FLUSH 输出至流结束 */
+    private static byte[] run(Deflater deflater, int flush) {
+        byte[] out = new byte[CHUNK];
+        int len = 0;
+        while (true) {
+            int n = deflater.deflate(out, len, out.length - len, flush);
+            len += n;
+            // 输出缓冲未写满说明本次 flush 已全部产出
+            if (len < out.length && (flush == Deflater.SYNC_FLUSH || deflater.finished())) {
+                return Arrays.copyOf(out, len);
+            }
+            if (len == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+        }
+    }
+}
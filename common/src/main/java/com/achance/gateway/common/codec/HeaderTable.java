@@ -0,0 +1,196 @@
+package com.achance.gateway.common.codec;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 二进制格式 2 的静态头部表（思路同 HPACK 静态表）：常见头名与常见 名: 值 组合以 varint 编号代替文本。
+ * 头名按原样大小写匹配，表中为常见写法，其全小写形式（HTTP/2 上游或客户端常用）另以一位标记，
+ * 以保证转发后的头名与原始请求一致；不在表中的写法按字面量传输。
+ * <p>
+ * 编号 code：0 表示字面量头名与值；否则 k = code - 1，bit0 = 头名小写，bit1 = 值也在表中，k >>> 2 为表内下标
+ * （bit1 为 1 时是 {@link #PAIRS} 的下标，否则是 {@link #NAMES} 的下标，其后跟字面量值）。
+ * <b>表内容随格式版本固定</b>，增删或调整顺序都需要新的格式版本。
+ */
+final class HeaderTable {
+
+    static final int LITERAL = 0;
+
+    private static final int LOWER_CASE = 1;
+    private static final int VALUE_INDEXED = 2;
+
+    private static final String[] NAMES = {
+            "Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language", "Accept-Ranges",
+            "Access-Control-Allow-Credentials", "Access-Control-Allow-Headers", "Access-Control-Allow-Methods",
+            "Access-Control-Allow-Origin", "Access-Control-Expose-Headers", "Access-Control-Max-Age",
+            "Access-Control-Request-Headers", "Access-Control-Request-Method", "Age", "Allow", "Authorization",
+            "Cache-Control", "Content-Disposition", "Content-Encoding", "Content-Language", "Content-Length",
+            "Content-Location", "Content-Range", "Content-Security-Policy", "Content-Type", "Cookie", "Date", "ETag",
+            "Expect", "Expires", "Forwarded", "From", "Host", "If-Match", "If-Modified-Since", "If-None-Match",
+            "If-Range", "If-Unmodified-Since", "Last-Modified", "Link", "Location", "Max-Forwards", "Origin", "Pragma",
+            "Proxy-Authenticate", "Proxy-Authorization", "Range", "Referer", "Referrer-Policy", "Refresh",
+            "Retry-After", "Sec-Fetch-Dest", "Sec-Fetch-Mode", "Sec-Fetch-Site", "Sec-Fetch-User",
+            "Sec-WebSocket-Accept", "Sec-WebSocket-Extensions", "Sec-WebSocket-Key", "Sec-WebSocket-Protocol",
+            "Sec-WebSocket-Version", "Server", "Set-Cookie", "Strict-Transport-Security", "Trailer",
+            "Upgrade-Insecure-Requests", "User-Agent", "Vary", "Via", "WWW-Authenticate", "X-Content-Type-Options",
+            "X-Forwarded-For", "X-Forwarded-Host", "X-Forwarded-Port", "X-Forwarded-Proto", "X-Frame-Options",
+            "X-Real-IP", "X-Request-Id", "X-Requested-With", "X-Timeout-Ms", "X-XSS-Protection", "Sec-CH-UA",
+            "Sec-CH-UA-Mobile", "Sec-CH-UA-Platform", "DNT", "Priority", "Traceparent", "Tracestate", "Baggage",
+    };
+
+    /** 名: 值 组合，成对排列 */
+    private static final String[] PAIRS = {
+            "Accept", "*/*",
+            "Accept", "application/json",
+            "Accept", "application/json, text/plain, */*",
+            "Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8",
+            "Accept", "text/event-stream",
+            "Accept-Encoding", "gzip, deflate, br",
+            "Accept-Encoding", "gzip, deflate, br, zstd",
+            "Accept-Encoding", "gzip, deflate",
+            "Accept-Encoding", "gzip",
+            "Accept-Encoding", "identity",
+            "Accept-Ranges", "bytes",
+            "Access-Control-Allow-Credentials", "true",
+            "Access-Control-Allow-Origin", "*",
+            "Cache-Control", "no-cache",
+            "Cache-Control", "no-store",
+            "Cache-Control", "max-age=0",
+            "Cache-Control", "private",
+            "Cache-Control", "public, max-age=31536000",
+            "Cache-Control", "no-cache, no-store, must-revalidate",
+            "Cache-Control", "no-cache, no-store, max-age=0, must-revalidate",
+            "Content-Encoding", "gzip",
+            "Content-Encoding", "br",
+            "Content-Encoding", "deflate",
+            "Content-Length", "0",
+            "Content-Type", "application/json",
+            "Content-Type", "application/json;charset=UTF-8",
+            "Content-Type", "application/json; charset=utf-8",
+            "Content-Type", "text/html",
+            "Content-Type", "text/html;charset=UTF-8",
+            "Content-Type", "text/html; charset=utf-8",
+            "Content-Type", "text/plain",
+            "Content-Type", "text/plain;charset=UTF-8",
+            "Content-Type", "text/plain; charset=utf-8",
+            "Content-Type", "application/octet-stream",
+            "Content-Type", "application/x-www-form-urlencoded",
+            "Content-Type", "application/xml",
+            "Content-Type", "text/event-stream",
+            "Content-Type", "text/css",
+            "Content-Type", "application/javascript",
+            "Content-Type", "image/png",
+            "Content-Type", "image/jpeg",
+            "Expires", "0",
+            "Pragma", "no-cache",
+            "Referrer-Policy", "no-referrer",
+            "Referrer-Policy", "strict-origin-when-cross-origin",
+            "Sec-Fetch-Dest", "empty",
+            "Sec-Fetch-Dest", "document",
+            "Sec-Fetch-Mode", "cors",
+            "Sec-Fetch-Mode", "navigate",
+            "Sec-Fetch-Site", "same-origin",
+            "Sec-Fetch-Site", "same-site",
+            "Sec-Fetch-Site", "cross-site",
+            "Sec-Fetch-Site", "none",
+            "Sec-Fetch-User", "?1",
+            "Sec-CH-UA-Mobile", "?0",
+            "Sec-WebSocket-Version", "13",
+            "Strict-Transport-Security", "max-age=31536000",
+            "Strict-Transport-Security", "max-age=31536000; includeSubDomains",
+            "Upgrade-Insecure-Requests", "1",
+            "Vary", "Accept-Encoding",
+            "Vary", "Origin",
+            "Vary", "Access-Control-Request-Method",
+            "Vary", "Access-Control-Request-Headers",
+            "Vary", "Accept",
+            "X-Content-Type-Options", "nosniff",
+            "X-Forwarded-Proto", "https",
+            "X-Forwarded-Proto", "http",
+            "X-Frame-Options", "DENY",
+            "X-Frame-Options", "SAMEORIGIN",
+            "X-Requested-With", "XMLHttpRequest",
+            "X-XSS-Protection", "0",
+            "X-XSS-Protection", "1; mode=block",
+    };
+
+    private static final String[] LOWER_NAMES = new String[NAMES.length];
+    /** 组合的头名在 NAMES 中的下标 */
+    private static final int[] PAIR_NAMES = new int[PAIRS.length / 2];
+    /** 头名（原样或小写）-> (NAMES 下标 << 1) | 小写标记 */
+    private static final Map<String, Integer> NAME_CODES = new HashMap<>();
+    /** NAMES 下标 -> 值 -> PAIRS 下标 */
+    @SuppressWarnings("unchecked")
+    private static final Map<String, Integer>[] PAIR_CODES = new Map[NAMES.length];
+
+    static {
+        Map<String, Integer> nameIndex = new HashMap<>();
+        for (int i = 0; i < NAMES.length; i++) {
+            LOWER_NAMES[i] = NAMES[i].toLowerCase(Locale.ROOT);
+            nameIndex.put(NAMES[i], i);
+            NAME_CODES.put(NAMES[i], i << 1);
+            if (!LOWER_NAMES[i].equals(NAMES[i])) {
+                NAME_CODES.put(LOWER_NAMES[i], (i << 1) | LOWER_CASE);
+            }
+        }
+        for (int p = 0; p < PAIR_NAMES.length; p++) {
+            int name = nameIndex.get(PAIRS[2 * p]);
+            PAIR_NAMES[p] = name;
+            if (PAIR_CODES[name] == null) {
+                PAIR_CODES[name] = new HashMap<>();
+            }
+            PAIR_CODES[name].put(PAIRS[2 * p + 1], p);
+        }
+    }
+
+    private HeaderTable() {
+    }
+
+    /** 头名与值的编号，两者都不在表中时为 {@link #LITERAL} */
+    static int code(String name, String value) {
+        Integer nameCode = NAME_CODES.get(name);
+        if (nameCode == null) {
+            return LITERAL;
+        }
+        int lower = nameCode & LOWER_CASE;
+        Map<String, Integer> values = PAIR_CODES[nameCode >>> 1];
+        Integer pair = values != null ? values.get(value) : null;
+        if (pair != null) {
+            return 1 + ((pair << 2) | VALUE_INDEXED | lower);
+        }
+        return 1 + (((nameCode >>> 1) << 2) | lower);
+    }
+
+    /** 值是否也由编号给出（否则编号之后跟字面量值） */
+    static boolean valueIndexed(int code) {
+        return code != LITERAL && ((code - 1) & VALUE_INDEXED) != 0;
+    }
+
+    static String name(int code) {
+        int k = code - 1;
+        int index = k >>> 2;
+        int name;
+        if ((k & VALUE_INDEXED) != 0) {
+            checkIndex(index, PAIR_NAMES.length);
+            name = PAIR_NAMES[index];
+        } else {
+            checkIndex(index, NAMES.length);
+            name = index;
+        }
+        return (k & LOWER_CASE) != 0 ? LOWER_NAMES[name] : NAMES[name];
+    }
+
+    /** 仅当 {@link #valueIndexed} 为 true 时有效 */
+    static String value(int code) {
+        int index = (code - 1) >>> 2;
+        checkIndex(index, PAIR_NAMES.length);
+        return PAIRS[2 * index + 1];
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index >= length) {
+            throw new IllegalArgumentException("Unknown header table index: " + index);
+        }
+    }
+}
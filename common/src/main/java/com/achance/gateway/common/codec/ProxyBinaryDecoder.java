@@ -0,0 +1,44 @@
+package com.achance.gateway.common.codec;
+
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.dto.ProxyResponse;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+
+import java.util.Map;
+
+/**
+ * 按 {@link ProxyWireFormat} 解码 ProxyRequest / ProxyResponse（两种格式版本均可），解码后释放输入 buffer。
+ */
+public class ProxyBinaryDecoder extends AbstractDataBufferDecoder<Object> {
+
+    public ProxyBinaryDecoder() {
+        super(ProxyWireFormat.MIME_TYPE, ProxyWireFormat.MIME_TYPE_HEADER_TABLE);
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        Class<?> clazz = elementType.toClass();
+        return (ProxyRequest.class == clazz || ProxyResponse.class == clazz) && super.canDecode(elementType, mimeType)
+                && mimeType != null;
+    }
+
+    @Override
+    public Object decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) {
+        try {
+            Object value = ProxyWireFormat.read(buffer);
+            if (!targetType.toClass().isInstance(value)) {
+                throw new DecodingException("Expected " + targetType + " but frame contains " + value.getClass().getSimpleName());
+            }
+            return value;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new DecodingException("Malformed proxy binary frame: " + ex.getMessage(), ex);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.achance.gateway.common.codec;
+
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.dto.ProxyResponse;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+
+/**
+ * 按 {@link ProxyWireFormat} 编码 ProxyRequest / ProxyResponse，仅响应 {@link ProxyWireFormat#MIME_TYPE}
+ * 与 {@link ProxyWireFormat#MIME_TYPE_HEADER_TABLE}，格式版本随连接的 MimeType 选择。
+ */
+public class ProxyBinaryEncoder extends AbstractEncoder<Object> {
+
+    public ProxyBinaryEncoder() {
+        super(ProxyWireFormat.MIME_TYPE, ProxyWireFormat.MIME_TYPE_HEADER_TABLE);
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        Class<?> clazz = elementType.toClass();
+        return (ProxyRequest.class == clazz || ProxyResponse.class == clazz) && super.canEncode(elementType, mimeType)
+                && mimeType != null;
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        if (value instanceof ProxyRequest req) {
+            return ProxyWireFormat.write(req, bufferFactory, ProxyWireFormat.usesHeaderTable(mimeType));
+        }
+        if (value instanceof ProxyResponse resp) {
+            return ProxyWireFormat.write(resp, bufferFactory, ProxyWireFormat.usesHeaderTable(mimeType));
+        }
+        throw new IllegalArgumentException("Unsupported value for proxy binary codec: " + value.getClass().getName());
+    }
+}
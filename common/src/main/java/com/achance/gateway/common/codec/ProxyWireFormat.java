@@ -0,0 +1,426 @@
+package com.achance.gateway.common.codec;
+
+import com.achance.gateway.common.dto.ProxyHeaders;
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.dto.ProxyResponse;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ProxyRequest / ProxyResponse 的紧凑二进制布局。
+ * <pre>
+ * byte   kind      1 = ProxyRequest, 2 = ProxyResponse
+ * byte   version   1 或 2，仅 headers 的写法不同
+ * request:  str requestId, str method, str path, map query, headers headers,
+ *           varint timeoutMs, str targetBaseUrl, byte flags(bit0 = streamBody), bytes body,
+ *           [str acceptBodyEncoding, [varint targetCount, targetCount x (str baseUrl, varint weight)]]
+ * response: str requestId, varint status, headers headers,
+ *           byte hasError [str code, str message, map details], bytes body,
+ *           [varint upstreamMs, [str bodyEncoding]]
+ * 方括号内为可选尾字段：旧版本帧无此字段，旧版本解码器忽略
+ * </pre>
+ * str / map / bytes / 可空整数均以 varint(n + 1) 为前缀，0 表示 null；字符串为 UTF-8，body 原样写入不做 Base64。
+ * headers 以名/值对个数为前缀，同名多值逐条写出：版本 1 每对为 str name, str value（与 map 相同，旧版本解码器对同名头只保留最后一个）；
+ * 版本 2 每对为 varint code（{@link HeaderTable}），code 为 0 时跟 str name, str value，值不在表中时跟 str value。
+ * 版本 2 以 {@link #MIME_TYPE_HEADER_TABLE} 协商，旧版本网关不识别该 MimeType 而拒绝 SETUP，Agent 随后以版本 1 重连；
+ * 解码器按帧内的版本号读取，两种版本都接受。
+ */
+public final class ProxyWireFormat {
+
+    /** 二进制编解码对应的 RSocket data MimeType */
+    public static final MimeType MIME_TYPE = new MimeType("application", "x-nectar-proxy");
+
+    /** 以静态头部表（格式版本 2）编码 headers 的二进制编解码 */
+    public static final MimeType MIME_TYPE_HEADER_TABLE = new MimeType("application", "x-nectar-proxy-v2");
+
+    static final byte KIND_REQUEST = 1;
+    static final byte KIND_RESPONSE = 2;
+    static final byte VERSION = 1;
+    static final byte VERSION_HEADER_TABLE = 2;
+
+    private static final int FLAG_STREAM_BODY = 1;
+
+    private ProxyWireFormat() {
+    }
+
+    /** mimeType 为 {@link #MIME_TYPE_HEADER_TABLE} 时以版本 2 编码 */
+    public static boolean usesHeaderTable(MimeType mimeType) {
+        return mimeType != null && MIME_TYPE_HEADER_TABLE.isCompatibleWith(mimeType);
+    }
+
+    public static DataBuffer write(ProxyRequest req, DataBufferFactory bufferFactory) {
+        return write(req, bufferFactory, false);
+    }
+
+    public static DataBuffer write(ProxyRequest req, DataBufferFactory bufferFactory, boolean headerTable) {
+        int size = 2 + strSize(req.getRequestId()) + strSize(req.getMethod()) + strSize(req.getPath())
+                + mapSize(req.getQuery()) + headersSize(req.getHeaders(), headerTable)
+                + varintSize(nullableInt(req.getTimeoutMs())) + strSize(req.getTargetBaseUrl())
+                + 1 + bytesSize(req.getBody()) + strSize(req.getAcceptBodyEncoding()) + targetsSize(req.getTargets());
+        DataBuffer buf = bufferFactory.allocateBuffer(size);
+        buf.write(KIND_REQUEST);
+        buf.write(headerTable ? VERSION_HEADER_TABLE : VERSION);
+        writeStr(buf, req.getRequestId());
+        writeStr(buf, req.getMethod());
+        writeStr(buf, req.getPath());
+        writeMap(buf, req.getQuery());
+        writeHeaders(buf, req.getHeaders(), headerTable);
+        writeVarint(buf, nullableInt(req.getTimeoutMs()));
+        writeStr(buf, req.getTargetBaseUrl());
+        buf.write((byte) (req.isStreamBody() ? FLAG_STREAM_BODY : 0));
+        writeBytes(buf, req.getBody());
+        writeStr(buf, req.getAcceptBodyEncoding());
+        writeTargets(buf, req.getTargets());
+        return buf;
+    }
+
+    public static DataBuffer write(ProxyResponse resp, DataBufferFactory bufferFactory) {
+        return write(resp, bufferFactory, false);
+    }
+
+    public static DataBuffer write(ProxyResponse resp, DataBufferFactory bufferFactory, boolean headerTable) {
+        ProxyResponse.ErrorBody err = resp.getError();
+        Map<String, String> details = err != null ? stringify(err.getDetails()) : null;
+        int size = 2 + strSize(resp.getRequestId()) + varintSize(resp.getStatus()) + headersSize(resp.getHeaders(), headerTable)
+                + 1 + (err != null ? strSize(err.getCode()) + strSize(err.getMessage()) + mapSize(details) : 0)
+                + bytesSize(resp.getBody()) + varintSize(nullableInt(resp.getUpstreamMs())) + strSize(resp.getBodyEncoding());
+        DataBuffer buf = bufferFactory.allocateBuffer(size);
+        buf.write(KIND_RESPONSE);
+        buf.write(headerTable ? VERSION_HEADER_TABLE : VERSION);
+        writeStr(buf, resp.getRequestId());
+        writeVarint(buf, resp.getStatus());
+        writeHeaders(buf, resp.getHeaders(), headerTable);
+        buf.write((byte) (err != null ? 1 : 0));
+        if (err != null) {
+            writeStr(buf, err.getCode());
+            writeStr(buf, err.getMessage());
+            writeMap(buf, details);
+        }
+        writeBytes(buf, resp.getBody());
+        writeVarint(buf, nullableInt(resp.getUpstreamMs()));
+        writeStr(buf, resp.getBodyEncoding());
+        return buf;
+    }
+
+    /** 读取一个完整帧，不释放 buffer */
+    public static Object read(DataBuffer buf) {
+        byte kind = buf.read();
+        byte version = buf.read();
+        if (version != VERSION && version != VERSION_HEADER_TABLE) {
+            throw new IllegalArgumentException("Unsupported proxy wire version: " + version);
+        }
+        boolean headerTable = version == VERSION_HEADER_TABLE;
+        return switch (kind) {
+            case KIND_REQUEST -> readRequest(buf, headerTable);
+            case KIND_RESPONSE -> readResponse(buf, headerTable);
+            default -> throw new IllegalArgumentException("Unknown proxy wire frame kind: " + kind);
+        };
+    }
+
+    private static ProxyRequest readRequest(DataBuffer buf, boolean headerTable) {
+        ProxyRequest req = new ProxyRequest();
+        req.setRequestId(readStr(buf));
+        req.setMethod(readStr(buf));
+        req.setPath(readStr(buf));
+        req.setQuery(readMap(buf));
+        req.setHeaders(readHeaders(buf, headerTable));
+        int timeout = readVarint(buf);
+        req.setTimeoutMs(timeout == 0 ? null : timeout - 1);
+        req.setTargetBaseUrl(readStr(buf));
+        req.setStreamBody((buf.read() & FLAG_STREAM_BODY) != 0);
+        req.setBody(readBytes(buf));
+        if (buf.readableByteCount() > 0) {
+            req.setAcceptBodyEncoding(readStr(buf));
+        }
+        if (buf.readableByteCount() > 0) {
+            req.setTargets(readTargets(buf));
+        }
+        return req;
+    }
+
+    private static ProxyResponse readResponse(DataBuffer buf, boolean headerTable) {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId(readStr(buf));
+        resp.setStatus(readVarint(buf));
+        resp.setHeaders(readHeaders(buf, headerTable));
+        if (buf.read() != 0) {
+            ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
+            err.setCode(readStr(buf));
+            err.setMessage(readStr(buf));
+            Map<String, String> details = readMap(buf);
+            err.setDetails(details != null ? new LinkedHashMap<>(details) : null);
+            resp.setError(err);
+        }
+        resp.setBody(readBytes(buf));
+        if (buf.readableByteCount() > 0) {
+            int upstreamMs = readVarint(buf);
+            resp.setUpstreamMs(upstreamMs == 0 ? null : upstreamMs - 1);
+        }
+        if (buf.readableByteCount() > 0) {
+            resp.setBodyEncoding(readStr(buf));
+        }
+        return resp;
+    }
+
+    // ---- primitives ----
+
+    private static int nullableInt(Integer v) {
+        return v == null ? 0 : v + 1;
+    }
+
+    static int varintSize(int v) {
+        int n = 1;
+        while ((v & ~0x7F) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    static void writeVarint(DataBuffer buf, int v) {
+        while ((v & ~0x7F) != 0) {
+            buf.write((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.write((byte) v);
+    }
+
+    static int readVarint(DataBuffer buf) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.read();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len++;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符由编码器替换为 '?'
+                len++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    private static int strSize(String s) {
+        if (s == null) {
+            return 1;
+        }
+        int len = utf8Length(s);
+        return varintSize(len + 1) + len;
+    }
+
+    private static void writeStr(DataBuffer buf, String s) {
+        if (s == null) {
+            buf.write((byte) 0);
+            return;
+        }
+        writeVarint(buf, utf8Length(s) + 1);
+        buf.write(s, StandardCharsets.UTF_8);
+    }
+
+    private static String readStr(DataBuffer buf) {
+        int len = readVarint(buf) - 1;
+        if (len < 0) {
+            return null;
+        }
+        int pos = buf.readPosition();
+        String s = buf.toString(pos, len, StandardCharsets.UTF_8);
+        buf.readPosition(pos + len);
+        return s;
+    }
+
+    private static int mapSize(Map<String, String> map) {
+        if (map == null) {
+            return 1;
+        }
+        int size = varintSize(map.size() + 1);
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            size += strSize(e.getKey()) + strSize(e.getValue());
+        }
+        return size;
+    }
+
+    private static void writeMap(DataBuffer buf, Map<String, String> map) {
+        if (map == null) {
+            buf.write((byte) 0);
+            return;
+        }
+        writeVarint(buf, map.size() + 1);
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeStr(buf, e.getKey());
+            writeStr(buf, e.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataBuffer buf) {
+        int size = readVarint(buf) - 1;
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> map = new LinkedHashMap<>(Math.max(4, (int) (size / 0.75f) + 1));
+        for (int i = 0; i < size; i++) {
+            map.put(readStr(buf), readStr(buf));
+        }
+        return map;
+    }
+
+    /** 目标个数为 0 表示未配置多个实例，解码为 null */
+    private static int targetsSize(List<ProxyRequest.Target> targets) {
+        if (targets == null) {
+            return 1;
+        }
+        int size = varintSize(targets.size());
+        for (ProxyRequest.Target t : targets) {
+            size += strSize(t.getBaseUrl()) + varintSize(Math.max(0, t.getWeight()));
+        }
+        return size;
+    }
+
+    private static void writeTargets(DataBuffer buf, List<ProxyRequest.Target> targets) {
+        if (targets == null) {
+            buf.write((byte) 0);
+            return;
+        }
+        writeVarint(buf, targets.size());
+        for (ProxyRequest.Target t : targets) {
+            writeStr(buf, t.getBaseUrl());
+            writeVarint(buf, Math.max(0, t.getWeight()));
+        }
+    }
+
+    private static List<ProxyRequest.Target> readTargets(DataBuffer buf) {
+        int size = readVarint(buf);
+        if (size == 0) {
+            return null;
+        }
+        List<ProxyRequest.Target> targets = new ArrayList<>(Math.min(size, buf.readableByteCount()));
+        for (int i = 0; i < size; i++) {
+            targets.add(new ProxyRequest.Target(readStr(buf), readVarint(buf)));
+        }
+        return targets;
+    }
+
+    private static int headersSize(ProxyHeaders headers, boolean headerTable) {
+        if (headers == null) {
+            return 1;
+        }
+        int size = varintSize(headers.size() + 1);
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            String value = headers.value(i);
+            if (!headerTable) {
+                size += strSize(name) + strSize(value);
+                continue;
+            }
+            int code = HeaderTable.code(name, value);
+            size += varintSize(code);
+            if (code == HeaderTable.LITERAL) {
+                size += strSize(name) + strSize(value);
+            } else if (!HeaderTable.valueIndexed(code)) {
+                size += strSize(value);
+            }
+        }
+        return size;
+    }
+
+    private static void writeHeaders(DataBuffer buf, ProxyHeaders headers, boolean headerTable) {
+        if (headers == null) {
+            buf.write((byte) 0);
+            return;
+        }
+        writeVarint(buf, headers.size() + 1);
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            String value = headers.value(i);
+            if (!headerTable) {
+                writeStr(buf, name);
+                writeStr(buf, value);
+                continue;
+            }
+            int code = HeaderTable.code(name, value);
+            writeVarint(buf, code);
+            if (code == HeaderTable.LITERAL) {
+                writeStr(buf, name);
+                writeStr(buf, value);
+            } else if (!HeaderTable.valueIndexed(code)) {
+                writeStr(buf, value);
+            }
+        }
+    }
+
+    private static ProxyHeaders readHeaders(DataBuffer buf, boolean headerTable) {
+        int size = readVarint(buf) - 1;
+        if (size < 0) {
+            return null;
+        }
+        // 长度来自对端，按剩余字节数约束预分配
+        ProxyHeaders headers = new ProxyHeaders(Math.min(size, buf.readableByteCount()));
+        for (int i = 0; i < size; i++) {
+            int code = headerTable ? readVarint(buf) : HeaderTable.LITERAL;
+            String name = code == HeaderTable.LITERAL ? readStr(buf) : HeaderTable.name(code);
+            String value = HeaderTable.valueIndexed(code) ? HeaderTable.value(code) : readStr(buf);
+            if (name == null || value == null) {
+                throw new IllegalArgumentException("Null header name or value");
+            }
+            headers.add(name, value);
+        }
+        return headers;
+    }
+
+    private static int bytesSize(byte[] bytes) {
+        return bytes == null ? 1 : varintSize(bytes.length + 1) + bytes.length;
+    }
+
+    private static void writeBytes(DataBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.write((byte) 0);
+            return;
+        }
+        writeVarint(buf, bytes.length + 1);
+        buf.write(bytes);
+    }
+
+    private static byte[] readBytes(DataBuffer buf) {
+        int len = readVarint(buf) - 1;
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        buf.read(bytes);
+        return bytes;
+    }
+
+    /** error.details 为自由结构，二进制格式仅保留其字符串形式 */
+    private static Map<String, String> stringify(Map<String, Object> details) {
+        if (details == null) {
+            return null;
+        }
+        Map<String, String> out = new LinkedHashMap<>(details.size());
+        details.forEach((k, v) -> out.put(k, v != null ? v.toString() : null));
+        return out;
+    }
+}
@@ -0,0 +1,39 @@
+package com.achance.gateway.common.dto;
+
+import java.util.Locale;
+
+/**
+ * 隧道连接的优先级通道。Agent 注册时声明连接所属通道，网关按 clientId 的通道规则把请求分发到对应通道的连接，
+ * 使大传输不会在同一条连接上阻塞延迟敏感的小请求。
+ */
+public enum Lane {
+
+    /** 延迟敏感的常规请求，默认通道 */
+    INTERACTIVE,
+    /** 大下载/上传等批量传输 */
+    BULK;
+
+    /** 默认通道沿用原 register 路由，兼容未区分通道的网关 */
+    public static final String REGISTER_ROUTE = "register";
+
+    /** 非默认通道的注册路由前缀，后接小写通道名 */
+    public static final String LANE_REGISTER_ROUTE_PREFIX = "register.lane.";
+
+    public String wireName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public String registerRoute() {
+        return this == INTERACTIVE ? REGISTER_ROUTE : LANE_REGISTER_ROUTE_PREFIX + wireName();
+    }
+
+    /** 按名称解析（忽略大小写），未知名称返回 null */
+    public static Lane of(String name) {
+        for (Lane lane : values()) {
+            if (lane.name().equalsIgnoreCase(name)) {
+                return lane;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,246 @@
+package com.achance.gateway.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.springframework.http.HttpHeaders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * 隧道内传输的 HTTP 头：按到达顺序保存名/值对，同名多值（如 Set-Cookie）逐条保留，名称查找不区分大小写。
+ * 以平铺数组存储，与 Spring {@link HttpHeaders} 互转时不经过中间 Map；从 HttpHeaders 转入时去掉逐跳头。
+ * JSON 中为对象：单值为字符串，多值为数组。
+ */
+public final class ProxyHeaders {
+
+    /** RFC 9110 7.6.1 的逐跳头（小写），只对当前连接有意义，不经隧道转发 */
+    private static final Set<String> HOP_BY_HOP = Set.of("connection", "proxy-connection", "keep-alive", "te",
+            "transfer-encoding", "upgrade");
+
+    /** [name0, value0, name1, value1, ...] */
+    private String[] entries;
+    private int size;
+
+    public ProxyHeaders() {
+        this(8);
+    }
+
+    public ProxyHeaders(int expectedSize) {
+        this.entries = new String[Math.max(2, expectedSize * 2)];
+    }
+
+    /** 按 名, 值, 名, 值 ... 的顺序构造 */
+    public static ProxyHeaders of(String... namesAndValues) {
+        if (namesAndValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Header names and values must come in pairs");
+        }
+        ProxyHeaders headers = new ProxyHeaders(namesAndValues.length / 2);
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.add(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return headers;
+    }
+
+    /**
+     * 拷贝待转发的头：去掉逐跳头以及 Connection 中列出的头，其余按名称、逐个值保留。
+     */
+    public static ProxyHeaders fromHttpHeaders(HttpHeaders headers) {
+        List<String> connection = headers.getConnection();
+        ProxyHeaders out = new ProxyHeaders(headers.size());
+        headers.forEach((name, values) -> {
+            if (isHopByHop(name) || listedIn(connection, name)) {
+                return;
+            }
+            for (String value : values) {
+                out.add(name, value);
+            }
+        });
+        return out;
+    }
+
+    public static boolean isHopByHop(String name) {
+        return HOP_BY_HOP.contains(name.toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean listedIn(List<String> connection, String name) {
+        for (String token : connection) {
+            if (token.trim().equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 逐个值追加到 target */
+    public void copyTo(HttpHeaders target) {
+        for (int i = 0; i < size; i++) {
+            target.add(entries[2 * i], entries[2 * i + 1]);
+        }
+    }
+
+    public void add(String name, String value) {
+        if (name == null || value == null) {
+            throw new IllegalArgumentException("Header name and value must not be null");
+        }
+        if (2 * size == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[2 * size] = name;
+        entries[2 * size + 1] = value;
+        size++;
+    }
+
+    /** 替换同名的全部值 */
+    public void set(String name, String value) {
+        remove(name);
+        add(name, value);
+    }
+
+    /** 删除同名的全部值，返回是否存在 */
+    public boolean remove(String name) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!entries[2 * i].equalsIgnoreCase(name)) {
+                entries[2 * kept] = entries[2 * i];
+                entries[2 * kept + 1] = entries[2 * i + 1];
+                kept++;
+            }
+        }
+        boolean removed = kept < size;
+        Arrays.fill(entries, 2 * kept, 2 * size, null);
+        size = kept;
+        return removed;
+    }
+
+    public String getFirst(String name) {
+        for (int i = 0; i < size; i++) {
+            if (entries[2 * i].equalsIgnoreCase(name)) {
+                return entries[2 * i + 1];
+            }
+        }
+        return null;
+    }
+
+    public List<String> getAll(String name) {
+        List<String> values = new ArrayList<>(1);
+        for (int i = 0; i < size; i++) {
+            if (entries[2 * i].equalsIgnoreCase(name)) {
+                values.add(entries[2 * i + 1]);
+            }
+        }
+        return values;
+    }
+
+    public boolean contains(String name) {
+        return getFirst(name) != null;
+    }
+
+    /** 名/值对的数量（多值头每个值计一次） */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String name(int index) {
+        return entries[2 * checkIndex(index)];
+    }
+
+    public String value(int index) {
+        return entries[2 * checkIndex(index) + 1];
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Header index " + index + " out of bounds for size " + size);
+        }
+        return index;
+    }
+
+    /** 按到达顺序逐个名/值对遍历 */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(entries[2 * i], entries[2 * i + 1]);
+        }
+    }
+
+    @JsonValue
+    Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String name = entries[2 * i];
+            Object prev = json.get(name);
+            if (prev == null) {
+                json.put(name, entries[2 * i + 1]);
+            } else if (prev instanceof List<?>) {
+                @SuppressWarnings("unchecked")
+                List<String> values = (List<String>) prev;
+                values.add(entries[2 * i + 1]);
+            } else {
+                List<String> values = new ArrayList<>(2);
+                values.add((String) prev);
+                values.add(entries[2 * i + 1]);
+                json.put(name, values);
+            }
+        }
+        return json;
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    static ProxyHeaders fromJson(Map<String, Object> json) {
+        ProxyHeaders headers = new ProxyHeaders(json.size());
+        json.forEach((name, value) -> {
+            if (value instanceof List<?> values) {
+                for (Object v : values) {
+                    if (v != null) {
+                        headers.add(name, v.toString());
+                    }
+                }
+            } else if (value != null) {
+                headers.add(name, value.toString());
+            }
+        });
+        return headers;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ProxyHeaders other) || other.size != size) {
+            return false;
+        }
+        return Arrays.equals(entries, 0, 2 * size, other.entries, 0, 2 * size);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < 2 * size; i++) {
+            h = 31 * h + entries[i].hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(entries[2 * i]).append(": ").append(entries[2 * i + 1]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -1,6 +1,11 @@
 package com.achance.gateway.common.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
 import java.util.Map;
 
 @Data
@@ -9,9 +14,29 @@ public class ProxyRequest {
     private String method;
     private String path;
     private Map<String, String> query;
-    private Map<String, String> headers;
-    private String bodyBase64;
+    /** 同名多值逐条保留，不含逐跳头 */
+    private ProxyHeaders headers;
+    /** 原始请求体；JSON 编码时仍以 Base64 字符串放在 bodyBase64 字段，二进制编码时原样传输 */
+    @JsonProperty("bodyBase64")
+    private byte[] body;
     private Integer timeoutMs;
     /** 由网关下发的目标基础URL（Agent据此转发），例如 http://127.0.0.1:9000 或 https://httpbin.org */
     private String targetBaseUrl;
+    /** 流式转发时网关是否会在头部帧之后发送请求体分块 */
+    private boolean streamBody;
+    /** 网关可解码的隧道内响应体压缩编码（如 deflate），为空表示不接受压缩；旧版 Agent 忽略此字段 */
+    private String acceptBodyEncoding;
+    /**
+     * 带权重的多个上游实例，由 Agent 按负载均衡选择其一；为空时使用 targetBaseUrl。
+     * 配置多个实例时 targetBaseUrl 仍为权重最高者，旧版 Agent 忽略此字段而只转发到它
+     */
+    private List<Target> targets;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Target {
+        private String baseUrl;
+        private int weight = 1;
+    }
 }
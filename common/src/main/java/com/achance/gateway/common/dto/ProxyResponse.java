@@ -1,5 +1,6 @@
 package com.achance.gateway.common.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import java.util.Map;
 
@@ -7,9 +8,16 @@ import java.util.Map;
 public class ProxyResponse {
     private String requestId;
     private int status;
-    private Map<String, String> headers;
-    private String bodyBase64;
+    /** 同名多值逐条保留，不含逐跳头 */
+    private ProxyHeaders headers;
+    /** 原始响应体；JSON 编码时仍以 Base64 字符串放在 bodyBase64 字段，二进制编码时原样传输 */
+    @JsonProperty("bodyBase64")
+    private byte[] body;
     private ErrorBody error;
+    /** agent 侧上游耗时（毫秒）：缓冲模式为完整响应耗时，流式为首字节耗时；网关据此拆分隧道与上游延迟 */
+    private Integer upstreamMs;
+    /** body（流式时为其后的各分块）在隧道内的压缩编码，null 表示原样；网关写回调用方前解压 */
+    private String bodyEncoding;
 
     @Data
     public static class ErrorBody {
@@ -0,0 +1,200 @@
+package com.achance.gateway.common.health;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 单个上游目标的熔断器。CLOSED 时按最近 window-size 次调用的失败率与慢调用率判定，样本不少于 minimum-calls
+ * 且任一比例达到阈值即 OPEN；OPEN 期间拒绝调用，open-duration-ms 后进入 HALF_OPEN，放行至多 half-open-calls
+ * 个试探调用，全部成功则 CLOSED，任一失败或过慢则重新 OPEN。主动健康检查可经 {@link #forceOpen()} /
+ * {@link #probeSucceeded()} 提前打开或提前进入试探。线程安全（方法级同步，每次调用只做常数量的计数）。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @Getter
+    @Setter
+    public static class Settings {
+        /** 滑动窗口（最近调用次数） */
+        private int windowSize = 20;
+        /** 窗口内样本少于该值时不判定 */
+        private int minimumCalls = 10;
+        /** 失败率阈值（百分比） */
+        private int failureRateThreshold = 50;
+        /** 耗时超过该值（毫秒）记为慢调用，0 为不统计 */
+        private long slowCallDurationMs = 5_000;
+        /** 慢调用率阈值（百分比） */
+        private int slowCallRateThreshold = 80;
+        /** 打开后持续拒绝的时长（毫秒），之后进入半开试探 */
+        private long openDurationMs = 10_000;
+        /** 半开状态放行的试探调用数 */
+        private int halfOpenCalls = 3;
+    }
+
+    private final Settings settings;
+    private final LongSupplier nanoClock;
+    /** 环形窗口：每个槽位记录一次调用，bit0 失败，bit1 慢调用 */
+    private final byte[] window;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slow;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsInFlight;
+    private int trialsSucceeded;
+
+    public CircuitBreaker(Settings settings, LongSupplier nanoClock) {
+        this.settings = settings;
+        this.nanoClock = nanoClock;
+        this.window = new byte[Math.max(1, settings.getWindowSize())];
+    }
+
+    /** 当前状态；OPEN 已到期时视为 HALF_OPEN */
+    public synchronized State state() {
+        promote();
+        return state;
+    }
+
+    /** 是否放行一次调用；放行后必须以 {@link #onSuccess}、{@link #onFailure} 或 {@link #onIgnored} 之一结束 */
+    public synchronized boolean tryAcquire() {
+        promote();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialsInFlight + trialsSucceeded < Math.max(1, settings.getHalfOpenCalls())) {
+                    trialsInFlight++;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess(long durationNanos) {
+        boolean isSlow = isSlow(durationNanos);
+        if (state == State.HALF_OPEN) {
+            if (trialsInFlight == 0) {
+                // 打开之前放行的调用迟到的结果，不作为试探结果
+                return;
+            }
+            trialsInFlight--;
+            if (isSlow) {
+                open();
+            } else if (++trialsSucceeded >= Math.max(1, settings.getHalfOpenCalls())) {
+                close();
+            }
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(false, isSlow);
+        }
+    }
+
+    public synchronized void onFailure(long durationNanos) {
+        if (state == State.HALF_OPEN) {
+            if (trialsInFlight > 0) {
+                trialsInFlight--;
+                open();
+            }
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true, isSlow(durationNanos));
+        }
+    }
+
+    /** 调用未产生结果（被取消）：只归还半开试探名额，不计入窗口 */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && trialsInFlight > 0) {
+            trialsInFlight--;
+        }
+    }
+
+    /** 健康检查失败：立即打开（已打开时重新计时） */
+    public synchronized void forceOpen() {
+        if (state != State.OPEN) {
+            open();
+        } else {
+            openedAt = nanoClock.getAsLong();
+        }
+    }
+
+    /** 健康检查成功：已打开时不再等待 open-duration，直接进入半开试探 */
+    public synchronized void probeSucceeded() {
+        if (state == State.OPEN) {
+            halfOpen();
+        }
+    }
+
+    /** OPEN 状态下距离进入半开的剩余毫秒数，其他状态为 0 */
+    public synchronized long retryAfterMs() {
+        promote();
+        if (state != State.OPEN) {
+            return 0;
+        }
+        long elapsed = nanoClock.getAsLong() - openedAt;
+        return Math.max(0, settings.getOpenDurationMs() - TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    private boolean isSlow(long durationNanos) {
+        long slowMs = settings.getSlowCallDurationMs();
+        return slowMs > 0 && durationNanos >= TimeUnit.MILLISECONDS.toNanos(slowMs);
+    }
+
+    private void record(boolean failed, boolean isSlow) {
+        if (calls == window.length) {
+            byte evicted = window[next];
+            failures -= evicted & 1;
+            slow -= (evicted >> 1) & 1;
+        } else {
+            calls++;
+        }
+        window[next] = (byte) ((failed ? 1 : 0) | (isSlow ? 2 : 0));
+        next = (next + 1) % window.length;
+        failures += failed ? 1 : 0;
+        slow += isSlow ? 1 : 0;
+        if (calls >= Math.max(1, settings.getMinimumCalls())
+                && (failures * 100 >= settings.getFailureRateThreshold() * calls
+                || (settings.getSlowCallDurationMs() > 0 && slow * 100 >= settings.getSlowCallRateThreshold() * calls))) {
+            open();
+        }
+    }
+
+    private void promote() {
+        if (state == State.OPEN
+                && nanoClock.getAsLong() - openedAt >= TimeUnit.MILLISECONDS.toNanos(settings.getOpenDurationMs())) {
+            halfOpen();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        trialsInFlight = 0;
+        trialsSucceeded = 0;
+    }
+
+    private void halfOpen() {
+        state = State.HALF_OPEN;
+        trialsInFlight = 0;
+        trialsSucceeded = 0;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        calls = 0;
+        next = 0;
+        failures = 0;
+        slow = 0;
+    }
+}
@@ -0,0 +1,55 @@
+package com.achance.gateway.common.health;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Agent 向网关上报的上游熔断状态。网关在连接注册后以 requestStream 订阅 {@value #ROUTE}，
+ * Agent 先回一份当前快照，此后每次有目标打开或恢复时再发一份完整快照。
+ * 快照为纯文本，每行一个当前不可用（熔断打开）的目标：{@code <targetBaseUrl> <retryAfterMs>}；空串表示全部可用。
+ */
+public final class UpstreamHealth {
+
+    public static final String ROUTE = "agent.upstream.health";
+
+    private UpstreamHealth() {
+    }
+
+    /** 统一去掉末尾的 /，使网关下发的目标地址与 Agent 侧的键一致 */
+    public static String normalize(String baseUrl) {
+        return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /** down：目标地址 -> 预计恢复试探前的剩余毫秒数 */
+    public static String encode(Map<String, Long> down) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> e : down.entrySet()) {
+            if (!sb.isEmpty()) {
+                sb.append('\n');
+            }
+            sb.append(e.getKey()).append(' ').append(Math.max(0, e.getValue()));
+        }
+        return sb.toString();
+    }
+
+    /** 解析快照，无法识别的行被忽略 */
+    public static Map<String, Long> decode(String snapshot) {
+        if (snapshot == null || snapshot.isBlank()) {
+            return Map.of();
+        }
+        Map<String, Long> down = new LinkedHashMap<>();
+        for (String line : snapshot.split("\n")) {
+            int space = line.lastIndexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            try {
+                down.put(normalize(line.substring(0, space).trim()), Long.parseLong(line.substring(space + 1).trim()));
+            } catch (NumberFormatException ignored) {
+                // 留给后续版本扩展行格式
+            }
+        }
+        return Collections.unmodifiableMap(down);
+    }
+}
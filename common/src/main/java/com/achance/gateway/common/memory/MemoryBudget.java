@@ -0,0 +1,219 @@
+package com.achance.gateway.common.memory;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程级的在途字节预算：缓冲的请求/响应体在持有期间记账，总量不超过 limit，单个 key（clientId 等）不超过其份额。
+ * 预算不足时按到达顺序排队等待归还，等待超时则放弃；已有排队者时新预留同样排队，大传输不会被后来的小传输饿死
+ * （只超出自身 key 份额的等待者可被越过）。上限随每次调用传入，热加载后立即生效。
+ * 已在内存中的字节（例如刚收到的响应体）以 {@link Lease#add} 强制记账，可使总量暂时超出上限，此后的新预留等待其归还。
+ * 线程安全（单一监视器，每次调用只做常数量的计数，归还时逐个检查排队者）。
+ */
+public class MemoryBudget {
+
+    private final Map<String, AtomicLong> reservedByKey = new ConcurrentHashMap<>();
+    private final AtomicLong reserved = new AtomicLong();
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    /** 立即预留；预算不足或已有排队者时返回 null */
+    public Lease tryReserve(String key, long bytes, long limit, long keyLimit) {
+        AtomicLong keyReserved = keyCounter(key);
+        synchronized (this) {
+            if (!waiters.isEmpty() || !fits(keyReserved, bytes, limit, keyLimit)) {
+                return null;
+            }
+            return grant(key, keyReserved, bytes);
+        }
+    }
+
+    /**
+     * 预留，预算不足时排队至多 maxWait；超时以 {@link TimeoutException} 结束。
+     * 取消订阅时撤销排队，已发放的 Lease 由调用方负责归还。
+     */
+    public Mono<Lease> reserve(String key, long bytes, long limit, long keyLimit, Duration maxWait) {
+        return Mono.<Lease>create(sink -> {
+            AtomicLong keyReserved = keyCounter(key);
+            Waiter waiter;
+            synchronized (this) {
+                if (waiters.isEmpty() && fits(keyReserved, bytes, limit, keyLimit)) {
+                    waiter = null;
+                } else if (maxWait.isZero() || maxWait.isNegative()) {
+                    sink.error(new TimeoutException("Memory budget exhausted"));
+                    return;
+                } else {
+                    waiter = new Waiter(sink, key, keyReserved, bytes, limit, keyLimit);
+                    waiters.addLast(waiter);
+                }
+            }
+            if (waiter == null) {
+                sink.success(grant(key, keyReserved, bytes));
+                return;
+            }
+            sink.onCancel(() -> abandon(waiter));
+        }).timeout(maxWait.isNegative() ? Duration.ZERO : maxWait);
+    }
+
+    /** 为已在内存中的字节记账（不等待，可超出上限），例如已解码的请求体 */
+    public Lease hold(String key, long bytes) {
+        return grant(key, keyCounter(key), bytes);
+    }
+
+    /** 当前预留总字节数 */
+    public long reserved() {
+        return reserved.get();
+    }
+
+    /** 某个 key 的预留字节数 */
+    public long reserved(String key) {
+        AtomicLong counter = reservedByKey.get(key);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /** 排队中的预留数 */
+    public synchronized int waiting() {
+        return waiters.size();
+    }
+
+    /** key 的预留计数（首次访问时创建），供注册 gauge */
+    public AtomicLong keyCounter(String key) {
+        return reservedByKey.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    /** 在监视器内调用；份额与总量都按加入后的结果判断，单独一笔超出上限的预留永远不会满足 */
+    private boolean fits(AtomicLong keyReserved, long bytes, long limit, long keyLimit) {
+        return reserved.get() + bytes <= limit && keyReserved.get() + bytes <= keyLimit;
+    }
+
+    private Lease grant(String key, AtomicLong keyReserved, long bytes) {
+        Lease lease = new Lease(keyReserved);
+        lease.add(bytes);
+        return lease;
+    }
+
+    private void abandon(Waiter waiter) {
+        List<Waiter> granted;
+        Lease undelivered = null;
+        synchronized (this) {
+            if (waiters.remove(waiter)) {
+                // 排在队首的大预留放弃后，其后的预留可能已经满足
+                granted = drain();
+            } else {
+                // 已发放但尚未交付：订阅方不会再收到，直接归还
+                granted = List.of();
+                undelivered = waiter.lease;
+            }
+        }
+        if (undelivered != null) {
+            undelivered.close();
+        }
+        deliver(granted);
+    }
+
+    private void released() {
+        List<Waiter> granted;
+        synchronized (this) {
+            if (waiters.isEmpty()) {
+                return;
+            }
+            granted = drain();
+        }
+        deliver(granted);
+    }
+
+    /** 在监视器内调用：按顺序发放；总量不足时停在该等待者，只是超出自身份额的等待者可被越过 */
+    private List<Waiter> drain() {
+        List<Waiter> granted = new ArrayList<>();
+        Iterator<Waiter> it = waiters.iterator();
+        while (it.hasNext()) {
+            Waiter w = it.next();
+            if (reserved.get() + w.bytes > w.limit) {
+                break;
+            }
+            if (w.keyReserved.get() + w.bytes > w.keyLimit) {
+                continue;
+            }
+            it.remove();
+            // 在监视器内计入，后续等待者按加入后的总量判断
+            w.lease = grant(w.key, w.keyReserved, w.bytes);
+            granted.add(w);
+        }
+        return granted;
+    }
+
+    /** 在监视器外交付：订阅方可能同步地继续处理乃至归还预留 */
+    private static void deliver(List<Waiter> granted) {
+        for (Waiter w : granted) {
+            w.sink.success(w.lease);
+        }
+    }
+
+    private static final class Waiter {
+        final MonoSink<Lease> sink;
+        final String key;
+        final AtomicLong keyReserved;
+        final long bytes;
+        final long limit;
+        final long keyLimit;
+        /** 发放后设置（在监视器内） */
+        Lease lease;
+
+        Waiter(MonoSink<Lease> sink, String key, AtomicLong keyReserved, long bytes, long limit, long keyLimit) {
+            this.sink = sink;
+            this.key = key;
+            this.keyReserved = keyReserved;
+            this.bytes = bytes;
+            this.limit = limit;
+            this.keyLimit = keyLimit;
+        }
+    }
+
+    /** 一笔预留；可追加已在内存中的字节，close 幂等并一次性归还全部字节 */
+    public final class Lease implements AutoCloseable {
+        private final AtomicLong keyReserved;
+        private long bytes;
+        private boolean closed;
+
+        private Lease(AtomicLong keyReserved) {
+            this.keyReserved = keyReserved;
+        }
+
+        /** 追加记账（不等待，可超出上限）；已归还后追加无效 */
+        public synchronized void add(long more) {
+            if (more <= 0 || closed) {
+                return;
+            }
+            bytes += more;
+            keyReserved.addAndGet(more);
+            reserved.addAndGet(more);
+        }
+
+        public synchronized long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                keyReserved.addAndGet(-bytes);
+                reserved.addAndGet(-bytes);
+                bytes = 0;
+            }
+            released();
+        }
+    }
+}
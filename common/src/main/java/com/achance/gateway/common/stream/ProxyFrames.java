@@ -0,0 +1,76 @@
+package com.achance.gateway.common.stream;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 流式转发（RSocket requestChannel）的帧约定：
+ * 首帧为头部（请求方向为 ProxyRequest，响应方向为 ProxyResponse，按连接的 data MimeType 编码），
+ * 其后每一帧都是原始 body 分块，两个方向均按 RSocket request(n) 背压推进。
+ */
+public final class ProxyFrames {
+
+    /** 流式转发路由 */
+    public static final String STREAM_ROUTE = "agent.proxy.stream";
+
+    /** WebSocket 转发路由：头部约定相同，其后每一帧为一条 WebSocket 消息（见 {@link WebSocketFrames}），响应头部状态为 101 表示上游握手成功 */
+    public static final String WEBSOCKET_ROUTE = "agent.proxy.websocket";
+
+    private ProxyFrames() {
+    }
+
+    /** 按连接的 data MimeType 编码头部帧 */
+    public static DataBuffer encode(RSocketStrategies strategies, MimeType mimeType, Object frame) {
+        ResolvableType type = ResolvableType.forInstance(frame);
+        Encoder<Object> encoder = strategies.encoder(type, mimeType);
+        return encoder.encodeValue(frame, strategies.dataBufferFactory(), type, mimeType, null);
+    }
+
+    /** 按连接的 data MimeType 解码头部帧，解码器负责释放 buffer */
+    public static <T> T decode(RSocketStrategies strategies, MimeType mimeType, DataBuffer buffer, Class<T> frameType) {
+        ResolvableType type = ResolvableType.forClass(frameType);
+        Decoder<T> decoder = strategies.decoder(type, mimeType);
+        return decoder.decode(buffer, type, mimeType, null);
+    }
+
+    /**
+     * 拆出首帧头部并把剩余的 body 分块交给 handler。
+     * headerDecoder 负责解码并释放首帧（解码失败时由本方法兜底释放）；对端未发送任何帧即结束时返回空流，错误原样透传。
+     * 源流不会因 handler 返回的 Publisher 结束而被取消，body 可以在之后再订阅。
+     */
+    public static <H, R> Flux<R> splitHeader(Flux<DataBuffer> frames,
+                                            Function<DataBuffer, H> headerDecoder,
+                                            BiFunction<H, Flux<DataBuffer>, ? extends Publisher<R>> handler) {
+        return frames.switchOnFirst((signal, flux) -> {
+            if (!signal.hasValue()) {
+                return flux.thenMany(Flux.<R>empty());
+            }
+            DataBuffer head = signal.get();
+            H header;
+            try {
+                header = headerDecoder.apply(head);
+            } catch (RuntimeException ex) {
+                // 解码器未必在失败时释放首帧；已释放的 buffer 这里是空操作
+                DataBufferUtils.release(head);
+                return Flux.error(ex);
+            }
+            // switchOnFirst 会向内层重放首帧；首帧已由 headerDecoder 释放，这里直接丢弃
+            Flux<DataBuffer> body = flux.handle((buf, sink) -> {
+                if (buf != head) {
+                    sink.next(buf);
+                }
+            });
+            return handler.apply(header, body);
+        }, false);
+    }
+}
@@ -0,0 +1,78 @@
+package com.achance.gateway.common.stream;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * WebSocket 转发（{@link ProxyFrames#WEBSOCKET_ROUTE}）头部之后的消息帧：首字节为 RFC 6455 的 opcode，其后为消息内容。
+ * 分片消息由两端聚合后整条转发；CLOSE 的内容为 2 字节关闭码加 UTF-8 原因，作为该方向的最后一帧。
+ */
+public final class WebSocketFrames {
+
+    public static final int TEXT = 0x1;
+    public static final int BINARY = 0x2;
+    public static final int CLOSE = 0x8;
+    public static final int PING = 0x9;
+    public static final int PONG = 0xA;
+
+    /** 关闭帧未携带关闭码（RFC 6455 7.4.1） */
+    public static final int NO_STATUS_CODE = 1005;
+
+    private WebSocketFrames() {
+    }
+
+    /** 复制消息内容编码为一帧，不改变也不释放 payload */
+    public static DataBuffer encode(DataBufferFactory factory, int opcode, DataBuffer payload) {
+        DataBuffer frame = factory.allocateBuffer(1 + payload.readableByteCount());
+        frame.write((byte) opcode);
+        try (DataBuffer.ByteBufferIterator it = payload.readableByteBuffers()) {
+            while (it.hasNext()) {
+                frame.write(it.next());
+            }
+        }
+        return frame;
+    }
+
+    public static DataBuffer encode(DataBufferFactory factory, int opcode, ByteBuffer payload) {
+        DataBuffer frame = factory.allocateBuffer(1 + payload.remaining());
+        frame.write((byte) opcode);
+        frame.write(payload);
+        return frame;
+    }
+
+    public static DataBuffer close(DataBufferFactory factory, int code, String reason) {
+        byte[] text = reason != null ? reason.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        DataBuffer frame = factory.allocateBuffer(3 + text.length);
+        frame.write(new byte[]{(byte) CLOSE, (byte) (code >> 8), (byte) code});
+        frame.write(text);
+        return frame;
+    }
+
+    /** 读出 opcode，frame 的读位置随之前移，剩余部分即消息内容 */
+    public static int opcode(DataBuffer frame) {
+        return frame.read() & 0xFF;
+    }
+
+    /** 读出 CLOSE 帧内容中的关闭码，内容不足 2 字节时为 {@link #NO_STATUS_CODE} */
+    public static int closeCode(DataBuffer payload) {
+        if (payload.readableByteCount() < 2) {
+            return NO_STATUS_CODE;
+        }
+        return ((payload.read() & 0xFF) << 8) | (payload.read() & 0xFF);
+    }
+
+    /** 关闭码可否在线路上发送：1005/1006/1015 等保留值与未分配的值只能由端点本地使用，转发时按正常关闭处理 */
+    public static boolean isSendableCloseCode(int code) {
+        return (code >= 1000 && code <= 1003) || (code >= 1007 && code <= 1014) || (code >= 3000 && code < 5000);
+    }
+
+    /** 读出关闭码之后的关闭原因 */
+    public static String closeReason(DataBuffer payload) {
+        String reason = payload.toString(StandardCharsets.UTF_8);
+        payload.readPosition(payload.writePosition());
+        return reason;
+    }
+}
@@ -0,0 +1,57 @@
+package com.achance.gateway.common.transport;
+
+import io.rsocket.transport.ClientTransport;
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.client.WebsocketClientTransport;
+import reactor.netty.http.HttpResources;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.tcp.TcpClient;
+import reactor.netty.tcp.TcpResources;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * 按地址 scheme 选择隧道传输：ws/wss 为 RSocket over WebSocket（可经 HTTP 反向代理），
+ * tcp 为 RSocket over TCP（直连网关的 TCP 监听，省去 WebSocket 帧头与 HTTP 升级）。
+ * preferNative 时在 Linux 上使用 Netty 原生 epoll 传输（不可用时自动回退 NIO），关闭后固定使用 NIO。
+ */
+public final class TunnelTransports {
+
+    private TunnelTransports() {
+    }
+
+    public static ClientTransport client(URI uri, boolean preferNative) {
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        String host = uri.getHost();
+        if (host == null) {
+            throw new IllegalArgumentException("Missing host in tunnel url: " + uri);
+        }
+        switch (scheme) {
+            case "tcp": {
+                if (uri.getPort() < 0) {
+                    throw new IllegalArgumentException("Missing port in tunnel url: " + uri);
+                }
+                return TcpClientTransport.create(TcpClient.create()
+                        .host(host)
+                        .port(uri.getPort())
+                        .runOn(TcpResources.get(), preferNative));
+            }
+            case "ws":
+            case "wss": {
+                boolean secure = scheme.equals("wss");
+                HttpClient http = HttpClient.create()
+                        .host(host)
+                        .port(uri.getPort() >= 0 ? uri.getPort() : secure ? 443 : 80)
+                        .runOn(HttpResources.get(), preferNative);
+                String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+                if (uri.getRawQuery() != null) {
+                    path = path + "?" + uri.getRawQuery();
+                }
+                return WebsocketClientTransport.create(secure ? http.secure() : http, path);
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported tunnel url scheme (expected ws, wss or tcp): " + uri);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.achance.gateway.common.codec;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BodyCompressionTest {
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void bufferedRoundTripShrinksCompressibleBody() {
+        byte[] body = json(2_000);
+        byte[] deflated = BodyCompression.deflate(body, Deflater.BEST_SPEED);
+        assertTrue(deflated.length < body.length / 4, "deflated=" + deflated.length);
+        assertArrayEquals(body, BodyCompression.inflate(deflated));
+    }
+
+    @Test
+    void streamChunksInflateIndependentlyAndFormOneZlibStream() {
+        byte[] body = json(5_000);
+        List<DataBuffer> chunks = List.of(
+                bufferFactory.wrap(slice(body, 0, 100)),
+                bufferFactory.wrap(slice(body, 100, 70_000)),
+                bufferFactory.wrap(slice(body, 70_000, body.length)));
+
+        List<byte[]> deflated = BodyCompression.deflate(Flux.fromIterable(chunks), Deflater.BEST_SPEED, bufferFactory)
+                .map(this::bytes)
+                .collectList()
+                .block();
+        // 每个输入分块一个输出分块，外加 zlib 尾部
+        assertEquals(chunks.size() + 1, deflated.size());
+        byte[] whole = concat(deflated);
+        assertArrayEquals(body, BodyCompression.inflate(whole));
+
+        // 逐块解压：首个输入分块到达后即可解出对应的明文
+        List<byte[]> inflated = BodyCompression.inflate(Flux.fromIterable(deflated).map(bufferFactory::wrap), bufferFactory)
+                .map(this::bytes)
+                .collectList()
+                .block();
+        assertArrayEquals(slice(body, 0, 100), inflated.get(0));
+        assertArrayEquals(body, concat(inflated));
+    }
+
+    @Test
+    void malformedStreamFails() {
+        Flux<DataBuffer> garbage = Flux.just(bufferFactory.wrap(new byte[]{1, 2, 3, 4}));
+        assertThrows(IllegalArgumentException.class, () -> BodyCompression.inflate(garbage, bufferFactory).blockLast());
+    }
+
+    @Test
+    void skipsAlreadyEncodedAndCompressedTypes() {
+        assertTrue(BodyCompression.isCompressible("application/json; charset=utf-8", null));
+        assertTrue(BodyCompression.isCompressible("image/svg+xml", "identity"));
+        assertTrue(BodyCompression.isCompressible(null, null));
+        assertFalse(BodyCompression.isCompressible("text/html", "gzip"));
+        assertFalse(BodyCompression.isCompressible("image/png", null));
+        assertFalse(BodyCompression.isCompressible("video/mp4", null));
+        assertFalse(BodyCompression.isCompressible("Application/Zip", null));
+    }
+
+    private static byte[] json(int items) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < items; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"active\":true},");
+        }
+        return sb.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] slice(byte[] src, int from, int to) {
+        byte[] out = new byte[to - from];
+        System.arraycopy(src, from, out, 0, out.length);
+        return out;
+    }
+
+    private static byte[] concat(List<byte[]> parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parts.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+
+    private byte[] bytes(DataBuffer buf) {
+        byte[] out = new byte[buf.readableByteCount()];
+        buf.read(out);
+        DataBufferUtils.release(buf);
+        return out;
+    }
+}
@@ -0,0 +1,224 @@
+package com.achance.gateway.common.codec;
+
+import com.achance.gateway.common.dto.ProxyHeaders;
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.dto.ProxyResponse;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyWireFormatTest {
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+    private final ProxyBinaryEncoder encoder = new ProxyBinaryEncoder();
+    private final ProxyBinaryDecoder decoder = new ProxyBinaryDecoder();
+
+    @Test
+    void requestRoundTrip() {
+        ProxyRequest req = new ProxyRequest();
+        req.setRequestId("r-1");
+        req.setMethod("POST");
+        req.setPath("/api/订单");
+        req.setQuery(Map.of("q", "a b"));
+        req.setHeaders(ProxyHeaders.of("Content-Type", "application/json", "X-Emoji", "😀"));
+        req.setTimeoutMs(1500);
+        req.setTargetBaseUrl("http://127.0.0.1:7001");
+        req.setStreamBody(true);
+        req.setBody(new byte[]{0, 1, 2, (byte) 0xFF});
+        req.setAcceptBodyEncoding(BodyCompression.DEFLATE);
+
+        ProxyRequest out = roundTrip(req, ProxyRequest.class);
+        assertEquals(req.getRequestId(), out.getRequestId());
+        assertEquals(req.getMethod(), out.getMethod());
+        assertEquals(req.getPath(), out.getPath());
+        assertEquals(req.getQuery(), out.getQuery());
+        assertEquals(req.getHeaders(), out.getHeaders());
+        assertEquals(1500, out.getTimeoutMs());
+        assertEquals(req.getTargetBaseUrl(), out.getTargetBaseUrl());
+        assertTrue(out.isStreamBody());
+        assertArrayEquals(req.getBody(), out.getBody());
+        assertEquals(BodyCompression.DEFLATE, out.getAcceptBodyEncoding());
+    }
+
+    @Test
+    void requestTargetsAreOptionalTrailer() {
+        ProxyRequest req = new ProxyRequest();
+        req.setPath("/a");
+        req.setTargetBaseUrl("http://10.0.0.1:8080");
+        req.setTargets(List.of(new ProxyRequest.Target("http://10.0.0.1:8080", 3), new ProxyRequest.Target("http://10.0.0.2:8080", 1)));
+        ProxyRequest out = roundTrip(req, ProxyRequest.class);
+        assertEquals(req.getTargets(), out.getTargets());
+
+        // 旧版本网关的帧在 acceptBodyEncoding 之后即结束
+        DataBuffer full = ProxyWireFormat.write(req, bufferFactory);
+        int trailer = 1 + (1 + 20 + 1) * 2;
+        byte[] bytes = new byte[full.readableByteCount() - trailer];
+        full.read(bytes);
+        ProxyRequest legacy = (ProxyRequest) ProxyWireFormat.read(bufferFactory.wrap(bytes));
+        assertEquals("/a", legacy.getPath());
+        assertEquals(req.getTargetBaseUrl(), legacy.getTargetBaseUrl());
+        assertNull(legacy.getTargets());
+    }
+
+    @Test
+    void requestNullsRoundTrip() {
+        ProxyRequest out = roundTrip(new ProxyRequest(), ProxyRequest.class);
+        assertNull(out.getRequestId());
+        assertNull(out.getQuery());
+        assertNull(out.getHeaders());
+        assertNull(out.getTimeoutMs());
+        assertNull(out.getBody());
+        assertFalse(out.isStreamBody());
+        assertNull(out.getAcceptBodyEncoding());
+        assertNull(out.getTargets());
+    }
+
+    @Test
+    void responseRoundTripWithError() {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId("r-2");
+        resp.setStatus(502);
+        resp.setHeaders(ProxyHeaders.of("Content-Length", "0"));
+        ProxyResponse.ErrorBody err = new ProxyResponse.ErrorBody();
+        err.setCode("DOWNSTREAM_UNAVAILABLE");
+        err.setMessage("Connection refused");
+        err.setDetails(Map.of("attempts", 3));
+        resp.setError(err);
+        resp.setBody(new byte[300]);
+
+        ProxyResponse out = roundTrip(resp, ProxyResponse.class);
+        assertEquals(502, out.getStatus());
+        assertEquals(resp.getHeaders(), out.getHeaders());
+        assertEquals("DOWNSTREAM_UNAVAILABLE", out.getError().getCode());
+        assertEquals("Connection refused", out.getError().getMessage());
+        assertEquals("3", out.getError().getDetails().get("attempts"));
+        assertArrayEquals(resp.getBody(), out.getBody());
+    }
+
+    @Test
+    void responseUpstreamMsIsOptionalTrailer() {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setStatus(200);
+        resp.setUpstreamMs(42);
+        resp.setBodyEncoding(BodyCompression.DEFLATE);
+        ProxyResponse out = roundTrip(resp, ProxyResponse.class);
+        assertEquals(42, out.getUpstreamMs());
+        assertEquals(BodyCompression.DEFLATE, out.getBodyEncoding());
+
+        // 旧版本 agent 的帧在 body 之后即结束，或只带 upstreamMs
+        ProxyResponse legacy = truncated(resp, 1 + 1 + BodyCompression.DEFLATE.length());
+        assertEquals(200, legacy.getStatus());
+        assertNull(legacy.getUpstreamMs());
+        ProxyResponse withUpstreamMs = truncated(resp, 1 + BodyCompression.DEFLATE.length());
+        assertEquals(42, withUpstreamMs.getUpstreamMs());
+        assertNull(withUpstreamMs.getBodyEncoding());
+    }
+
+    @Test
+    void headerTableRoundTripKeepsCaseOrderAndRepeatedValues() {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setStatus(200);
+        resp.setHeaders(ProxyHeaders.of(
+                "Content-Type", "application/json",
+                "content-type", "application/json",
+                "Cache-Control", "max-age=5",
+                "Set-Cookie", "a=1; Path=/",
+                "Set-Cookie", "b=2; HttpOnly",
+                "X-Trace", "t-1",
+                "x-TRACE", "t-2"));
+
+        ProxyResponse out = roundTrip(resp, ProxyResponse.class, ProxyWireFormat.MIME_TYPE_HEADER_TABLE);
+        assertEquals(resp.getHeaders(), out.getHeaders());
+        assertEquals(List.of("a=1; Path=/", "b=2; HttpOnly"), out.getHeaders().getAll("set-cookie"));
+        // 格式 1 同样逐条保留
+        assertEquals(resp.getHeaders(), roundTrip(resp, ProxyResponse.class).getHeaders());
+    }
+
+    @Test
+    void headerTableShrinksCommonHeaders() {
+        ProxyRequest req = new ProxyRequest();
+        req.setHeaders(ProxyHeaders.of(
+                "Accept", "application/json",
+                "Accept-Encoding", "gzip, deflate, br",
+                "user-agent", "curl/8.5.0",
+                "Content-Type", "application/json"));
+        DataBuffer v1 = ProxyWireFormat.write(req, bufferFactory, false);
+        DataBuffer v2 = ProxyWireFormat.write(req, bufferFactory, true);
+        assertEquals(ProxyWireFormat.VERSION_HEADER_TABLE, v2.getByte(1));
+        // 3 个名值组合各 1 字节，user-agent 只写值
+        assertTrue(v1.readableByteCount() - v2.readableByteCount() > 70,
+                v1.readableByteCount() + " -> " + v2.readableByteCount());
+        assertEquals(req.getHeaders(), ((ProxyRequest) ProxyWireFormat.read(v2)).getHeaders());
+        DataBufferUtils.release(v1);
+    }
+
+    @Test
+    void unknownHeaderTableIndexIsRejected() {
+        DataBuffer buf = bufferFactory.wrap(new byte[]{ProxyWireFormat.KIND_REQUEST, ProxyWireFormat.VERSION_HEADER_TABLE,
+                0, 0, 0, 0, 2, (byte) 0xFF, 0x7F});
+        assertThrows(DecodingException.class, () -> decoder.decode(buf, ResolvableType.forClass(ProxyRequest.class),
+                ProxyWireFormat.MIME_TYPE_HEADER_TABLE, null));
+    }
+
+    private ProxyResponse truncated(ProxyResponse resp, int dropTrailingBytes) {
+        DataBuffer full = ProxyWireFormat.write(resp, bufferFactory);
+        byte[] bytes = new byte[full.readableByteCount() - dropTrailingBytes];
+        full.read(bytes);
+        return (ProxyResponse) ProxyWireFormat.read(bufferFactory.wrap(bytes));
+    }
+
+    @Test
+    void malformedFrameIsReleased() {
+        DataBuffer buf = bufferFactory.wrap(new byte[]{ProxyWireFormat.KIND_REQUEST, ProxyWireFormat.VERSION, (byte) 0x80});
+        assertThrows(DecodingException.class, () ->
+                decoder.decode(buf, ResolvableType.forClass(ProxyRequest.class), ProxyWireFormat.MIME_TYPE, null));
+        assertFalse(((PooledDataBuffer) buf).isAllocated());
+    }
+
+    @Test
+    void appliesOnlyToProxyDtosWithBinaryMimeType() {
+        ResolvableType req = ResolvableType.forClass(ProxyRequest.class);
+        assertTrue(encoder.canEncode(req, ProxyWireFormat.MIME_TYPE));
+        assertFalse(encoder.canEncode(req, null));
+        assertFalse(encoder.canEncode(ResolvableType.forClass(String.class), ProxyWireFormat.MIME_TYPE));
+        assertTrue(decoder.canDecode(ResolvableType.forClass(ProxyResponse.class), ProxyWireFormat.MIME_TYPE));
+        assertTrue(encoder.canEncode(req, ProxyWireFormat.MIME_TYPE_HEADER_TABLE));
+        assertTrue(decoder.canDecode(ResolvableType.forClass(ProxyResponse.class), ProxyWireFormat.MIME_TYPE_HEADER_TABLE));
+    }
+
+    @Test
+    void utf8LengthMatchesJdk() {
+        for (String s : new String[]{"", "abc", "é", "订单", "😀", "a\uD800b"}) {
+            assertEquals(s.getBytes(StandardCharsets.UTF_8).length, ProxyWireFormat.utf8Length(s), s);
+        }
+    }
+
+    private <T> T roundTrip(Object value, Class<T> type) {
+        return roundTrip(value, type, ProxyWireFormat.MIME_TYPE);
+    }
+
+    private <T> T roundTrip(Object value, Class<T> type, MimeType mimeType) {
+        ResolvableType rt = ResolvableType.forClass(type);
+        DataBuffer buf = encoder.encodeValue(value, bufferFactory, rt, mimeType, null);
+        Object out = decoder.decode(buf, rt, mimeType, null);
+        assertFalse(((PooledDataBuffer) buf).isAllocated());
+        return type.cast(out);
+    }
+}
@@ -0,0 +1,62 @@
+package com.achance.gateway.common.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyHeadersTest {
+
+    @Test
+    void fromHttpHeadersDropsHopByHopAndConnectionListedHeaders() {
+        HttpHeaders in = new HttpHeaders();
+        in.add("Connection", "keep-alive, X-Internal");
+        in.add("Keep-Alive", "timeout=5");
+        in.add("Transfer-Encoding", "chunked");
+        in.add("X-Internal", "secret");
+        in.add("Accept", "text/html");
+        in.add("Set-Cookie", "a=1");
+        in.add("Set-Cookie", "b=2");
+
+        ProxyHeaders headers = ProxyHeaders.fromHttpHeaders(in);
+        assertEquals(ProxyHeaders.of("Accept", "text/html", "Set-Cookie", "a=1", "Set-Cookie", "b=2"), headers);
+
+        HttpHeaders out = new HttpHeaders();
+        headers.copyTo(out);
+        assertEquals(List.of("a=1", "b=2"), out.get("Set-Cookie"));
+    }
+
+    @Test
+    void lookupIsCaseInsensitiveAndSetReplacesAllValues() {
+        ProxyHeaders headers = ProxyHeaders.of("Set-Cookie", "a=1", "X-A", "x", "set-cookie", "b=2");
+        assertEquals("a=1", headers.getFirst("SET-COOKIE"));
+        assertEquals(List.of("a=1", "b=2"), headers.getAll("Set-Cookie"));
+
+        headers.set("Set-Cookie", "c=3");
+        assertEquals(ProxyHeaders.of("X-A", "x", "Set-Cookie", "c=3"), headers);
+        assertTrue(headers.remove("x-a"));
+        assertFalse(headers.remove("x-a"));
+        assertNull(headers.getFirst("X-A"));
+        assertThrows(IllegalArgumentException.class, () -> headers.add("X-B", null));
+    }
+
+    @Test
+    void jsonUsesArraysOnlyForRepeatedNames() throws Exception {
+        ObjectMapper json = new ObjectMapper();
+        ProxyHeaders headers = ProxyHeaders.of("Content-Type", "text/plain", "Set-Cookie", "a=1", "Set-Cookie", "b=2");
+        String text = json.writeValueAsString(headers);
+        assertEquals("{\"Content-Type\":\"text/plain\",\"Set-Cookie\":[\"a=1\",\"b=2\"]}", text);
+        assertEquals(headers, json.readValue(text, ProxyHeaders.class));
+
+        // 旧版本以 Map<String,String> 发送
+        ProxyRequest req = json.readValue("{\"headers\":{\"Accept\":\"*/*\"}}", ProxyRequest.class);
+        assertEquals(ProxyHeaders.of("Accept", "*/*"), req.getHeaders());
+    }
+}
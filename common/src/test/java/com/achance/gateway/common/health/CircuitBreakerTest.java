@@ -0,0 +1,131 @@
+package com.achance.gateway.common.health;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void opensAtFailureRateOnceMinimumCallsSeenAndRejectsUntilOpenDurationPasses() {
+        CircuitBreaker breaker = breaker(settings());
+        for (int i = 0; i < 4; i++) {
+            breaker.onSuccess(ms(10));
+        }
+        // 4 成功 + 3 失败 = 7 次，未达 minimum-calls
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure(ms(10));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        // 第 10 次调用时失败 5 次，达到 50%
+        breaker.onSuccess(ms(10));
+        breaker.onFailure(ms(10));
+        breaker.onFailure(ms(10));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+        clock.addAndGet(ms(400));
+        assertEquals(600, breaker.retryAfterMs());
+
+        clock.addAndGet(ms(600));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals(0, breaker.retryAfterMs());
+    }
+
+    @Test
+    void slowCallsAloneOpenTheCircuit() {
+        CircuitBreaker breaker = breaker(settings());
+        for (int i = 0; i < 10; i++) {
+            breaker.onSuccess(i < 8 ? ms(250) : ms(10));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void halfOpenLimitsTrialsClosesAfterAllSucceedAndReopensOnFailure() {
+        CircuitBreaker breaker = openBreaker();
+        clock.addAndGet(ms(1_000));
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess(ms(10));
+        // 已成功一个，放行的试探总数仍不超过 half-open-calls
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess(ms(10));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        // 关闭后窗口清空，不会被打开前的失败立即再次打开
+        breaker.onFailure(ms(10));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        CircuitBreaker other = openBreaker();
+        clock.addAndGet(ms(1_000));
+        assertTrue(other.tryAcquire());
+        other.onFailure(ms(10));
+        assertEquals(CircuitBreaker.State.OPEN, other.state());
+    }
+
+    @Test
+    void cancelledTrialReturnsItsSlotAndStaleResultsAreIgnored() {
+        CircuitBreaker breaker = breaker(settings());
+        // 打开之前放行、打开后才结束的调用
+        assertTrue(breaker.tryAcquire());
+        breaker.forceOpen();
+        clock.addAndGet(ms(1_000));
+        breaker.onFailure(ms(10));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored();
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void probesOpenEarlyAndSkipTheRemainingOpenDuration() {
+        CircuitBreaker breaker = breaker(settings());
+        breaker.forceOpen();
+        assertFalse(breaker.tryAcquire());
+        clock.addAndGet(ms(700));
+        // 检查再次失败时重新计时
+        breaker.forceOpen();
+        assertEquals(1_000, breaker.retryAfterMs());
+
+        breaker.probeSucceeded();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+
+    private CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = breaker(settings());
+        breaker.forceOpen();
+        return breaker;
+    }
+
+    private CircuitBreaker breaker(CircuitBreaker.Settings settings) {
+        return new CircuitBreaker(settings, clock::get);
+    }
+
+    private static CircuitBreaker.Settings settings() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings();
+        settings.setWindowSize(10);
+        settings.setMinimumCalls(10);
+        settings.setFailureRateThreshold(50);
+        settings.setSlowCallDurationMs(200);
+        settings.setSlowCallRateThreshold(80);
+        settings.setOpenDurationMs(1_000);
+        settings.setHalfOpenCalls(2);
+        return settings;
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,38 @@
+package com.achance.gateway.common.health;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UpstreamHealthTest {
+
+    @Test
+    void snapshotRoundTripsInOrder() {
+        Map<String, Long> down = new LinkedHashMap<>();
+        down.put("http://127.0.0.1:7001", 1_500L);
+        down.put("http://127.0.0.1:7002", 0L);
+
+        String encoded = UpstreamHealth.encode(down);
+
+        assertEquals("http://127.0.0.1:7001 1500\nhttp://127.0.0.1:7002 0", encoded);
+        assertEquals(down, UpstreamHealth.decode(encoded));
+    }
+
+    @Test
+    void emptySnapshotMeansAllTargetsUp() {
+        assertEquals("", UpstreamHealth.encode(Map.of()));
+        assertEquals(Map.of(), UpstreamHealth.decode(""));
+        assertEquals(Map.of(), UpstreamHealth.decode(null));
+    }
+
+    @Test
+    void decodeNormalizesTrailingSlashAndSkipsUnknownLines() {
+        // 未来版本可能追加字段，旧网关跳过无法识别的行
+        Map<String, Long> down = UpstreamHealth.decode("http://127.0.0.1:7001/ 1500\nbad-line\nhttp://x half-open");
+
+        assertEquals(Map.of("http://127.0.0.1:7001", 1_500L), down);
+    }
+}
@@ -0,0 +1,89 @@
+package com.achance.gateway.common.memory;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MemoryBudgetTest {
+
+    private final MemoryBudget budget = new MemoryBudget();
+
+    @Test
+    void reservationsRespectTotalAndPerKeyLimits() {
+        MemoryBudget.Lease a = budget.tryReserve("a", 600, 1000, 600);
+        assertNotNull(a);
+        // 份额已满
+        assertNull(budget.tryReserve("a", 1, 1000, 600));
+        // 总量只剩 400
+        assertNull(budget.tryReserve("b", 500, 1000, 600));
+        MemoryBudget.Lease b = budget.tryReserve("b", 400, 1000, 600);
+        assertNotNull(b);
+        assertEquals(1000, budget.reserved());
+        assertEquals(600, budget.reserved("a"));
+
+        a.close();
+        a.close();
+        assertEquals(400, budget.reserved());
+        assertEquals(0, budget.reserved("a"));
+    }
+
+    @Test
+    void waitersAreGrantedInOrderWhenBytesAreReturned() {
+        MemoryBudget.Lease held = budget.tryReserve("a", 900, 1000, 1000);
+        AtomicReference<MemoryBudget.Lease> big = new AtomicReference<>();
+        AtomicReference<MemoryBudget.Lease> small = new AtomicReference<>();
+        Disposable first = budget.reserve("b", 800, 1000, 1000, Duration.ofSeconds(5)).subscribe(big::set);
+        Disposable second = budget.reserve("c", 50, 1000, 1000, Duration.ofSeconds(5)).subscribe(small::set);
+        // 有排队者时后来的小预留不插队
+        assertNull(small.get());
+        assertNull(budget.tryReserve("c", 50, 1000, 1000));
+        assertEquals(2, budget.waiting());
+
+        held.close();
+        assertNotNull(big.get());
+        assertNotNull(small.get());
+        assertEquals(850, budget.reserved());
+        assertEquals(0, budget.waiting());
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    void waiterTimesOutOrIsWithdrawnOnCancel() {
+        MemoryBudget.Lease held = budget.tryReserve("a", 1000, 1000, 1000);
+        StepVerifier.create(budget.reserve("b", 1, 1000, 1000, Duration.ofMillis(20)))
+                .verifyError(TimeoutException.class);
+        StepVerifier.create(budget.reserve("b", 1, 1000, 1000, Duration.ZERO))
+                .verifyError(TimeoutException.class);
+
+        Disposable cancelled = budget.reserve("b", 1, 1000, 1000, Duration.ofSeconds(5)).subscribe();
+        assertEquals(1, budget.waiting());
+        cancelled.dispose();
+        assertEquals(0, budget.waiting());
+
+        held.close();
+        assertEquals(0, budget.reserved());
+    }
+
+    @Test
+    void bytesAlreadyInMemoryAreAddedBeyondTheLimitAndBlockNewReservations() {
+        MemoryBudget.Lease lease = budget.tryReserve("a", 100, 1000, 1000);
+        lease.add(1500);
+        assertEquals(1600, budget.reserved());
+        assertEquals(1600, lease.bytes());
+        assertNull(budget.tryReserve("b", 0, 1000, 1000));
+
+        lease.close();
+        lease.add(10);
+        assertEquals(0, budget.reserved());
+        assertNotNull(budget.tryReserve("b", 0, 1000, 1000));
+    }
+}
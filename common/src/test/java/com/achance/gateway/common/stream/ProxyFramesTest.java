@@ -0,0 +1,120 @@
+package com.achance.gateway.common.stream;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ProxyFramesTest {
+
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+    private final List<DataBuffer> allocated = new ArrayList<>();
+
+    @AfterEach
+    void noLeaks() {
+        for (DataBuffer buffer : allocated) {
+            assertFalse(((PooledDataBuffer) buffer).isAllocated(), "leaked frame: " + buffer);
+        }
+    }
+
+    @Test
+    void headerFollowedByChunks() {
+        Flux<String> out = ProxyFrames.splitHeader(frames("H", "a", "b", "c"), releasingDecoder(),
+                (header, body) -> Mono.just(header).concatWith(body.map(this::readAndRelease)));
+
+        StepVerifier.create(out)
+                .expectNext("H", "a", "b", "c")
+                .verifyComplete();
+    }
+
+    @Test
+    void headerOnly() {
+        Flux<String> out = ProxyFrames.splitHeader(frames("H"), releasingDecoder(),
+                (header, body) -> Mono.just(header).concatWith(body.count().map(n -> "chunks=" + n)));
+
+        StepVerifier.create(out)
+                .expectNext("H", "chunks=0")
+                .verifyComplete();
+    }
+
+    @Test
+    void bodySubscribedAfterHandlerCompletes() {
+        List<Flux<DataBuffer>> bodies = new ArrayList<>();
+        Mono<String> header = ProxyFrames.splitHeader(frames("H", "a", "b"), releasingDecoder(),
+                (h, body) -> {
+                    bodies.add(body);
+                    return Mono.just(h);
+                }).singleOrEmpty();
+
+        StepVerifier.create(header).expectNext("H").verifyComplete();
+        StepVerifier.create(bodies.get(0).map(this::readAndRelease))
+                .expectNext("a", "b")
+                .verifyComplete();
+    }
+
+    @Test
+    void emptyChannelCompletesWithoutCallingHandler() {
+        AtomicBoolean called = new AtomicBoolean();
+        Flux<String> out = ProxyFrames.splitHeader(Flux.empty(), releasingDecoder(),
+                (header, body) -> {
+                    called.set(true);
+                    return Mono.just(header);
+                });
+
+        StepVerifier.create(out).verifyComplete();
+        assertFalse(called.get());
+    }
+
+    @Test
+    void headerDecodeFailureReleasesFrames() {
+        Function<DataBuffer, String> failing = buf -> {
+            throw new IllegalStateException("bad header");
+        };
+        AtomicBoolean called = new AtomicBoolean();
+        Flux<String> out = ProxyFrames.splitHeader(frames("H", "a", "b"), failing,
+                (header, body) -> {
+                    called.set(true);
+                    return body.map(this::readAndRelease);
+                });
+
+        StepVerifier.create(out)
+                .expectErrorMessage("bad header")
+                .verify();
+        assertFalse(called.get());
+    }
+
+    /** 逐帧惰性分配，便于在 @AfterEach 中核对每个已分配帧都被释放 */
+    private Flux<DataBuffer> frames(String... contents) {
+        return Flux.fromArray(contents).map(c -> {
+            DataBuffer buffer = bufferFactory.wrap(c.getBytes(StandardCharsets.UTF_8));
+            allocated.add(buffer);
+            return buffer;
+        });
+    }
+
+    private Function<DataBuffer, String> releasingDecoder() {
+        return this::readAndRelease;
+    }
+
+    private String readAndRelease(DataBuffer buffer) {
+        try {
+            return buffer.toString(StandardCharsets.UTF_8);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.achance.gateway.common.stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebSocketFramesTest {
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void messageFrameCarriesOpcodeThenPayload() {
+        DataBuffer payload = bufferFactory.wrap("hello".getBytes(StandardCharsets.UTF_8));
+
+        DataBuffer frame = WebSocketFrames.encode(bufferFactory, WebSocketFrames.TEXT, payload);
+
+        // 编码不消费原消息，消息内容仍由调用方释放
+        assertEquals(5, payload.readableByteCount());
+        assertEquals(WebSocketFrames.TEXT, WebSocketFrames.opcode(frame));
+        assertEquals("hello", frame.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void byteBufferPayloadAndHighOpcodesRoundTrip() {
+        DataBuffer frame = WebSocketFrames.encode(bufferFactory, WebSocketFrames.PONG, ByteBuffer.wrap(new byte[]{(byte) 0xFE, 1}));
+
+        assertEquals(WebSocketFrames.PONG, WebSocketFrames.opcode(frame));
+        assertEquals(2, frame.readableByteCount());
+        assertEquals(0xFE, frame.read() & 0xFF);
+    }
+
+    @Test
+    void closeFrameRoundTripsCodeAndReason() {
+        DataBuffer frame = WebSocketFrames.close(bufferFactory, 4001, "会话过期");
+
+        assertEquals(WebSocketFrames.CLOSE, WebSocketFrames.opcode(frame));
+        assertEquals(4001, WebSocketFrames.closeCode(frame));
+        assertEquals("会话过期", WebSocketFrames.closeReason(frame));
+        assertEquals(0, frame.readableByteCount());
+    }
+
+    @Test
+    void emptyClosePayloadMeansNoStatusCode() {
+        DataBuffer frame = bufferFactory.wrap(new byte[]{WebSocketFrames.CLOSE});
+
+        assertEquals(WebSocketFrames.CLOSE, WebSocketFrames.opcode(frame));
+        assertEquals(WebSocketFrames.NO_STATUS_CODE, WebSocketFrames.closeCode(frame));
+        assertEquals("", WebSocketFrames.closeReason(frame));
+        assertFalse(WebSocketFrames.isSendableCloseCode(WebSocketFrames.NO_STATUS_CODE));
+        assertTrue(WebSocketFrames.isSendableCloseCode(1000));
+        assertTrue(WebSocketFrames.isSendableCloseCode(4001));
+    }
+}
@@ -0,0 +1,26 @@
+package com.achance.gateway.common.transport;
+
+import io.rsocket.transport.netty.client.TcpClientTransport;
+import io.rsocket.transport.netty.client.WebsocketClientTransport;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TunnelTransportsTest {
+
+    @Test
+    void schemeSelectsTransport() {
+        assertInstanceOf(TcpClientTransport.class, TunnelTransports.client(URI.create("tcp://gateway:7000"), true));
+        assertInstanceOf(WebsocketClientTransport.class, TunnelTransports.client(URI.create("ws://gateway:9000/rsocket"), true));
+        assertInstanceOf(WebsocketClientTransport.class, TunnelTransports.client(URI.create("WSS://gateway/rsocket"), false));
+    }
+
+    @Test
+    void rejectsUnknownSchemeAndTcpWithoutPort() {
+        assertThrows(IllegalArgumentException.class, () -> TunnelTransports.client(URI.create("http://gateway:9000/rsocket"), true));
+        assertThrows(IllegalArgumentException.class, () -> TunnelTransports.client(URI.create("tcp://gateway"), true));
+    }
+}
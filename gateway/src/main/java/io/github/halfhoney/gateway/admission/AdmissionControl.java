@@ -0,0 +1,217 @@
+package io.github.halfhoney.gateway.admission;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * 按 clientId 的准入控制：令牌桶限流（超限 429）与在途并发上限（超限 503），均带 Retry-After。
+ * 并发上限可为固定值或 AIMD 自适应。指标：gateway.proxy.admission{client,result}、
+ * gateway.proxy.admission.inflight{client}、gateway.proxy.admission.limit{client}。
+ */
+@Component
+public class AdmissionControl {
+
+    private final Map<String, ClientLimiter> limiters = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    public AdmissionControl(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(), System::nanoTime);
+    }
+
+    public AdmissionControl(MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    public Ticket tryAcquire(String clientId, GatewayProxyProperties.Admission policy) {
+        ClientLimiter limiter = limiters.computeIfAbsent(clientId, this::newLimiter);
+        long now = nanoClock.getAsLong();
+        long rateWaitNanos = limiter.takeToken(policy, now);
+        if (rateWaitNanos > 0) {
+            count(clientId, "rejected_rate");
+            return Ticket.rejected(429, (int) Math.max(1, (rateWaitNanos + 999_999_999L) / 1_000_000_000L));
+        }
+        if (!limiter.acquireSlot(policy)) {
+            count(clientId, "rejected_concurrency");
+            return Ticket.rejected(503, Math.max(1, policy.getRetryAfterSeconds()));
+        }
+        count(clientId, "admitted");
+        return new Ticket(limiter, policy, nanoClock, now, 0, 0);
+    }
+
+    /** 在响应（含流式响应体）结束或取消后归还许可 */
+    public Mono<ResponseEntity<Flux<DataBuffer>>> guard(Ticket ticket, Mono<ResponseEntity<Flux<DataBuffer>>> response) {
+        AtomicBoolean handedOff = new AtomicBoolean();
+        return response
+                .map(entity -> {
+                    int status = entity.getStatusCode().value();
+                    Flux<DataBuffer> body = entity.getBody();
+                    if (body == null) {
+                        ticket.release(status < 500);
+                        return entity;
+                    }
+                    handedOff.set(true);
+                    return new ResponseEntity<>(body.doFinally(signal -> ticket.release(status < 500 && signal == SignalType.ON_COMPLETE)),
+                            entity.getHeaders(), entity.getStatusCode());
+                })
+                .doFinally(signal -> {
+                    if (!handedOff.get() || signal == SignalType.CANCEL) {
+                        ticket.release(false);
+                    }
+                });
+    }
+
+    private ClientLimiter newLimiter(String clientId) {
+        ClientLimiter limiter = new ClientLimiter();
+        if (meterRegistry != null) {
+            Gauge.builder("gateway.proxy.admission.inflight", limiter, ClientLimiter::inFlight)
+                    .tag("client", clientId).register(meterRegistry);
+            Gauge.builder("gateway.proxy.admission.limit", limiter, ClientLimiter::currentLimit)
+                    .tag("client", clientId).register(meterRegistry);
+        }
+        return limiter;
+    }
+
+    private void count(String clientId, String result) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("gateway.proxy.admission", "client", clientId, "result", result).increment();
+        }
+    }
+
+    /** 一次准入结果；被拒绝时携带状态码与 Retry-After，release 幂等 */
+    public static final class Ticket {
+        private final ClientLimiter limiter;
+        private final GatewayProxyProperties.Admission policy;
+        private final LongSupplier nanoClock;
+        private final long startNanos;
+        private final int status;
+        private final int retryAfterSeconds;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Ticket(ClientLimiter limiter, GatewayProxyProperties.Admission policy, LongSupplier nanoClock,
+                       long startNanos, int status, int retryAfterSeconds) {
+            this.limiter = limiter;
+            this.policy = policy;
+            this.nanoClock = nanoClock;
+            this.startNanos = startNanos;
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        private static Ticket rejected(int status, int retryAfterSeconds) {
+            return new Ticket(null, null, null, 0, status, retryAfterSeconds);
+        }
+
+        public boolean isAdmitted() {
+            return limiter != null;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public void release(boolean success) {
+            if (limiter != null && released.compareAndSet(false, true)) {
+                limiter.releaseSlot(policy, success, (nanoClock.getAsLong() - startNanos) / 1_000_000L);
+            }
+        }
+    }
+
+    /** 单个 clientId 的令牌桶与并发计数；配置每次调用时传入，热加载后立即生效 */
+    static final class ClientLimiter {
+        private double tokens = -1;
+        private long refilledAt;
+        private int inFlight;
+        private double adaptiveLimit = -1;
+        private int lastLimit;
+
+        /** 取一个令牌，返回 0 表示成功，否则为需要等待的纳秒数 */
+        synchronized long takeToken(GatewayProxyProperties.Admission policy, long now) {
+            double rate = policy.getRatePerSecond();
+            if (rate <= 0) {
+                return 0;
+            }
+            double capacity = policy.getBurst() > 0 ? policy.getBurst() : Math.max(1, rate);
+            if (tokens < 0) {
+                tokens = capacity;
+            } else {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * rate / 1e9);
+            }
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / rate * 1e9);
+        }
+
+        synchronized boolean acquireSlot(GatewayProxyProperties.Admission policy) {
+            int limit = limit(policy);
+            lastLimit = limit;
+            if (limit > 0 && inFlight >= limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+
+        synchronized void releaseSlot(GatewayProxyProperties.Admission policy, boolean success, long latencyMs) {
+            inFlight--;
+            if (!isAdaptive(policy)) {
+                return;
+            }
+            int max = policy.getMaxInFlight();
+            int min = Math.min(Math.max(1, policy.getMinLimit()), max);
+            double current = adaptiveLimit < 0 ? max : adaptiveLimit;
+            boolean congested = !success || (policy.getLatencyThresholdMs() > 0 && latencyMs > policy.getLatencyThresholdMs());
+            adaptiveLimit = congested
+                    ? Math.max(min, current * 0.9)
+                    : Math.min(max, current + 1.0 / current);
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        synchronized double currentLimit() {
+            return lastLimit;
+        }
+
+        private int limit(GatewayProxyProperties.Admission policy) {
+            if (policy.getMaxInFlight() == null) {
+                return 0;
+            }
+            if (isAdaptive(policy)) {
+                if (adaptiveLimit < 0 || adaptiveLimit > policy.getMaxInFlight()) {
+                    adaptiveLimit = policy.getMaxInFlight();
+                }
+                return (int) adaptiveLimit;
+            }
+            return policy.getMaxInFlight();
+        }
+
+        private static boolean isAdaptive(GatewayProxyProperties.Admission policy) {
+            return policy.getMaxInFlight() != null && "adaptive".equalsIgnoreCase(policy.getLimitMode());
+        }
+    }
+}
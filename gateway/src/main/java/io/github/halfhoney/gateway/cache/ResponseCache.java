@@ -0,0 +1,441 @@
+package io.github.halfhoney.gateway.cache;
+
+import com.achance.gateway.common.dto.ProxyHeaders;
+import com.achance.gateway.common.dto.ProxyResponse;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 网关侧 GET 响应缓存，按 clientId 隔离，键为 方法 + 路径 + 原始查询串 + Vary 指定的请求头。
+ * 新鲜命中直接由网关返回、不经过隧道；过期但带 ETag/Last-Modified 的条目经 agent 发送条件请求，
+ * 收到 304 后刷新新鲜期并返回缓存内容。指标：gateway.proxy.cache{client,result}、
+ * gateway.proxy.cache.evictions{client}、gateway.proxy.cache.entries{client}。
+ */
+@Component
+public class ResponseCache {
+
+    private final Map<String, ClientCache> caches = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+
+    @Autowired
+    public ResponseCache(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(), System::currentTimeMillis);
+    }
+
+    public ResponseCache(MeterRegistry meterRegistry, LongSupplier clock) {
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /** 请求不可缓存（非 GET、带 Authorization、Cache-Control: no-store）时返回 null */
+    public Lookup lookup(String clientId, GatewayProxyProperties.Cache policy, ServerHttpRequest request, String targetPath) {
+        HttpHeaders headers = request.getHeaders();
+        if (!HttpMethod.GET.equals(request.getMethod()) || headers.containsKey(HttpHeaders.AUTHORIZATION)) {
+            return null;
+        }
+        String requestCc = cacheControl(headers);
+        if (requestCc.contains("no-store")) {
+            return null;
+        }
+        String rawQuery = request.getURI().getRawQuery();
+        String key = "GET " + targetPath + (rawQuery != null ? "?" + rawQuery : "");
+        ClientCache cache = caches.computeIfAbsent(clientId, this::newClientCache);
+        long now = clock.getAsLong();
+        Entry entry = cache.get(key, headers, now);
+        Lookup lookup = new Lookup(clientId, policy, key, headers, entry,
+                entry != null && !requestCc.contains("no-cache") && now < entry.freshUntil);
+        if (!lookup.fresh) {
+            count(clientId, "miss");
+        }
+        return lookup;
+    }
+
+    /** 返回缓存内容；调用方条件请求命中 ETag 时返回 304 */
+    public ResponseEntity<Flux<DataBuffer>> hit(Lookup lookup, DataBufferFactory bufferFactory) {
+        Entry entry = lookup.entry;
+        if (lookup.fresh) {
+            count(lookup.clientId, "hit");
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(entry.headers);
+        headers.set(HttpHeaders.AGE, Long.toString(Math.max(0, (clock.getAsLong() - entry.storedAt) / 1000)));
+        String ifNoneMatch = lookup.requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && entry.etag != null && matchesEtag(ifNoneMatch, entry.etag)) {
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            return ResponseEntity.status(304).headers(headers).body(Flux.empty());
+        }
+        Flux<DataBuffer> body = entry.body.length > 0 ? Flux.just(bufferFactory.wrap(entry.body)) : Flux.empty();
+        return ResponseEntity.status(entry.status).headers(headers).body(body);
+    }
+
+    /** 对过期条目附加条件请求头；调用方自带条件头时保留调用方语义，不附加 */
+    public void addValidators(Lookup lookup, ProxyHeaders upstreamHeaders) {
+        Entry entry = lookup.entry;
+        if (entry == null || (entry.etag == null && entry.lastModified == null)
+                || lookup.requestHeaders.containsKey(HttpHeaders.IF_NONE_MATCH)
+                || lookup.requestHeaders.containsKey(HttpHeaders.IF_MODIFIED_SINCE)) {
+            return;
+        }
+        if (entry.etag != null) {
+            upstreamHeaders.set(HttpHeaders.IF_NONE_MATCH, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            upstreamHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+        }
+        lookup.conditional = true;
+    }
+
+    /** 网关发出的条件请求收到 304：刷新条目，返回 true 表示应以缓存内容应答 */
+    public boolean revalidated(Lookup lookup, ProxyResponse resp) {
+        if (!lookup.conditional || resp.getStatus() != 304) {
+            return false;
+        }
+        HttpHeaders fresh = toHeaders(resp.getHeaders());
+        long now = clock.getAsLong();
+        HttpHeaders merged = new HttpHeaders();
+        merged.addAll(lookup.entry.headers);
+        for (String name : List.of(HttpHeaders.CACHE_CONTROL, HttpHeaders.EXPIRES, HttpHeaders.ETAG, HttpHeaders.DATE, HttpHeaders.LAST_MODIFIED)) {
+            if (fresh.containsKey(name)) {
+                merged.put(name, fresh.get(name));
+            }
+        }
+        Entry refreshed = newEntry(lookup, lookup.entry.status, merged, lookup.entry.body, now);
+        ClientCache cache = caches.computeIfAbsent(lookup.clientId, this::newClientCache);
+        if (refreshed != null) {
+            cache.put(lookup.key, refreshed, lookup.policy);
+            lookup.entry = refreshed;
+        } else {
+            cache.remove(lookup.key, lookup.entry);
+        }
+        count(lookup.clientId, "revalidated");
+        return true;
+    }
+
+    /** 缓冲转发的响应：可缓存时写入 */
+    public void store(Lookup lookup, ProxyResponse resp) {
+        byte[] body = resp.getBody() != null ? resp.getBody() : new byte[0];
+        if (resp.getStatus() != 200 || body.length > lookup.policy.getMaxEntryBytes()) {
+            return;
+        }
+        put(lookup, newEntry(lookup, 200, toHeaders(resp.getHeaders()), body, clock.getAsLong()));
+    }
+
+    /** 流式转发的响应：边透传边复制，完整结束且未超过 max-entry-bytes 时写入 */
+    public Flux<DataBuffer> capture(Lookup lookup, ProxyResponse resp, Flux<DataBuffer> body) {
+        if (resp.getStatus() != 200) {
+            return body;
+        }
+        HttpHeaders headers = toHeaders(resp.getHeaders());
+        if (newEntry(lookup, 200, headers, new byte[0], clock.getAsLong()) == null) {
+            return body;
+        }
+        int limit = lookup.policy.getMaxEntryBytes();
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        boolean[] overflow = new boolean[1];
+        return body
+                .doOnNext(buf -> {
+                    int n = buf.readableByteCount();
+                    if (overflow[0] || copy.size() + n > limit) {
+                        overflow[0] = true;
+                        return;
+                    }
+                    byte[] bytes = new byte[n];
+                    buf.toByteBuffer(buf.readPosition(), ByteBuffer.wrap(bytes), 0, n);
+                    copy.writeBytes(bytes);
+                })
+                .doOnComplete(() -> {
+                    if (!overflow[0]) {
+                        put(lookup, newEntry(lookup, 200, headers, copy.toByteArray(), clock.getAsLong()));
+                    }
+                });
+    }
+
+    private void put(Lookup lookup, Entry entry) {
+        if (entry != null) {
+            caches.computeIfAbsent(lookup.clientId, this::newClientCache).put(lookup.key, entry, lookup.policy);
+        }
+    }
+
+    /** 响应不可缓存时返回 null */
+    private Entry newEntry(Lookup lookup, int status, HttpHeaders headers, byte[] body, long now) {
+        String cc = cacheControl(headers);
+        if (cc.contains("no-store") || cc.contains("private") || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return null;
+        }
+        List<String> vary = new ArrayList<>();
+        for (String v : headers.getVary()) {
+            if ("*".equals(v)) {
+                return null;
+            }
+            vary.add(v.toLowerCase(Locale.ROOT));
+        }
+        String etag = headers.getETag();
+        String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        long freshness = Math.min(freshnessMs(headers, cc, now), lookup.policy.getMaxTtlMs());
+        boolean validators = etag != null || lastModified != null;
+        if (freshness <= 0 && !validators) {
+            return null;
+        }
+        HttpHeaders stored = new HttpHeaders();
+        stored.addAll(headers);
+        stored.remove(HttpHeaders.TRANSFER_ENCODING);
+        stored.remove(HttpHeaders.CONNECTION);
+        stored.remove(HttpHeaders.AGE);
+        long freshUntil = now + Math.max(0, freshness);
+        long retainUntil = freshUntil + (validators ? lookup.policy.getRetainStaleMs() : 0);
+        return new Entry(status, HttpHeaders.readOnlyHttpHeaders(stored), body, etag, lastModified,
+                vary, varyValues(vary, lookup.requestHeaders), now, freshUntil, retainUntil);
+    }
+
+    /** s-maxage > max-age > Expires - Date，扣除 Age；no-cache 视为立即过期 */
+    static long freshnessMs(HttpHeaders headers, String cc, long now) {
+        if (cc.contains("no-cache")) {
+            return 0;
+        }
+        long age = 0;
+        String ageHeader = headers.getFirst(HttpHeaders.AGE);
+        if (ageHeader != null) {
+            try {
+                age = Long.parseLong(ageHeader.trim()) * 1000;
+            } catch (NumberFormatException ignored) {
+                // 非法 Age 视为 0
+            }
+        }
+        long seconds = directive(cc, "s-maxage");
+        if (seconds < 0) {
+            seconds = directive(cc, "max-age");
+        }
+        if (seconds >= 0) {
+            return seconds * 1000 - age;
+        }
+        long expires = headers.getExpires();
+        if (expires > 0) {
+            long date = headers.getDate();
+            return expires - (date > 0 ? date : now) - age;
+        }
+        return 0;
+    }
+
+    private static long directive(String cc, String name) {
+        int i = cc.indexOf(name + "=");
+        while (i > 0 && cc.charAt(i - 1) != ',' && cc.charAt(i - 1) != ' ') {
+            i = cc.indexOf(name + "=", i + 1);
+        }
+        if (i < 0) {
+            return -1;
+        }
+        int start = i + name.length() + 1;
+        int end = start;
+        while (end < cc.length() && Character.isDigit(cc.charAt(end))) {
+            end++;
+        }
+        return end > start ? Long.parseLong(cc.substring(start, end)) : -1;
+    }
+
+    private static String cacheControl(HttpHeaders headers) {
+        List<String> values = headers.get(HttpHeaders.CACHE_CONTROL);
+        return values == null ? "" : String.join(",", values).toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        String weakless = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String c = candidate.trim();
+            if (c.equals("*") || c.equals(etag) || (c.startsWith("W/") ? c.substring(2) : c).equals(weakless)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> varyValues(List<String> names, HttpHeaders requestHeaders) {
+        List<String> values = new ArrayList<>(names.size());
+        for (String name : names) {
+            List<String> v = requestHeaders.get(name);
+            values.add(v == null ? null : String.join(",", v));
+        }
+        return values;
+    }
+
+    private static HttpHeaders toHeaders(ProxyHeaders proxyHeaders) {
+        HttpHeaders headers = new HttpHeaders();
+        if (proxyHeaders != null) {
+            proxyHeaders.copyTo(headers);
+        }
+        return headers;
+    }
+
+    private ClientCache newClientCache(String clientId) {
+        ClientCache cache = new ClientCache(clientId);
+        if (meterRegistry != null) {
+            Gauge.builder("gateway.proxy.cache.entries", cache, ClientCache::size)
+                    .tag("client", clientId)
+                    .register(meterRegistry);
+        }
+        return cache;
+    }
+
+    private void count(String clientId, String result) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("gateway.proxy.cache", "client", clientId, "result", result).increment();
+        }
+    }
+
+    /** 单次查找的上下文，贯穿一次代理请求 */
+    public static final class Lookup {
+        private final String clientId;
+        private final GatewayProxyProperties.Cache policy;
+        private final String key;
+        private final HttpHeaders requestHeaders;
+        private Entry entry;
+        private final boolean fresh;
+        private boolean conditional;
+
+        Lookup(String clientId, GatewayProxyProperties.Cache policy, String key, HttpHeaders requestHeaders,
+               Entry entry, boolean fresh) {
+            this.clientId = clientId;
+            this.policy = policy;
+            this.key = key;
+            this.requestHeaders = requestHeaders;
+            this.entry = entry;
+            this.fresh = fresh;
+        }
+
+        public boolean isFresh() {
+            return fresh;
+        }
+    }
+
+    private static final class Entry {
+        final int status;
+        final HttpHeaders headers;
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+        final List<String> varyNames;
+        final List<String> varyValues;
+        final long storedAt;
+        final long freshUntil;
+        final long retainUntil;
+
+        Entry(int status, HttpHeaders headers, byte[] body, String etag, String lastModified,
+              List<String> varyNames, List<String> varyValues, long storedAt, long freshUntil, long retainUntil) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.varyNames = varyNames;
+            this.varyValues = varyValues;
+            this.storedAt = storedAt;
+            this.freshUntil = freshUntil;
+            this.retainUntil = retainUntil;
+        }
+
+        boolean matches(HttpHeaders requestHeaders) {
+            return varyValues.equals(varyValues(varyNames, requestHeaders));
+        }
+    }
+
+    /** 单个 clientId 的 LRU，按条目数与响应体总字节双重限制 */
+    private final class ClientCache {
+        private final String clientId;
+        private final LinkedHashMap<String, List<Entry>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private int count;
+        private long bytes;
+
+        ClientCache(String clientId) {
+            this.clientId = clientId;
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        synchronized Entry get(String key, HttpHeaders requestHeaders, long now) {
+            List<Entry> variants = entries.get(key);
+            if (variants == null) {
+                return null;
+            }
+            for (Iterator<Entry> it = variants.iterator(); it.hasNext(); ) {
+                Entry e = it.next();
+                if (now >= e.retainUntil) {
+                    it.remove();
+                    count--;
+                    bytes -= e.body.length;
+                } else if (e.matches(requestHeaders)) {
+                    return e;
+                }
+            }
+            if (variants.isEmpty()) {
+                entries.remove(key);
+            }
+            return null;
+        }
+
+        synchronized void put(String key, Entry entry, GatewayProxyProperties.Cache policy) {
+            List<Entry> variants = entries.computeIfAbsent(key, k -> new ArrayList<>(1));
+            for (Iterator<Entry> it = variants.iterator(); it.hasNext(); ) {
+                Entry e = it.next();
+                if (e.varyNames.equals(entry.varyNames) && Objects.equals(e.varyValues, entry.varyValues)) {
+                    it.remove();
+                    count--;
+                    bytes -= e.body.length;
+                }
+            }
+            variants.add(entry);
+            count++;
+            bytes += entry.body.length;
+            Iterator<Map.Entry<String, List<Entry>>> eldest = entries.entrySet().iterator();
+            while ((count > policy.getMaxEntries() || bytes > policy.getMaxBytes()) && eldest.hasNext()) {
+                Map.Entry<String, List<Entry>> victim = eldest.next();
+                if (victim.getValue() == variants) {
+                    continue;
+                }
+                for (Entry e : victim.getValue()) {
+                    count--;
+                    bytes -= e.body.length;
+                    if (meterRegistry != null) {
+                        meterRegistry.counter("gateway.proxy.cache.evictions", "client", clientId).increment();
+                    }
+                }
+                eldest.remove();
+            }
+        }
+
+        synchronized void remove(String key, Entry entry) {
+            List<Entry> variants = entries.get(key);
+            if (variants != null && variants.remove(entry)) {
+                count--;
+                bytes -= entry.body.length;
+                if (variants.isEmpty()) {
+                    entries.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package io.github.halfhoney.gateway.cluster;
+
+import com.achance.gateway.common.dto.Lane;
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.dto.ProxyResponse;
+import com.achance.gateway.common.stream.ProxyFrames;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.rsocket.AgentConnection;
+import io.github.halfhoney.gateway.routing.RouteTableHolder;
+import io.github.halfhoney.gateway.rsocket.ClientRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.stereotype.Controller;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * 集群内部路由：向其他节点发布本节点持有的 clientId，并把其他节点转发来的请求交给本节点的 Agent。
+ * 转发来的请求只在本节点分发（含重连宽限期），不会再次转发，通道按本节点的规则重新判定；请求的截止时间与取消由发起节点负责。
+ * 指标：gateway.cluster.forwarded{mode=request|stream|websocket}（本节点代为处理的转发请求数）。
+ */
+@Controller
+@ConditionalOnProperty(prefix = "gateway.proxy.cluster", name = "enabled", havingValue = "true")
+public class ClusterController {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterController.class);
+
+    private final ClientRegistry registry;
+    private final ClusterPeers peers;
+    private final GatewayProxyProperties props;
+    private final RouteTableHolder routeTable;
+    private final Counter forwardedRequests;
+    private final Counter forwardedStreams;
+    private final Counter forwardedWebSockets;
+
+    public ClusterController(ClientRegistry registry, ClusterPeers peers, GatewayProxyProperties props,
+                             RouteTableHolder routeTable, ObjectProvider<MeterRegistry> meterRegistry) {
+        this.registry = registry;
+        this.peers = peers;
+        this.props = props;
+        this.routeTable = routeTable;
+        MeterRegistry meters = meterRegistry.getIfAvailable();
+        this.forwardedRequests = meters != null ? forwarded(meters, "request") : null;
+        this.forwardedStreams = meters != null ? forwarded(meters, "stream") : null;
+        this.forwardedWebSockets = meters != null ? forwarded(meters, "websocket") : null;
+    }
+
+    private static Counter forwarded(MeterRegistry meters, String mode) {
+        return Counter.builder("gateway.cluster.forwarded")
+                .description("Requests forwarded from peer nodes to local agents")
+                .tag("mode", mode)
+                .register(meters);
+    }
+
+    @MessageMapping(ClusterPeers.CLIENTS_ROUTE)
+    public Flux<String> clients(String peerNode) {
+        if (peers.getNodeId().equals(peerNode)) {
+            return Flux.error(new IllegalArgumentException(ClusterPeers.SELF_PEER));
+        }
+        log.info("Cluster peer subscribed to local clients: node={}", peerNode);
+        return registry.localClients()
+                .map(clientIds -> ClusterPeers.encodeSnapshot(peers.getNodeId(), clientIds))
+                .doFinally(s -> log.info("Cluster peer unsubscribed: node={}, signal={}", peerNode, s));
+    }
+
+    @MessageMapping("cluster.proxy.request.{clientId}")
+    public Mono<ProxyResponse> request(@DestinationVariable String clientId, ProxyRequest req) {
+        if (forwardedRequests != null) {
+            forwardedRequests.increment();
+        }
+        return local(clientId, req, req.getBody() != null ? req.getBody().length : 0)
+                .map(conn -> conn.track(conn.getRequester().route(conn.getRequestRoute()).data(req).retrieveMono(ProxyResponse.class)))
+                .defaultIfEmpty(Mono.fromSupplier(() -> notConnected(clientId, req)))
+                .flatMap(Function.identity());
+    }
+
+    /**
+     * 流式转发中继：两个方向的首帧（头部）按两侧链路各自的 data MimeType 重新编码，body 分块原样透传。
+     */
+    @MessageMapping("cluster.proxy.stream.{clientId}")
+    public Flux<DataBuffer> stream(@DestinationVariable String clientId, Flux<DataBuffer> frames, RSocketRequester peer) {
+        if (forwardedStreams != null) {
+            forwardedStreams.increment();
+        }
+        return relay(clientId, frames, peer, AgentConnection::getStreamRoute);
+    }
+
+    /** WebSocket 转发中继：与流式相同，头部之后的消息帧原样透传 */
+    @MessageMapping("cluster.proxy.websocket.{clientId}")
+    public Flux<DataBuffer> websocket(@DestinationVariable String clientId, Flux<DataBuffer> frames, RSocketRequester peer) {
+        if (forwardedWebSockets != null) {
+            forwardedWebSockets.increment();
+        }
+        return relay(clientId, frames, peer, AgentConnection::getWebSocketRoute);
+    }
+
+    private Flux<DataBuffer> relay(String clientId, Flux<DataBuffer> frames, RSocketRequester peer,
+                                   Function<AgentConnection, String> route) {
+        return ProxyFrames.splitHeader(frames,
+                head -> ProxyFrames.decode(peer.strategies(), peer.dataMimeType(), head, ProxyRequest.class),
+                (req, body) -> local(clientId, req, contentLength(req))
+                        .map(conn -> relay(conn, route.apply(conn), req, body, peer))
+                        .defaultIfEmpty(body.doOnNext(DataBufferUtils::release)
+                                .thenMany(Mono.fromCallable(() -> ProxyFrames.encode(peer.strategies(), peer.dataMimeType(), notConnected(clientId, req)))))
+                        .flatMapMany(Function.identity()));
+    }
+
+    private Flux<DataBuffer> relay(AgentConnection conn, String route, ProxyRequest req, Flux<DataBuffer> body, RSocketRequester peer) {
+        RSocketRequester agent = conn.getRequester();
+        int prefetch = props.getStreamPrefetch();
+        Flux<DataBuffer> out = Flux.concat(
+                Mono.fromCallable(() -> ProxyFrames.encode(agent.strategies(), agent.dataMimeType(), req)),
+                body.limitRate(prefetch));
+        Flux<DataBuffer> in = conn.track(agent.route(route)
+                .data(out, DataBuffer.class)
+                .retrieveFlux(DataBuffer.class)
+                .limitRate(prefetch));
+        return ProxyFrames.splitHeader(in,
+                head -> ProxyFrames.decode(agent.strategies(), agent.dataMimeType(), head, ProxyResponse.class),
+                (resp, respBody) -> Flux.concat(
+                        Mono.fromCallable(() -> ProxyFrames.encode(peer.strategies(), peer.dataMimeType(), resp)),
+                        respBody));
+    }
+
+    /** 仅在本节点选择连接；Agent 处于重连宽限期时按请求剩余预算等待 */
+    private Mono<AgentConnection> local(String clientId, ProxyRequest req, long requestBytes) {
+        Lane lane = routeTable.current().client(clientId).lane(req.getMethod(), req.getPath(), requestBytes);
+        AgentConnection conn = registry.select(clientId, lane, req.getTargetBaseUrl());
+        return conn != null ? Mono.just(conn)
+                : registry.awaitReconnect(clientId, lane, Duration.ofMillis(Math.max(0, req.getTimeoutMs())));
+    }
+
+    /** 流式请求体大小取自转发来的 Content-Length 头，缺失或非法时为 -1 */
+    private static long contentLength(ProxyRequest req) {
+        String value = req.getHeaders() != null ? req.getHeaders().getFirst(HttpHeaders.CONTENT_LENGTH) : null;
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException ignored) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private ProxyResponse notConnected(String clientId, ProxyRequest req) {
+        log.warn("Forwarded request rejected: clientId={} not connected to node={}, reqId={}", clientId, peers.getNodeId(), req.getRequestId());
+        ProxyResponse resp = new ProxyResponse();
+        resp.setRequestId(req.getRequestId());
+        resp.setStatus(503);
+        ProxyResponse.ErrorBody error = new ProxyResponse.ErrorBody();
+        error.setCode("CLIENT_NOT_CONNECTED");
+        error.setMessage("clientId " + clientId + " is not connected to node " + peers.getNodeId());
+        resp.setError(error);
+        return resp;
+    }
+}
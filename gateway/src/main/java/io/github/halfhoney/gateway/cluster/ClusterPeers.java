@@ -0,0 +1,207 @@
+package io.github.halfhoney.gateway.cluster;
+
+import com.achance.gateway.common.codec.ProxyWireFormat;
+import com.achance.gateway.common.transport.TunnelTransports;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.rsocket.AgentConnection;
+import io.github.halfhoney.gateway.rsocket.ClientRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.rsocket.lease.Lease;
+import io.rsocket.metadata.WellKnownMimeType;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 集群成员：按 cluster.peers 建立到其他网关节点的内部 RSocket 链路，经 {@value #CLIENTS_ROUTE} 订阅对端本地持有的
+ * clientId 快照，据此把本节点未连接的 clientId 解析为经对端转发的 {@link AgentConnection}。
+ * 链路断开时清空该节点的归属并按退避重连。链路单向使用：本节点只经自己发起的链路向对端转发，反方向由对端自己的链路承担。
+ * 指标：gateway.cluster.peers（已同步的节点数）、gateway.cluster.remote.clients（可经转发到达的 clientId 数）。
+ */
+@Component
+public class ClusterPeers {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterPeers.class);
+
+    /** 订阅对端本地 clientId 快照的路由，请求数据为订阅方 nodeId */
+    public static final String CLIENTS_ROUTE = "cluster.clients";
+
+    /** 链路连回本节点（peers 中包含自身地址）时的错误信息，收到后不再重连该地址 */
+    static final String SELF_PEER = "cluster peer is self";
+
+    private final GatewayProxyProperties props;
+    private final ObjectProvider<RSocketRequester.Builder> builders;
+    private final String nodeId;
+    private final List<Peer> peers = new CopyOnWriteArrayList<>();
+
+    public ClusterPeers(GatewayProxyProperties props,
+                        ObjectProvider<RSocketRequester.Builder> builders,
+                        ObjectProvider<MeterRegistry> meterRegistry) {
+        this.props = props;
+        this.builders = builders;
+        String configured = props.getCluster().getNodeId();
+        this.nodeId = configured != null && !configured.isBlank() ? configured : UUID.randomUUID().toString().substring(0, 8);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null && props.getCluster().isEnabled()) {
+            Gauge.builder("gateway.cluster.peers", peers, ps -> ps.stream().filter(p -> p.node != null).count())
+                    .description("Peer gateway nodes with a synced client list")
+                    .register(registry);
+            Gauge.builder("gateway.cluster.remote.clients", peers,
+                            ps -> ps.stream().mapToInt(p -> p.owned.size()).sum())
+                    .description("ClientIds reachable through peer gateway nodes")
+                    .register(registry);
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /** 选择持有该 clientId 的远端节点（多个节点同时持有时取在途请求少者），未知时返回 null */
+    public AgentConnection select(String clientId) {
+        List<AgentConnection> owners = null;
+        for (Peer peer : peers) {
+            AgentConnection conn = peer.owned.get(clientId);
+            if (conn != null) {
+                if (owners == null) {
+                    owners = new ArrayList<>(2);
+                }
+                owners.add(conn);
+            }
+        }
+        return owners != null ? ClientRegistry.pickLeastLoaded(owners) : null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        GatewayProxyProperties.Cluster cluster = props.getCluster();
+        if (!cluster.isEnabled()) {
+            return;
+        }
+        log.info("Cluster mode enabled: nodeId={}, peers={}", nodeId, cluster.getPeers());
+        for (String url : cluster.getPeers()) {
+            Peer peer = addPeer(URI.create(url.trim()));
+            peer.link = link(peer);
+        }
+    }
+
+    Peer addPeer(URI uri) {
+        Peer peer = new Peer(uri);
+        peers.add(peer);
+        return peer;
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Peer peer : peers) {
+            if (peer.link != null) {
+                peer.link.dispose();
+            }
+        }
+    }
+
+    private Disposable link(Peer peer) {
+        return Mono.defer(() -> connect(peer.uri))
+                .flatMapMany(requester -> requester.route(CLIENTS_ROUTE).data(nodeId).retrieveFlux(String.class)
+                        .doOnNext(snapshot -> peer.update(snapshot, requester))
+                        .doFinally(s -> {
+                            peer.clear();
+                            requester.dispose();
+                        }))
+                // 对端正常结束订阅同样视为断开
+                .concatWith(Flux.error(() -> new IllegalStateException("Cluster link closed by peer")))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .transientErrors(true)
+                        .filter(ex -> ex.getMessage() == null || !ex.getMessage().contains(SELF_PEER))
+                        .doBeforeRetry(rs -> log.warn("Cluster peer {} unavailable, reconnect attempt #{} (reason: {})",
+                                peer.uri, rs.totalRetriesInARow() + 1, rs.failure().toString())))
+                .subscribe(null, ex -> log.warn("Cluster peer {} ignored: {}", peer.uri, ex.getMessage()));
+    }
+
+    private Mono<RSocketRequester> connect(URI uri) {
+        // 集群内各节点配置一致：二进制编解码与 lease 按本节点开关声明，对端据此接受
+        // 节点之间固定用不带头部表的格式 1，滚动升级期间新旧节点可互通
+        return Mono.fromCallable(() -> builders.getObject()
+                        .dataMimeType(props.isBinaryCodecEnabled() ? ProxyWireFormat.MIME_TYPE : MimeTypeUtils.APPLICATION_JSON)
+                        .metadataMimeType(MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_ROUTING.getString()))
+                        .rsocketConnector(connector -> {
+                            if (props.isLeaseEnabled()) {
+                                connector.lease(spec -> spec.sender(() -> Flux.just(Lease.unbounded())));
+                            }
+                        }))
+                .flatMap(builder -> builder.connect(TunnelTransports.client(uri, props.isNativeTransport())))
+                .doOnSuccess(r -> log.info("Cluster link connected to {}", uri));
+    }
+
+    /** 快照格式：首行为持有节点的 nodeId，其后每行一个 clientId */
+    static String encodeSnapshot(String node, Collection<String> clientIds) {
+        StringBuilder sb = new StringBuilder(node);
+        for (String clientId : clientIds) {
+            sb.append('\n').append(clientId);
+        }
+        return sb.toString();
+    }
+
+    static final class Peer {
+        final URI uri;
+        /** 对端 nodeId，收到首个快照后可知，断开后为 null */
+        volatile String node;
+        volatile Map<String, AgentConnection> owned = Map.of();
+        Disposable link;
+
+        Peer(URI uri) {
+            this.uri = uri;
+        }
+
+        void update(String snapshot, RSocketRequester requester) {
+            String[] lines = snapshot.split("\n");
+            Set<String> clientIds = new LinkedHashSet<>(List.of(lines).subList(1, lines.length));
+            Map<String, AgentConnection> prev = owned;
+            Map<String, AgentConnection> next = new HashMap<>();
+            for (String clientId : clientIds) {
+                // 沿用同一链路上已有的连接对象，保留其在途计数
+                AgentConnection existing = prev.get(clientId);
+                next.put(clientId, existing != null && existing.getRequester() == requester
+                        ? existing : AgentConnection.remote(clientId, lines[0], requester));
+            }
+            if (node == null) {
+                log.info("Cluster peer synced: node={}, uri={}, clients={}", lines[0], uri, clientIds.size());
+            }
+            node = lines[0];
+            owned = next;
+            log.debug("Cluster peer {} owns {}", node, clientIds);
+        }
+
+        void clear() {
+            if (node != null) {
+                log.warn("Cluster peer disconnected: node={}, uri={}, dropped clients={}", node, uri, owned.size());
+            }
+            node = null;
+            owned = Map.of();
+        }
+    }
+}
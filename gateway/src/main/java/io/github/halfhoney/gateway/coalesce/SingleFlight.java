@@ -0,0 +1,110 @@
+package io.github.halfhoney.gateway.coalesce;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一 clientId 下键相同的并发幂等请求：首个请求（leader）经隧道发出，其余请求共享其响应。
+ * 键为 方法 + 路径 + 原始查询串 + 选定请求头；凭证、Cookie、Range 与条件请求头始终计入键，避免跨调用方串用响应。
+ * 指标：gateway.proxy.singleflight{client,role=leader|collapsed}。
+ */
+@Component
+public class SingleFlight {
+
+    /** 始终参与键计算的请求头 */
+    private static final List<String> IDENTITY_HEADERS = List.of(
+            HttpHeaders.AUTHORIZATION, HttpHeaders.COOKIE, HttpHeaders.RANGE,
+            HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.IF_MATCH,
+            HttpHeaders.IF_UNMODIFIED_SINCE, HttpHeaders.IF_RANGE);
+
+    private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public SingleFlight(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable());
+    }
+
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** 请求方法不在 methods 中或携带请求体时返回 null（不合并） */
+    public String key(String clientId, GatewayProxyProperties.SingleFlight policy, ServerHttpRequest request, String targetPath) {
+        String method = request.getMethod().name();
+        HttpHeaders headers = request.getHeaders();
+        if (!containsIgnoreCase(policy.getMethods(), method)
+                || headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(clientId).append('\n').append(method).append(' ').append(targetPath);
+        String rawQuery = request.getURI().getRawQuery();
+        if (rawQuery != null) {
+            key.append('?').append(rawQuery);
+        }
+        appendHeaders(key, headers, IDENTITY_HEADERS);
+        if (policy.getKeyHeaders() != null) {
+            appendHeaders(key, headers, policy.getKeyHeaders());
+        }
+        return key.toString();
+    }
+
+    /** 同键已有在途调用时共享其结果，否则执行 call；所有等待方都取消时才取消底层调用 */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String clientId, String key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            boolean[] leader = new boolean[1];
+            Mono<T> shared = (Mono<T>) inFlight.computeIfAbsent(key, k -> {
+                leader[0] = true;
+                return call.get()
+                        .doFinally(signal -> inFlight.remove(k))
+                        .share();
+            });
+            count(clientId, leader[0] ? "leader" : "collapsed");
+            return shared;
+        });
+    }
+
+    int inFlightKeys() {
+        return inFlight.size();
+    }
+
+    private static void appendHeaders(StringBuilder key, HttpHeaders headers, List<String> names) {
+        for (String name : names) {
+            List<String> values = headers.get(name);
+            if (values != null) {
+                key.append('\n').append(name.toLowerCase(Locale.ROOT)).append(':').append(String.join(",", values));
+            }
+        }
+    }
+
+    private static boolean containsIgnoreCase(List<String> values, String value) {
+        if (values == null) {
+            return false;
+        }
+        for (String v : values) {
+            if (v != null && v.trim().equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void count(String clientId, String role) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("gateway.proxy.singleflight", "client", clientId, "role", role).increment();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.halfhoney.gateway.config;
 
+import com.achance.gateway.common.dto.Lane;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -20,6 +21,60 @@ public class GatewayProxyProperties {
     /** 全局默认目标基础URL（未命中任何路由与客户端默认时使用） */
     private String defaultTargetBaseUrl;
 
+    /** 是否启用流式转发（requestChannel: agent.proxy.stream），请求/响应体分块透传而不整体缓冲 */
+    private boolean streaming = false;
+
+    /** 流式转发时向对端请求的分块窗口（背压），单请求内存约为 窗口 x 分块大小 */
+    private int streamPrefetch = 32;
+
+    /** WebSocket 升级请求经隧道转发（requestChannel: agent.proxy.websocket），需 Agent 同版本；默认开启 */
+    private WebSocket websocket = new WebSocket();
+
+    /** 是否接受 Agent 以二进制编解码（application/x-nectar-proxy）建立连接，关闭后 Agent 回退为 JSON */
+    private boolean binaryCodecEnabled = true;
+
+    /**
+     * 是否允许 Agent 在隧道内以 deflate 压缩响应体（网关随请求声明，写回调用方前解压）。
+     * 是否压缩及阈值由 Agent 的 agent.compression 决定，关闭此项则 Agent 一律不压缩
+     */
+    private boolean compressionEnabled = true;
+
+    /**
+     * 是否以 RSocket lease 模式接受 Agent（由 Agent 按自身负载发放请求许可）。RSocket 的 lease 为服务端全局开关，
+     * 开启后未声明 lease 的 Agent 会被拒绝并以 lease 模式重连，因此默认关闭
+     */
+    private boolean leaseEnabled = false;
+
+    /** lease 模式下等待许可的最大排队请求数（每连接），超出后返回 503 */
+    private int leaseMaxPending = 256;
+
+    /**
+     * Agent 最后一条连接断开后的宽限期（毫秒）：期间到达的请求挂起等待其重新注册（同时受请求截止时间约束），
+     * 使短暂断线对调用方不可见；0 表示立即返回 503
+     */
+    private long reconnectGraceMs = 3_000;
+
+    /** 额外的 RSocket over TCP 监听，与 spring.rsocket.server 的 WebSocket 端点同时生效，供可直连网关的 Agent 使用；默认关闭 */
+    private Tcp tcp = new Tcp();
+
+    /** TCP 监听与集群链路是否优先使用 Netty 原生传输（Linux 上为 epoll），关闭后固定使用 NIO */
+    private boolean nativeTransport = true;
+
+    /** RSocket 会话恢复：断线后在 session-duration 内重连的 Agent 续用原会话，在途请求不失败；默认关闭 */
+    private Resume resume = new Resume();
+
+    /** 多节点集群：节点间同步 clientId 归属，请求落在未持有该 clientId 的节点时转发给持有者；默认关闭 */
+    private Cluster cluster = new Cluster();
+
+    /** 进程级在途字节预算：缓冲的请求/响应体在持有期间记账，预算不足时新的缓冲请求等待或 503 */
+    private Memory memory = new Memory();
+
+    /** 可选的外部配置文件（YAML，含 gateway.proxy.*），刷新路由表时优先读取，例如 /config/application.yaml */
+    private String reloadFile;
+
+    /** 轮询 reload-file 修改时间的间隔（毫秒），0 表示仅通过 /actuator/proxyroutes 手动刷新 */
+    private long reloadCheckIntervalMs = 0;
+
     /** 按 clientId 的策略配置（可选） */
     private Map<String, ClientPolicy> clients;
 
@@ -34,6 +89,153 @@ public class GatewayProxyProperties {
         private String defaultTargetBaseUrl;
         /** 路由表：按顺序匹配 prefix，命中后使用对应 targetBaseUrl */
         private List<Route> routes;
+        /** 覆盖全局 streaming，null 表示沿用全局 */
+        private Boolean streaming;
+        /** 网关侧响应缓存（仅 GET），默认关闭 */
+        private Cache cache;
+        /** 合并并发的相同幂等请求（single-flight），默认关闭 */
+        private SingleFlight singleFlight;
+        /** 准入控制：并发上限与令牌桶限流，默认不限制 */
+        private Admission admission;
+        /** 幂等请求的对冲与传输错误重试（仅缓冲模式），默认关闭 */
+        private Hedging hedging;
+        /** 覆盖全局 memory.max-body-bytes：请求体上限（字节），超出返回 413，0 表示不限 */
+        private Long maxBodyBytes;
+        /** 覆盖全局 memory.client-share-percent：该 clientId 最多占用的在途字节预算百分比 */
+        private Integer memorySharePercent;
+        /** 优先级通道规则：按顺序匹配，首个命中的规则决定请求走哪个通道，均未命中走 interactive */
+        private List<LaneRule> lanes;
+    }
+
+    @Getter
+    @Setter
+    public static class LaneRule {
+        /** 命中后使用的通道 */
+        private Lane lane = Lane.BULK;
+        /** 路径前缀，命中任一即可；为空表示不限 */
+        private List<String> pathPrefixes;
+        /** HTTP 方法，命中任一即可；为空表示不限 */
+        private List<String> methods;
+        /** 请求体大小（Content-Length）下限，null 表示不限；未声明长度的请求体不满足该条件 */
+        private Long minRequestBytes;
+    }
+
+    @Getter
+    @Setter
+    public static class WebSocket {
+        private boolean enabled = true;
+        /** 调用方单条消息（含分片聚合后）的最大字节数，超出时关闭会话 */
+        private int maxFramePayloadBytes = 1024 * 1024;
+    }
+
+    @Getter
+    @Setter
+    public static class Tcp {
+        private boolean enabled = false;
+        /** 监听地址，为空表示全部网卡 */
+        private String address;
+        private int port = 7000;
+    }
+
+    @Getter
+    @Setter
+    public static class Resume {
+        private boolean enabled = false;
+        /** 断线后保留会话等待 Agent 恢复的时长（毫秒），超过后会话关闭，Agent 改为重新建立连接并注册 */
+        private long sessionDurationMs = 30_000;
+        /** 每条连接缓存的未确认帧上限（字节），断线期间超出时最早的帧被丢弃、恢复失败并退化为重新连接 */
+        private int bufferBytes = 4 * 1024 * 1024;
+    }
+
+    @Getter
+    @Setter
+    public static class Cluster {
+        private boolean enabled = false;
+        /** 本节点标识（日志与指标中使用），为空时启动时随机生成 */
+        private String nodeId;
+        /** 其他节点的 RSocket 地址（与 Agent 连接的地址相同），例如 ws://gateway-2:9000/rsocket 或 tcp://gateway-2:7000 */
+        private List<String> peers = List.of();
+    }
+
+    @Getter
+    @Setter
+    public static class Memory {
+        private boolean enabled = true;
+        /** 在途字节预算（所有 clientId 合计），0 表示取最大堆的 25% */
+        private long maxBytes = 0;
+        /** 单个 clientId 最多占用预算的百分比（可按 clientId 覆盖），避免一个大传输方挤占全部预算 */
+        private int clientSharePercent = 50;
+        /** 预算不足时排队等待的最长时间（毫秒，同时受请求截止时间约束），超时返回 503 */
+        private long maxWaitMs = 1_000;
+        /** 请求体上限（字节，可按 clientId 覆盖），按 Content-Length 提前判断、缓冲模式另按实际长度判断，超出返回 413；0 表示不限 */
+        private long maxBodyBytes = 0;
+        /** 预算不足返回 503 时的 Retry-After（秒） */
+        private int retryAfterSeconds = 1;
+    }
+
+    @Getter
+    @Setter
+    public static class Admission {
+        /** 最大在途请求数，null 表示不限制；adaptive 模式下为上限 */
+        private Integer maxInFlight;
+        /** fixed：固定并发上限；adaptive：AIMD，成功时缓慢加一、失败或超过 latency-threshold-ms 时乘 0.9 */
+        private String limitMode = "fixed";
+        /** adaptive 模式下的并发下限 */
+        private int minLimit = 4;
+        /** adaptive 模式下视为拥塞的耗时阈值（毫秒），0 表示只看失败 */
+        private long latencyThresholdMs = 0;
+        /** 令牌桶速率（请求/秒），0 表示不限速 */
+        private double ratePerSecond = 0;
+        /** 令牌桶容量（突发），0 表示等于速率 */
+        private int burst = 0;
+        /** 并发超限返回 503 时的 Retry-After（秒） */
+        private int retryAfterSeconds = 1;
+    }
+
+    @Getter
+    @Setter
+    public static class Hedging {
+        private boolean enabled = false;
+        /** 参与对冲与重试的幂等方法 */
+        private List<String> methods = List.of("GET", "HEAD", "OPTIONS");
+        /** 超过该 clientId/路由近期耗时的此分位数（0-100）仍无响应时发出一次对冲请求，0 表示只重试不对冲 */
+        private double delayPercentile = 95;
+        /** 对冲延迟下限（毫秒），避免对本就很快的请求成倍加压 */
+        private long minDelayMs = 10;
+        /** 近期耗时样本数不足该值时不对冲 */
+        private int minSamples = 20;
+        /** 隧道传输错误（连接断开、lease 拒绝）后换用同 clientId 其他连接重试的最大次数 */
+        private int maxRetries = 1;
+        /** 重试预算：对冲与重试合计约为原始请求数的该百分比，过载时不放大流量 */
+        private double budgetPercent = 10;
+        /** 重试预算的保底速率（次/秒），低流量时仍可重试 */
+        private double budgetMinPerSecond = 1;
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        private boolean enabled = false;
+        /** 最大缓存条目数（按 LRU 淘汰） */
+        private int maxEntries = 1_000;
+        /** 缓存响应体总字节上限 */
+        private long maxBytes = 64L * 1024 * 1024;
+        /** 单个响应体超过该大小不缓存 */
+        private int maxEntryBytes = 1024 * 1024;
+        /** 新鲜期上限（毫秒），上游 max-age/Expires 更长时按此截断 */
+        private long maxTtlMs = 300_000;
+        /** 过期后带 ETag/Last-Modified 的条目继续保留用于条件请求重验证的时长（毫秒） */
+        private long retainStaleMs = 600_000;
+    }
+
+    @Getter
+    @Setter
+    public static class SingleFlight {
+        private boolean enabled = false;
+        /** 参与合并的方法 */
+        private List<String> methods = List.of("GET", "HEAD");
+        /** 额外计入合并键的请求头（Authorization/Cookie/Range/条件请求头始终计入） */
+        private List<String> keyHeaders = List.of("Accept", "Accept-Encoding", "Accept-Language");
     }
 
     @Getter
@@ -0,0 +1,66 @@
+package io.github.halfhoney.gateway.config;
+
+import com.achance.gateway.common.codec.ProxyBinaryDecoder;
+import com.achance.gateway.common.codec.ProxyBinaryEncoder;
+import io.rsocket.core.Resume;
+import io.rsocket.exceptions.RejectedSetupException;
+import io.rsocket.lease.Lease;
+import io.rsocket.resume.InMemoryResumableFramesStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.rsocket.server.RSocketServerCustomizer;
+import org.springframework.boot.rsocket.messaging.RSocketStrategiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+@Configuration
+public class GatewayRSocketConfig {
+
+    /** 拒绝未声明 lease 的 SETUP 时的错误信息，Agent 据此切换为 lease 模式 */
+    public static final String LEASE_REQUIRED = "lease required";
+
+    /** 注册 ProxyRequest/ProxyResponse 二进制编解码；Agent 在 SETUP 中声明 data MimeType 后按连接选用 */
+    @Bean
+    @ConditionalOnProperty(prefix = "gateway.proxy", name = "binary-codec-enabled", havingValue = "true", matchIfMissing = true)
+    public RSocketStrategiesCustomizer proxyBinaryCodecCustomizer() {
+        return strategies -> strategies
+                .encoder(new ProxyBinaryEncoder())
+                .decoder(new ProxyBinaryDecoder());
+    }
+
+    /**
+     * lease 模式：Agent 按自身负载向网关发放请求许可，网关超出许可的请求排队等待（上限 lease-max-pending）；
+     * Agent 调用网关（register）不受限，发放无界许可。
+     * RSocket 服务端开启 lease 后对所有连接生效：未声明 lease 的 Agent 既不会发放许可，也无法处理网关下发的 LEASE 帧，
+     * 因此在 SETUP 阶段（尚未下发 LEASE 之前）以 RejectedSetupException 拒绝，Agent 收到后以 lease 模式重连。
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "gateway.proxy", name = "lease-enabled", havingValue = "true")
+    public RSocketServerCustomizer leaseServerCustomizer(GatewayProxyProperties props) {
+        return server -> server
+                .lease(spec -> spec
+                        .sender(() -> Flux.just(Lease.unbounded()))
+                        .maxPendingRequests(props.getLeaseMaxPending()))
+                .interceptors(registry -> registry.forSocketAcceptor(acceptor -> (setup, sendingSocket) ->
+                        setup.willClientHonorLease()
+                                ? acceptor.accept(setup, sendingSocket)
+                                : Mono.error(new RejectedSetupException(LEASE_REQUIRED))));
+    }
+
+    /**
+     * 会话恢复：Agent 断线后以 RESUME 帧重连时续用原会话，双方从各自缓存中重发对端未确认的帧，在途请求不受影响；
+     * 会话保留期间连接仍留在 ClientRegistry 中，新请求写入缓存待恢复后发出（受请求截止时间约束）。
+     * 未请求恢复的 Agent 照常建立普通连接。
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "gateway.proxy.resume", name = "enabled", havingValue = "true")
+    public RSocketServerCustomizer resumeServerCustomizer(GatewayProxyProperties props) {
+        GatewayProxyProperties.Resume resume = props.getResume();
+        return server -> server.resume(new Resume()
+                .sessionDuration(Duration.ofMillis(resume.getSessionDurationMs()))
+                .storeFactory(token -> new InMemoryResumableFramesStore("server", token, resume.getBufferBytes())));
+    }
+}
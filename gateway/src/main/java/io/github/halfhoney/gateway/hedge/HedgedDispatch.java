@@ -0,0 +1,333 @@
+package io.github.halfhoney.gateway.hedge;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.rsocket.AgentConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.rsocket.exceptions.ConnectionCloseException;
+import io.rsocket.exceptions.Retryable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.nio.channels.ClosedChannelException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 幂等请求的对冲与重试：首个请求超过该 clientId/路由近期耗时的分位数仍无响应时，向另一条连接（没有时为同一连接）
+ * 再发一份，先到的响应胜出、其余经 RSocket CANCEL 取消；隧道传输错误（连接断开、lease 拒绝）时换用其他连接重试。
+ * 对冲与重试共用按 clientId 的重试预算（原始请求数的百分比 + 保底速率），过载时不放大流量。
+ * 指标：gateway.proxy.hedging{client,event=hedge|hedge_won|retry|budget_exhausted}。
+ */
+@Component
+public class HedgedDispatch {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgedDispatch.class);
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final Map<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    public HedgedDispatch(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(), System::nanoTime);
+    }
+
+    public HedgedDispatch(MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    /** 请求方法是否参与对冲与重试 */
+    public boolean applies(GatewayProxyProperties.Hedging policy, String method) {
+        if (policy.getMethods() == null) {
+            return false;
+        }
+        for (String m : policy.getMethods()) {
+            if (m != null && m.trim().equalsIgnoreCase(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 以 first 发出 call，按策略对冲与重试。alternatives 按已尝试过的连接返回下一条可用连接，没有时返回 null；
+     * 截止时间之后不再发起对冲。返回的 Mono 被取消时取消全部在途尝试。
+     */
+    public <T> Mono<T> execute(String clientId, String route, GatewayProxyProperties.Hedging policy,
+                               AgentConnection first, Function<Set<AgentConnection>, AgentConnection> alternatives,
+                               Function<AgentConnection, Mono<T>> call, long deadlineNanos) {
+        return Mono.create(sink -> {
+            RetryBudget budget = budgets.computeIfAbsent(clientId, k -> new RetryBudget(nanoClock));
+            budget.deposit(policy);
+            LatencyWindow window = latencies.computeIfAbsent(clientId + '\n' + route, k -> new LatencyWindow());
+            new Race<>(sink, clientId, policy, budget, window, alternatives, call).start(first, deadlineNanos);
+        });
+    }
+
+    /** 连接层面的失败（请求未被处理或结果未送达），换一条连接重发是安全的 */
+    static boolean isRetryable(Throwable ex) {
+        return ex instanceof Retryable || ex instanceof ConnectionCloseException || ex instanceof ClosedChannelException;
+    }
+
+    long hedgeDelayNanos(String clientId, String route, GatewayProxyProperties.Hedging policy) {
+        LatencyWindow window = latencies.get(clientId + '\n' + route);
+        return window != null ? window.hedgeDelayNanos(policy) : -1;
+    }
+
+    private void count(String clientId, String event) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("gateway.proxy.hedging", "client", clientId, "event", event).increment();
+        }
+    }
+
+    /** 一个请求的全部尝试；状态在自身监视器下变更 */
+    private final class Race<T> {
+        private final MonoSink<T> sink;
+        private final String clientId;
+        private final GatewayProxyProperties.Hedging policy;
+        private final RetryBudget budget;
+        private final LatencyWindow window;
+        private final Function<Set<AgentConnection>, AgentConnection> alternatives;
+        private final Function<AgentConnection, Mono<T>> call;
+        private final Disposable.Composite attempts = Disposables.composite();
+        private final Set<AgentConnection> tried = new LinkedHashSet<>();
+        private AgentConnection first;
+        private int running;
+        private int retries;
+        private boolean done;
+
+        Race(MonoSink<T> sink, String clientId, GatewayProxyProperties.Hedging policy, RetryBudget budget,
+             LatencyWindow window, Function<Set<AgentConnection>, AgentConnection> alternatives,
+             Function<AgentConnection, Mono<T>> call) {
+            this.sink = sink;
+            this.clientId = clientId;
+            this.policy = policy;
+            this.budget = budget;
+            this.window = window;
+            this.alternatives = alternatives;
+            this.call = call;
+        }
+
+        void start(AgentConnection conn, long deadlineNanos) {
+            first = conn;
+            sink.onDispose(attempts);
+            synchronized (this) {
+                reserve(conn);
+            }
+            attempt(conn, false);
+            long delay = window.hedgeDelayNanos(policy);
+            if (delay > 0 && nanoClock.getAsLong() + delay < deadlineNanos) {
+                attempts.add(Mono.delay(Duration.ofNanos(delay)).subscribe(t -> hedge()));
+            }
+        }
+
+        /** 在监视器内调用：计入在途尝试，使其他尝试失败时不会提前结束 */
+        private void reserve(AgentConnection conn) {
+            running++;
+            tried.add(conn);
+        }
+
+        private void attempt(AgentConnection conn, boolean hedge) {
+            long started = nanoClock.getAsLong();
+            attempts.add(call.apply(conn).subscribe(
+                    value -> onValue(value, started, hedge),
+                    ex -> onError(conn, ex),
+                    this::onEmpty));
+        }
+
+        private void hedge() {
+            AgentConnection conn;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (!budget.tryWithdraw(policy)) {
+                    count(clientId, "budget_exhausted");
+                    return;
+                }
+                AgentConnection alt = alternatives.apply(Collections.unmodifiableSet(tried));
+                conn = alt != null ? alt : first;
+                reserve(conn);
+            }
+            count(clientId, "hedge");
+            log.debug("Proxy request hedged: clientId={}, connId={}", clientId, conn.getId());
+            attempt(conn, true);
+        }
+
+        private void onValue(T value, long started, boolean hedge) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            window.record(nanoClock.getAsLong() - started);
+            if (hedge) {
+                count(clientId, "hedge_won");
+            }
+            // 成功后 onDispose 取消其余尝试
+            sink.success(value);
+        }
+
+        private void onError(AgentConnection conn, Throwable ex) {
+            AgentConnection retry = null;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                running--;
+                if (isRetryable(ex) && retries < policy.getMaxRetries()) {
+                    AgentConnection alt = alternatives.apply(Collections.unmodifiableSet(tried));
+                    if (alt != null) {
+                        if (budget.tryWithdraw(policy)) {
+                            retries++;
+                            retry = alt;
+                            reserve(alt);
+                        } else {
+                            count(clientId, "budget_exhausted");
+                        }
+                    }
+                }
+                if (retry == null) {
+                    // 另一尝试仍在途时等待其结果
+                    if (running > 0) {
+                        return;
+                    }
+                    done = true;
+                }
+            }
+            if (retry != null) {
+                count(clientId, "retry");
+                log.debug("Proxy request retried: clientId={}, failedConnId={}, connId={}, err={}",
+                        clientId, conn.getId(), retry.getId(), ex.toString());
+                attempt(retry, false);
+                return;
+            }
+            sink.error(ex);
+        }
+
+        private void onEmpty() {
+            synchronized (this) {
+                if (done || --running > 0) {
+                    return;
+                }
+                done = true;
+            }
+            sink.success();
+        }
+    }
+
+    /** 近期成功尝试的耗时（环形缓冲），每累计若干个样本重算一次分位数 */
+    static final class LatencyWindow {
+        private static final int SIZE = 256;
+        private static final int RECOMPUTE_EVERY = 16;
+
+        private final long[] samples = new long[SIZE];
+        private int count;
+        private int sinceRecompute;
+        private double percentile = -1;
+        private volatile long percentileNanos = -1;
+
+        synchronized void record(long nanos) {
+            samples[count++ % SIZE] = nanos;
+            if (count == 2 * SIZE) {
+                count = SIZE;
+            }
+            sinceRecompute++;
+        }
+
+        /** 分位数对应的对冲延迟（不低于 min-delay-ms），样本不足或未开启对冲时为 -1 */
+        long hedgeDelayNanos(GatewayProxyProperties.Hedging policy) {
+            double p = policy.getDelayPercentile();
+            if (p <= 0) {
+                return -1;
+            }
+            long value;
+            synchronized (this) {
+                int n = Math.min(count, SIZE);
+                if (n < Math.max(1, policy.getMinSamples())) {
+                    return -1;
+                }
+                if (sinceRecompute >= RECOMPUTE_EVERY || p != percentile || percentileNanos < 0) {
+                    long[] sorted = Arrays.copyOf(samples, n);
+                    Arrays.sort(sorted);
+                    int rank = (int) Math.ceil(Math.min(100, p) / 100 * n) - 1;
+                    percentileNanos = sorted[Math.max(0, rank)];
+                    percentile = p;
+                    sinceRecompute = 0;
+                }
+                value = percentileNanos;
+            }
+            return Math.max(value, TimeUnit.MILLISECONDS.toNanos(policy.getMinDelayMs()));
+        }
+    }
+
+    /**
+     * 重试预算（令牌桶）：每个原始请求存入 budget-percent / 100 个令牌，另按 budget-min-per-second 随时间补充，
+     * 每次对冲或重试取出一个；余额上限为 10 秒的保底额度（至少 10 个）。
+     */
+    static final class RetryBudget {
+        private static final long REFILL_WINDOW_SECONDS = 10;
+
+        private final LongSupplier nanoClock;
+        private boolean started;
+        private double tokens;
+        private long refilledAt;
+
+        RetryBudget(LongSupplier nanoClock) {
+            this.nanoClock = nanoClock;
+        }
+
+        synchronized void deposit(GatewayProxyProperties.Hedging policy) {
+            refill(policy);
+            tokens = Math.min(capacity(policy), tokens + policy.getBudgetPercent() / 100);
+        }
+
+        synchronized boolean tryWithdraw(GatewayProxyProperties.Hedging policy) {
+            refill(policy);
+            // 按百分比累加的令牌有浮点误差，10 个 10% 应当够一次
+            if (tokens < 1 - 1e-9) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        private void refill(GatewayProxyProperties.Hedging policy) {
+            long now = nanoClock.getAsLong();
+            if (!started) {
+                started = true;
+                tokens = capacity(policy);
+            } else {
+                double seconds = (now - refilledAt) / 1e9;
+                tokens = Math.min(capacity(policy), tokens + seconds * policy.getBudgetMinPerSecond());
+            }
+            refilledAt = now;
+        }
+
+        private static double capacity(GatewayProxyProperties.Hedging policy) {
+            return Math.max(10, REFILL_WINDOW_SECONDS * policy.getBudgetMinPerSecond());
+        }
+
+        synchronized double tokens() {
+            return tokens;
+        }
+    }
+}
@@ -1,45 +1,94 @@
 package io.github.halfhoney.gateway.http;
 
+import com.achance.gateway.common.codec.BodyCompression;
+import com.achance.gateway.common.dto.Lane;
+import com.achance.gateway.common.dto.ProxyHeaders;
 import com.achance.gateway.common.dto.ProxyRequest;
 import com.achance.gateway.common.dto.ProxyResponse;
+import com.achance.gateway.common.memory.MemoryBudget;
+import com.achance.gateway.common.stream.ProxyFrames;
+import io.github.halfhoney.gateway.admission.AdmissionControl;
+import io.github.halfhoney.gateway.cache.ResponseCache;
+import io.github.halfhoney.gateway.cluster.ClusterPeers;
+import io.github.halfhoney.gateway.coalesce.SingleFlight;
+import io.github.halfhoney.gateway.hedge.HedgedDispatch;
+import io.github.halfhoney.gateway.memory.MemoryGovernor;
+import io.github.halfhoney.gateway.metrics.ProxyMetrics;
+import io.github.halfhoney.gateway.rsocket.AgentConnection;
 import io.github.halfhoney.gateway.rsocket.ClientRegistry;
 import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.routing.ClientRoutes;
+import io.github.halfhoney.gateway.routing.RouteTableHolder;
+import io.rsocket.exceptions.RejectedException;
+import io.rsocket.lease.MissingLeaseException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.PayloadTooLargeException;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuples;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/proxy")
 public class ProxyController {
     private static final Logger log = LoggerFactory.getLogger(ProxyController.class);
+    static final String TIMEOUT_HEADER = "X-Timeout-Ms";
     private final ClientRegistry registry;
     private final GatewayProxyProperties props;
+    private final RouteTableHolder routeTable;
+    private final ResponseCache responseCache;
+    private final SingleFlight singleFlight;
+    private final AdmissionControl admissionControl;
+    private final ProxyMetrics metrics;
+    private final ClusterPeers cluster;
+    private final WebSocketProxy webSockets;
+    private final HedgedDispatch hedgedDispatch;
+    private final MemoryGovernor memoryGovernor;
 
-    public ProxyController(ClientRegistry registry, GatewayProxyProperties props) {
+    public ProxyController(ClientRegistry registry, GatewayProxyProperties props, RouteTableHolder routeTable,
+                           ResponseCache responseCache, SingleFlight singleFlight, AdmissionControl admissionControl,
+                           ProxyMetrics metrics, ClusterPeers cluster, WebSocketProxy webSockets,
+                           HedgedDispatch hedgedDispatch, MemoryGovernor memoryGovernor) {
         this.registry = registry;
         this.props = props;
+        this.routeTable = routeTable;
+        this.responseCache = responseCache;
+        this.singleFlight = singleFlight;
+        this.admissionControl = admissionControl;
+        this.metrics = metrics;
+        this.cluster = cluster;
+        this.webSockets = webSockets;
+        this.hedgedDispatch = hedgedDispatch;
+        this.memoryGovernor = memoryGovernor;
     }
 
     @RequestMapping(path = "/{clientId}/**")
-    public Mono<ResponseEntity<byte[]>> proxy(@PathVariable String clientId,
+    public Mono<ResponseEntity<Flux<DataBuffer>>> proxy(@PathVariable String clientId,
                                               ServerWebExchange exchange,
                                               @RequestBody(required = false) Mono<byte[]> bodyMono) {
         long start = System.currentTimeMillis();
-        RSocketRequester requester = registry.get(clientId);
-        if (requester == null) {
-            log.warn("Proxy request rejected: clientId={} not connected", clientId);
-            return Mono.just(ResponseEntity.status(503).body((byte[]) null));
-        }
+        long startNanos = metrics.now();
         String fullPath = exchange.getRequest().getURI().getPath();
         String prefix = "/proxy/" + clientId;
         String targetPath = fullPath.substring(prefix.length());
@@ -50,36 +99,21 @@ public class ProxyController {
         pr.setMethod(exchange.getRequest().getMethod() != null ? exchange.getRequest().getMethod().name() : "GET");
         pr.setPath(targetPath);
         pr.setQuery(exchange.getRequest().getQueryParams().toSingleValueMap());
-        pr.setHeaders(headersToMap(exchange.getRequest().getHeaders()));
-        // 计算超时：请求头 > client 策略 > 全局默认
-        Integer timeoutMs = Optional.ofNullable(exchange.getRequest().getHeaders().getFirst("X-Timeout-Ms"))
-                .map(Integer::valueOf)
-                .orElseGet(() -> {
-                    GatewayProxyProperties.ClientPolicy p = props.getClients() != null ? props.getClients().get(clientId) : null;
-                    return p != null && p.getTimeoutMs() != null ? p.getTimeoutMs() : props.getDefaultTimeoutMs();
-                });
+        pr.setHeaders(ProxyHeaders.fromHttpHeaders(exchange.getRequest().getHeaders()));
+        ClientRoutes routes = routeTable.current().client(clientId);
+        // 计算超时：请求头 > client 策略 > 全局默认（后两者已在路由表中解析）；以请求到达时刻为起点形成截止时间，
+        // 下发给 agent 的是发送时刻的剩余预算而非原值
+        int timeoutMs = parseTimeout(exchange.getRequest().getHeaders().getFirst(TIMEOUT_HEADER), routes.getTimeoutMs());
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
         pr.setTimeoutMs(timeoutMs);
 
         // 目标地址选择：client.routes(按顺序匹配prefix) > client.defaultTargetBaseUrl > global.defaultTargetBaseUrl
-        GatewayProxyProperties.ClientPolicy policy0 = props.getClients() != null ? props.getClients().get(clientId) : null;
-        String targetBaseUrl = null;
-        if (policy0 != null && policy0.getRoutes() != null) {
-            for (GatewayProxyProperties.Route r : policy0.getRoutes()) {
-                if (r.getPrefix() != null && pr.getPath().startsWith(r.getPrefix())) {
-                    targetBaseUrl = r.getTargetBaseUrl();
-                    break;
-                }
-            }
-        }
-        if (targetBaseUrl == null && policy0 != null) {
-            targetBaseUrl = policy0.getDefaultTargetBaseUrl();
-        }
+        GatewayProxyProperties.Route route = routes.matchRoute(targetPath);
+        String targetBaseUrl = routes.resolveTarget(route);
         if (targetBaseUrl == null) {
-            targetBaseUrl = props.getDefaultTargetBaseUrl();
-        }
-        if (targetBaseUrl == null || targetBaseUrl.isBlank()) {
             log.warn("No targetBaseUrl resolved for clientId={}, path={}", clientId, pr.getPath());
-            return Mono.just(ResponseEntity.status(502).body((byte[]) null));
+            metrics.rejected("no_target");
+            return Mono.just(ResponseEntity.status(502).build());
         }
         pr.setTargetBaseUrl(targetBaseUrl);
 
@@ -87,41 +121,246 @@ public class ProxyController {
                 .defaultIfEmpty(new byte[0])
                 .map(bytes -> {
                     if (bytes.length > 0) {
-                        pr.setBodyBase64(Base64.getEncoder().encodeToString(bytes));
+                        pr.setBody(bytes);
                     }
                     return pr;
                 });
 
         // ACL 校验（可选）
-        GatewayProxyProperties.ClientPolicy policy = policy0;
-        if (policy != null && Boolean.FALSE.equals(policy.getEnabled())) {
+        if (!routes.isEnabled()) {
             log.warn("Proxy request denied: clientId={} disabled by policy", clientId);
-            return Mono.just(ResponseEntity.status(403).body((byte[]) null));
+            metrics.rejected("forbidden");
+            return Mono.just(ResponseEntity.status(403).build());
         }
-        if (policy != null && policy.getAllowedMethods() != null && !policy.getAllowedMethods().isEmpty()) {
-            String m = pr.getMethod();
-            if (policy.getAllowedMethods().stream().noneMatch(allow -> allow.equalsIgnoreCase(m))) {
-                log.warn("Proxy request denied: clientId={}, method={} not allowed", clientId, m);
-                return Mono.just(ResponseEntity.status(403).body((byte[]) null));
-            }
+        HttpMethod method = exchange.getRequest().getMethod();
+        if (!routes.isMethodAllowed(method)) {
+            log.warn("Proxy request denied: clientId={}, method={} not allowed", clientId, method);
+            metrics.rejected("forbidden");
+            return Mono.just(ResponseEntity.status(403).build());
+        }
+        if (!routes.isPathAllowed(targetPath)) {
+            log.warn("Proxy request denied: clientId={}, path={} not allowed", clientId, targetPath);
+            metrics.rejected("forbidden");
+            return Mono.just(ResponseEntity.status(403).build());
         }
-        if (policy != null && policy.getAllowedPathPrefixes() != null && !policy.getAllowedPathPrefixes().isEmpty()) {
-            String tp = pr.getPath();
-            boolean ok = policy.getAllowedPathPrefixes().stream().anyMatch(tp::startsWith);
-            if (!ok) {
-                log.warn("Proxy request denied: clientId={}, path={} not allowed", clientId, tp);
-                return Mono.just(ResponseEntity.status(403).body((byte[]) null));
+        // 请求体上限：按声明的长度提前拒绝，未声明长度的缓冲请求在读取后按实际长度判断
+        long contentLength = exchange.getRequest().getHeaders().getContentLength();
+        if (routes.isBodyTooLarge(contentLength)) {
+            log.warn("Proxy request rejected: clientId={}, contentLength={} exceeds maxBodyBytes={}", clientId, contentLength, routes.getMaxBodyBytes());
+            metrics.rejected("too_large");
+            return Mono.just(ResponseEntity.status(413).build());
+        }
+
+        String routeTag = route != null ? route.getPrefix() : "default";
+
+        // 响应缓存：新鲜命中直接应答，不经过隧道（agent 断开时同样可用）
+        DataBufferFactory bufferFactory = exchange.getResponse().bufferFactory();
+        GatewayProxyProperties.Cache cachePolicy = routes.getCache();
+        ResponseCache.Lookup cached = cachePolicy != null && !isWebSocket(exchange.getRequest())
+                ? responseCache.lookup(clientId, cachePolicy, exchange.getRequest(), targetPath)
+                : null;
+        if (cached != null) {
+            if (cached.isFresh()) {
+                log.debug("Proxy cache hit -> clientId={}, path={}", clientId, targetPath);
+                return metrics.observe(metrics.begin(clientId, routeTag, pr.getMethod(), startNanos),
+                        Mono.just(responseCache.hit(cached, bufferFactory)));
             }
+            responseCache.addValidators(cached, pr.getHeaders());
         }
 
-        log.debug("Proxy dispatch -> clientId={}, method={}, path={}, reqId={}, timeoutMs={}", clientId, pr.getMethod(), pr.getPath(), pr.getRequestId(), timeoutMs);
+        // 优先级通道：大传输走 bulk 连接，避免阻塞同一连接上的小请求
+        Lane lane = routes.lane(pr.getMethod(), targetPath, contentLength);
+
+        // 本节点连接优先（其中优先目标可用的连接），其次为集群中持有该 clientId 的其他节点
+        AgentConnection conn = registry.select(clientId, lane, targetBaseUrl);
+        if (conn == null || conn.isTargetDown(targetBaseUrl)) {
+            AgentConnection remote = cluster.select(clientId);
+            conn = remote != null ? remote : conn;
+        }
+        if (conn != null && conn.isTargetDown(targetBaseUrl)) {
+            // agent 已报告该目标熔断打开：不经过隧道直接失败，agent 开始半开试探后恢复分发
+            long retryAfterSeconds = Math.max(1, (conn.targetRetryAfterMs(targetBaseUrl) + 999) / 1000);
+            log.warn("Proxy request rejected: clientId={}, target={} reported down by agent, retryAfter={}s", clientId, targetBaseUrl, retryAfterSeconds);
+            metrics.rejected("upstream_down");
+            return Mono.just(ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds)).build());
+        }
+        if (conn != null) {
+            return forward(clientId, conn, pr, routes, exchange, dataMono, cached, targetPath, routeTag, startNanos, deadlineNanos, start);
+        }
+        // agent 短暂断线（宽限期内）时挂起等待其重新注册，等待时间计入请求截止时间
+        String path = targetPath;
+        return registry.awaitReconnect(clientId, lane, Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime())))
+                .flatMap(c -> forward(clientId, c, pr, routes, exchange, dataMono, cached, path, routeTag, startNanos, deadlineNanos, start))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.warn("Proxy request rejected: clientId={} not connected", clientId);
+                    metrics.rejected("not_connected");
+                    return ResponseEntity.status(503).build();
+                }));
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> forward(String clientId,
+                                                           AgentConnection conn,
+                                                           ProxyRequest pr,
+                                                           ClientRoutes routes,
+                                                           ServerWebExchange exchange,
+                                                           Mono<ProxyRequest> dataMono,
+                                                           ResponseCache.Lookup cached,
+                                                           String targetPath,
+                                                           String routeTag,
+                                                           long startNanos,
+                                                           long deadlineNanos,
+                                                           long start) {
+        // 仅对已连接的 clientId 打 client 标签，未知 clientId 不会产生新的时间序列
+        ProxyMetrics.Exchange observed = metrics.begin(clientId, routeTag, pr.getMethod(), startNanos);
+
+        // 准入控制：令牌桶 429 / 并发上限 503，许可在响应体结束后归还
+        GatewayProxyProperties.Admission admission = routes.getAdmission();
+        if (admission == null) {
+            return metrics.observe(observed, dispatch(clientId, conn, pr, routes, exchange, dataMono, cached, targetPath, observed, deadlineNanos, start));
+        }
+        AdmissionControl.Ticket ticket = admissionControl.tryAcquire(clientId, admission);
+        if (!ticket.isAdmitted()) {
+            log.warn("Proxy request throttled: clientId={}, status={}, retryAfter={}s", clientId, ticket.getStatus(), ticket.getRetryAfterSeconds());
+            return metrics.observe(observed, Mono.just(ResponseEntity.status(ticket.getStatus())
+                    .header(HttpHeaders.RETRY_AFTER, Integer.toString(ticket.getRetryAfterSeconds()))
+                    .build()));
+        }
+        return metrics.observe(observed,
+                admissionControl.guard(ticket, dispatch(clientId, conn, pr, routes, exchange, dataMono, cached, targetPath, observed, deadlineNanos, start)));
+    }
 
-        return dataMono
-                .flatMap(data -> requester.route("agent.proxy.request").data(data).retrieveMono(ProxyResponse.class))
+    private Mono<ResponseEntity<Flux<DataBuffer>>> dispatch(String clientId,
+                                                            AgentConnection conn,
+                                                            ProxyRequest pr,
+                                                            ClientRoutes routes,
+                                                            ServerWebExchange exchange,
+                                                            Mono<ProxyRequest> dataMono,
+                                                            ResponseCache.Lookup cached,
+                                                            String targetPath,
+                                                            ProxyMetrics.Exchange observed,
+                                                            long deadlineNanos,
+                                                            long start) {
+        if (props.isCompressionEnabled()) {
+            pr.setAcceptBodyEncoding(BodyCompression.DEFLATE);
+        }
+        log.debug("Proxy dispatch -> clientId={}, method={}, path={}, lane={}, connId={}, reqId={}, timeoutMs={}",
+                clientId, pr.getMethod(), pr.getPath(), conn.getLane().wireName(), conn.getId(), pr.getRequestId(), pr.getTimeoutMs());
+        Mono<ResponseEntity<Flux<DataBuffer>>> response;
+        if (isWebSocket(exchange.getRequest())) {
+            response = dispatchWebSocket(clientId, conn, pr, exchange, observed, deadlineNanos, start);
+        } else {
+            // SSE 等长连接响应不能整体缓冲，未开启流式转发时也按流式处理
+            response = routes.isStreaming() || isEventStream(exchange.getRequest())
+                    ? dispatchStream(clientId, conn, pr, exchange, cached, observed, deadlineNanos, start)
+                    : dispatchBuffered(clientId, conn, pr, routes, exchange, dataMono, cached, targetPath, observed, deadlineNanos, start);
+            // 截止时间：缓冲模式覆盖完整响应，流式覆盖到响应头到达为止；超时取消订阅，经 RSocket CANCEL 中止 agent 侧的上游请求
+            response = response.timeout(Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime())));
+        }
+        return response
+                .onErrorResume(PayloadTooLargeException.class, ex -> {
+                    log.warn("Proxy request body too large: clientId={}, reqId={}", clientId, pr.getRequestId());
+                    return Mono.just(ResponseEntity.status(413).build());
+                })
+                .onErrorResume(TimeoutException.class, ex -> {
+                    log.warn("Proxy request timed out: clientId={}, timeoutMs={}, reqId={}", clientId, pr.getTimeoutMs(), pr.getRequestId());
+                    return Mono.just(ResponseEntity.status(504).build());
+                })
+                // lease 模式下 agent 发放的许可耗尽（网关侧排队已满或 agent 侧拒绝）
+                .onErrorResume(ex -> ex instanceof MissingLeaseException || ex instanceof RejectedException, ex -> {
+            log.warn("Proxy request rejected by agent lease: clientId={}, reqId={}, err={}", clientId, pr.getRequestId(), ex.getMessage());
+            return Mono.just(ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "1").build());
+        });
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> dispatchBuffered(String clientId,
+                                                                    AgentConnection conn,
+                                                                    ProxyRequest pr,
+                                                                    ClientRoutes routes,
+                                                                    ServerWebExchange exchange,
+                                                                    Mono<ProxyRequest> dataMono,
+                                                                    ResponseCache.Lookup cached,
+                                                                    String targetPath,
+                                                                    ProxyMetrics.Exchange observed,
+                                                                    long deadlineNanos,
+                                                                    long start) {
+        // 请求体读入内存之前按声明长度预留，响应体到达后追加；预算不足时排队，超时 503
+        long declared = Math.max(0, exchange.getRequest().getHeaders().getContentLength());
+        if (memoryGovernor.isTooLarge(routes, declared)) {
+            log.warn("Proxy request rejected: clientId={}, contentLength={} exceeds memory share, reqId={}", clientId, declared, pr.getRequestId());
+            return Mono.just(ResponseEntity.status(413).build());
+        }
+        return memoryGovernor.reserve(clientId, routes, declared, deadlineNanos)
+                .flatMap(lease -> memoryGovernor.guard(lease,
+                        dispatchBuffered(clientId, conn, pr, routes, exchange, dataMono, cached, targetPath, observed, deadlineNanos, start, lease, declared)))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.warn("Proxy request rejected: clientId={}, memory budget exhausted, reqId={}", clientId, pr.getRequestId());
+                    return ResponseEntity.status(503)
+                            .header(HttpHeaders.RETRY_AFTER, Integer.toString(memoryGovernor.getRetryAfterSeconds()))
+                            .build();
+                }));
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> dispatchBuffered(String clientId,
+                                                                    AgentConnection conn,
+                                                                    ProxyRequest pr,
+                                                                    ClientRoutes routes,
+                                                                    ServerWebExchange exchange,
+                                                                    Mono<ProxyRequest> dataMono,
+                                                                    ResponseCache.Lookup cached,
+                                                                    String targetPath,
+                                                                    ProxyMetrics.Exchange observed,
+                                                                    long deadlineNanos,
+                                                                    long start,
+                                                                    MemoryBudget.Lease lease,
+                                                                    long declared) {
+        DataBufferFactory bufferFactory = exchange.getResponse().bufferFactory();
+        GatewayProxyProperties.Hedging hedging = routes.getHedging();
+        boolean hedged = hedging != null && hedgedDispatch.applies(hedging, pr.getMethod());
+        Mono<ProxyResponse> roundTrip = dataMono
+                .doOnNext(data -> {
+                    int length = data.getBody() != null ? data.getBody().length : 0;
+                    observed.requestBytes(length);
+                    if (routes.isBodyTooLarge(length)) {
+                        throw new PayloadTooLargeException(null);
+                    }
+                    // 分块上传未声明长度，按实际长度补记
+                    lease.add(length - declared);
+                })
+                .flatMap(data -> {
+                    // 读取请求体之后才发送，预算按此刻剩余计算；已耗尽则不再打扰 agent
+                    if (remainingMs(deadlineNanos) <= 0) {
+                        return Mono.error(new TimeoutException("Deadline exceeded before dispatch"));
+                    }
+                    if (!hedged) {
+                        return send(conn, data, deadlineNanos);
+                    }
+                    GatewayProxyProperties.Route route = routes.matchRoute(targetPath);
+                    return hedgedDispatch.execute(clientId, route != null ? route.getPrefix() : "default", hedging, conn,
+                            tried -> alternative(clientId, conn.getLane(), pr.getTargetBaseUrl(), tried),
+                            c -> send(c, data, deadlineNanos), deadlineNanos);
+                })
+                // 在 single-flight 扇出之前解压，共享者拿到的都是原始响应体；共享的响应体只记在发起者的预留上
+                .map(resp -> {
+                    ProxyResponse decoded = decodeBody(resp, observed);
+                    lease.add(decoded.getBody() != null ? decoded.getBody().length : 0);
+                    return decoded;
+                });
+        // single-flight：相同键的并发请求共享一次隧道往返（仅缓冲模式，流式响应体不做扇出）
+        GatewayProxyProperties.SingleFlight flightPolicy = routes.getSingleFlight();
+        String flightKey = flightPolicy != null ? singleFlight.key(clientId, flightPolicy, exchange.getRequest(), targetPath) : null;
+        Mono<ProxyResponse> call = flightKey != null ? singleFlight.execute(clientId, flightKey, () -> roundTrip) : roundTrip;
+        return call
                 .map(resp -> {
                     long cost = System.currentTimeMillis() - start;
-                    log.info("Proxy response <- clientId={}, status={}, cost={}ms, reqId={}", clientId, resp.getStatus(), cost, pr.getRequestId());
-                    return toHttpResponse(resp);
+                    log.debug("Proxy response <- clientId={}, status={}, cost={}ms, reqId={}", clientId, resp.getStatus(), cost, pr.getRequestId());
+                    observed.headers(resp);
+                    if (cached != null) {
+                        if (responseCache.revalidated(cached, resp)) {
+                            return responseCache.hit(cached, bufferFactory);
+                        }
+                        responseCache.store(cached, resp);
+                    }
+                    return toHttpResponse(resp, bufferFactory);
                 })
                 .doOnError(ex -> {
                     long cost = System.currentTimeMillis() - start;
@@ -129,17 +368,225 @@ public class ProxyController {
                 });
     }
 
-    private Map<String, String> headersToMap(HttpHeaders headers) {
-        Map<String, String> map = new HashMap<>();
-        headers.forEach((k, v) -> map.put(k, String.join(",", v)));
-        return map;
+    /** 缓冲模式的一次隧道往返，下发发送时刻的剩余预算（对冲与重试各自重新计算） */
+    private static Mono<ProxyResponse> send(AgentConnection conn, ProxyRequest data, long deadlineNanos) {
+        return Mono.defer(() -> {
+            data.setTimeoutMs(Math.max(1, remainingMs(deadlineNanos)));
+            return conn.track(conn.getRequester().route(conn.getRequestRoute()).data(data).retrieveMono(ProxyResponse.class));
+        });
+    }
+
+    /** 对冲或重试使用的下一条连接：本节点尚未尝试过、目标未报告不可用的连接优先，其次为集群中的持有节点 */
+    private AgentConnection alternative(String clientId, Lane lane, String targetBaseUrl, Set<AgentConnection> tried) {
+        List<AgentConnection> untried = new ArrayList<>();
+        for (AgentConnection c : registry.connections(clientId)) {
+            if (!tried.contains(c) && !c.isTargetDown(targetBaseUrl)) {
+                untried.add(c);
+            }
+        }
+        if (!untried.isEmpty()) {
+            return ClientRegistry.pickLeastLoaded(untried, lane);
+        }
+        AgentConnection remote = cluster.select(clientId);
+        return remote != null && !tried.contains(remote) && !remote.isTargetDown(targetBaseUrl) ? remote : null;
+    }
+
+    /**
+     * 流式转发：首帧发送 ProxyRequest 头部，随后直接透传入站 body 分块；
+     * 响应首帧为 ProxyResponse 头部（状态码/响应头），其后的分块不经缓冲直接写回调用方。
+     */
+    private Mono<ResponseEntity<Flux<DataBuffer>>> dispatchStream(String clientId,
+                                                                  AgentConnection conn,
+                                                                  ProxyRequest pr,
+                                                                  ServerWebExchange exchange,
+                                                                  ResponseCache.Lookup cached,
+                                                                  ProxyMetrics.Exchange observed,
+                                                                  long deadlineNanos,
+                                                                  long start) {
+        RSocketRequester requester = conn.getRequester();
+        int prefetch = props.getStreamPrefetch();
+        pr.setStreamBody(hasRequestBody(exchange.getRequest()));
+        long[] reqBytes = new long[1];
+        Flux<DataBuffer> reqBody = pr.isStreamBody()
+                ? exchange.getRequest().getBody().limitRate(prefetch)
+                        .doOnNext(b -> reqBytes[0] += b.readableByteCount())
+                        .doOnComplete(() -> observed.requestBytes(reqBytes[0]))
+                : Flux.<DataBuffer>empty().doOnComplete(() -> observed.requestBytes(0));
+        Flux<DataBuffer> frames = Flux.concat(
+                Mono.fromCallable(() -> {
+                    pr.setTimeoutMs(Math.max(1, remainingMs(deadlineNanos)));
+                    return ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), pr);
+                }),
+                reqBody);
+
+        Flux<DataBuffer> respFrames = conn.track(requester.route(conn.getStreamRoute())
+                .data(frames, DataBuffer.class)
+                .retrieveFlux(DataBuffer.class)
+                .limitRate(prefetch));
+
+        return ProxyFrames.splitHeader(respFrames,
+                        head -> ProxyFrames.decode(requester.strategies(), requester.dataMimeType(), head, ProxyResponse.class),
+                        (resp, tunnelBody) -> {
+                            long cost = System.currentTimeMillis() - start;
+                            log.debug("Proxy stream response <- clientId={}, status={}, ttfb={}ms, reqId={}", clientId, resp.getStatus(), cost, pr.getRequestId());
+                            observed.headers(resp);
+                            Flux<DataBuffer> body = decodeBody(resp, tunnelBody, observed, exchange.getResponse().bufferFactory());
+                            if (cached != null) {
+                                if (responseCache.revalidated(cached, resp)) {
+                                    // 304 无响应体，排空后以缓存内容应答
+                                    return body.doOnNext(DataBufferUtils::release)
+                                            .then(Mono.fromSupplier(() -> responseCache.hit(cached, exchange.getResponse().bufferFactory())));
+                                }
+                                return Mono.just(toStreamingResponse(resp, responseCache.capture(cached, resp, body)));
+                            }
+                            return Mono.just(toStreamingResponse(resp, body));
+                        })
+                .singleOrEmpty()
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.warn("Proxy stream closed without response header: clientId={}, reqId={}", clientId, pr.getRequestId());
+                    return ResponseEntity.status(502).build();
+                }))
+                .doOnError(ex -> {
+                    long cost = System.currentTimeMillis() - start;
+                    log.error("Proxy stream error <- clientId={}, cost={}ms, reqId={}, err={}", clientId, cost, pr.getRequestId(), ex.toString());
+                });
+    }
+
+    /**
+     * WebSocket 转发：首帧发送 ProxyRequest 头部，agent 回 101 头部（上游握手成功）后再与调用方握手，
+     * 此后两个方向逐条透传消息。截止时间只约束到 agent 回应握手为止，会话期间不限时；
+     * 会话结束后返回不带响应体的 101（响应已提交，仅用于记录指标与归还准入许可）。
+     */
+    private Mono<ResponseEntity<Flux<DataBuffer>>> dispatchWebSocket(String clientId,
+                                                                     AgentConnection conn,
+                                                                     ProxyRequest pr,
+                                                                     ServerWebExchange exchange,
+                                                                     ProxyMetrics.Exchange observed,
+                                                                     long deadlineNanos,
+                                                                     long start) {
+        RSocketRequester requester = conn.getRequester();
+        Sinks.One<Flux<DataBuffer>> clientFrames = Sinks.one();
+        Flux<DataBuffer> frames = Flux.concat(
+                Mono.fromCallable(() -> {
+                    pr.setTimeoutMs(Math.max(1, remainingMs(deadlineNanos)));
+                    return ProxyFrames.encode(requester.strategies(), requester.dataMimeType(), pr);
+                }),
+                clientFrames.asMono().flatMapMany(Function.identity()));
+        observed.requestBytes(0);
+
+        Flux<DataBuffer> respFrames = conn.track(requester.route(conn.getWebSocketRoute())
+                .data(frames, DataBuffer.class)
+                .retrieveFlux(DataBuffer.class)
+                .limitRate(props.getStreamPrefetch()));
+
+        return ProxyFrames.splitHeader(respFrames,
+                        head -> ProxyFrames.decode(requester.strategies(), requester.dataMimeType(), head, ProxyResponse.class),
+                        (resp, agentFrames) -> Mono.just(Tuples.of(resp, agentFrames)))
+                .singleOrEmpty()
+                .timeout(Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime())))
+                .flatMap(handshake -> {
+                    ProxyResponse resp = handshake.getT1();
+                    Flux<DataBuffer> agentFrames = handshake.getT2();
+                    long cost = System.currentTimeMillis() - start;
+                    observed.headers(resp);
+                    if (resp.getStatus() != 101) {
+                        // 上游拒绝握手或不可达：按普通响应返回状态码
+                        log.debug("Proxy websocket rejected <- clientId={}, status={}, cost={}ms, reqId={}", clientId, resp.getStatus(), cost, pr.getRequestId());
+                        clientFrames.tryEmitEmpty();
+                        return agentFrames.doOnNext(DataBufferUtils::release)
+                                .then(Mono.fromSupplier(() -> toHttpResponse(resp, exchange.getResponse().bufferFactory())));
+                    }
+                    log.debug("Proxy websocket opened <- clientId={}, handshake={}ms, reqId={}", clientId, cost, pr.getRequestId());
+                    return webSockets.accept(exchange, resp, agentFrames, clientFrames, requester.strategies().dataBufferFactory(), pr.getRequestId())
+                            .then(Mono.fromSupplier(() -> ResponseEntity.status(101).<Flux<DataBuffer>>build()));
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    log.warn("Proxy websocket closed without handshake response: clientId={}, reqId={}", clientId, pr.getRequestId());
+                    return ResponseEntity.status(502).build();
+                }))
+                .doOnError(ex -> {
+                    long cost = System.currentTimeMillis() - start;
+                    log.error("Proxy websocket error <- clientId={}, cost={}ms, reqId={}, err={}", clientId, cost, pr.getRequestId(), ex.toString());
+                });
+    }
+
+    private boolean isWebSocket(ServerHttpRequest request) {
+        return props.getWebsocket().isEnabled() && WebSocketProxy.isUpgrade(request);
+    }
+
+    private static boolean isEventStream(ServerHttpRequest request) {
+        return request.getHeaders().getAccept().stream().anyMatch(MediaType.TEXT_EVENT_STREAM::equalsTypeAndSubtype);
+    }
+
+    /** 还原 agent 在隧道内压缩的响应体，并按隧道内实际字节数记录 */
+    static ProxyResponse decodeBody(ProxyResponse resp, ProxyMetrics.Exchange observed) {
+        byte[] body = resp.getBody();
+        observed.tunnelBytes(resp.getBodyEncoding(), body != null ? body.length : 0);
+        if (BodyCompression.DEFLATE.equals(resp.getBodyEncoding())) {
+            if (body != null) {
+                resp.setBody(BodyCompression.inflate(body));
+            }
+            resp.setBodyEncoding(null);
+        }
+        return resp;
+    }
+
+    static Flux<DataBuffer> decodeBody(ProxyResponse resp, Flux<DataBuffer> body, ProxyMetrics.Exchange observed,
+                                       DataBufferFactory bufferFactory) {
+        long[] bytes = new long[1];
+        Flux<DataBuffer> counted = body
+                .doOnNext(b -> bytes[0] += b.readableByteCount())
+                .doFinally(s -> observed.tunnelBytes(resp.getBodyEncoding(), bytes[0]));
+        return BodyCompression.DEFLATE.equals(resp.getBodyEncoding()) ? BodyCompression.inflate(counted, bufferFactory) : counted;
+    }
+
+    /** X-Timeout-Ms 缺失、非数字或不为正时沿用策略值 */
+    static int parseTimeout(String header, int fallback) {
+        if (header != null) {
+            try {
+                int value = Integer.parseInt(header.trim());
+                if (value > 0) {
+                    return value;
+                }
+            } catch (NumberFormatException ignored) {
+                // 按未携带处理
+            }
+        }
+        return fallback;
+    }
+
+    private static int remainingMs(long deadlineNanos) {
+        return (int) Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * 判定调用方是否携带请求体：HTTP/1.1 依据 Content-Length / Transfer-Encoding；
+     * HTTP/2 等可能不带这两个头，对可携带请求体的方法一律按有请求体处理。
+     */
+    private boolean hasRequestBody(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        if (headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING)) {
+            return true;
+        }
+        HttpMethod method = request.getMethod();
+        return HttpMethod.POST.equals(method) || HttpMethod.PUT.equals(method) || HttpMethod.PATCH.equals(method);
+    }
+
+    private ResponseEntity<Flux<DataBuffer>> toHttpResponse(ProxyResponse resp, DataBufferFactory bufferFactory) {
+        HttpHeaders headers = new HttpHeaders();
+        if (resp.getHeaders() != null) resp.getHeaders().copyTo(headers);
+        Flux<DataBuffer> body = Flux.empty();
+        if (resp.getBody() != null && resp.getBody().length > 0) {
+            body = Flux.just(bufferFactory.wrap(resp.getBody()));
+        }
+        return ResponseEntity.status(resp.getStatus()).headers(headers).body(body);
     }
 
-    private ResponseEntity<byte[]> toHttpResponse(ProxyResponse resp) {
+    private ResponseEntity<Flux<DataBuffer>> toStreamingResponse(ProxyResponse resp, Flux<DataBuffer> body) {
         HttpHeaders headers = new HttpHeaders();
-        if (resp.getHeaders() != null) resp.getHeaders().forEach(headers::add);
-        byte[] body = null;
-        if (resp.getBodyBase64() != null) body = Base64.getDecoder().decode(resp.getBodyBase64());
+        if (resp.getHeaders() != null) resp.getHeaders().copyTo(headers);
+        // 分块由本端重新组帧，上游的 Transfer-Encoding 不再适用
+        headers.remove(HttpHeaders.TRANSFER_ENCODING);
         return ResponseEntity.status(resp.getStatus()).headers(headers).body(body);
     }
 }
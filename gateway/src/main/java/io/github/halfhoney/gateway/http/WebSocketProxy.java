@@ -0,0 +1,192 @@
+package io.github.halfhoney.gateway.http;
+
+import com.achance.gateway.common.dto.ProxyHeaders;
+import com.achance.gateway.common.dto.ProxyResponse;
+import com.achance.gateway.common.stream.WebSocketFrames;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.server.WebSocketService;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.server.WebsocketServerSpec;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * WebSocket 转发的调用方一侧：Agent 完成上游握手（回 101）后才与调用方握手，并沿用上游选定的子协议；
+ * 会话期间两个方向的消息按 {@link WebSocketFrames} 逐条经 requestChannel 透传（ping/pong 也端到端转发），
+ * 关闭码随各方向的最后一帧传递。会话全程非阻塞，不占用线程。
+ */
+@Component
+public class WebSocketProxy {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketProxy.class);
+
+    /** 只对上游握手有意义、不转发给调用方的响应头（小写） */
+    private static final Set<String> HANDSHAKE_HEADERS = Set.of("upgrade", "connection", "sec-websocket-accept",
+            "sec-websocket-protocol", "sec-websocket-extensions", "content-length", "transfer-encoding");
+
+    /** RFC 6455 的 1014：网关从上游收到无效响应（隧道中断） */
+    private static final CloseStatus BAD_GATEWAY = new CloseStatus(1014, "Tunnel closed");
+
+    private final WebSocketService webSocketService;
+
+    public WebSocketProxy(GatewayProxyProperties props) {
+        int maxFramePayloadBytes = props.getWebsocket().getMaxFramePayloadBytes();
+        this.webSocketService = new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy(
+                () -> WebsocketServerSpec.builder().maxFramePayloadLength(maxFramePayloadBytes).handlePing(true)));
+    }
+
+    static boolean isUpgrade(ServerHttpRequest request) {
+        return HttpMethod.GET.equals(request.getMethod())
+                && "websocket".equalsIgnoreCase(request.getHeaders().getUpgrade());
+    }
+
+    /**
+     * 与调用方握手并桥接会话，握手完成后即完成（会话在连接上继续进行）。握手成功后 toAgent 收到调用方的消息流（以调用方的关闭码结束）；
+     * 握手失败时 toAgent 以空结束、取消 fromAgent，使隧道与上游连接随之关闭。
+     */
+    Mono<Void> accept(ServerWebExchange exchange, ProxyResponse handshake, Flux<DataBuffer> fromAgent,
+                      Sinks.One<Flux<DataBuffer>> toAgent, DataBufferFactory tunnelBuffers, String requestId) {
+        String protocol = null;
+        HttpHeaders responseHeaders = exchange.getResponse().getHeaders();
+        ProxyHeaders handshakeHeaders = handshake.getHeaders();
+        if (handshakeHeaders != null) {
+            for (int i = 0; i < handshakeHeaders.size(); i++) {
+                String name = handshakeHeaders.name(i).toLowerCase(Locale.ROOT);
+                if (name.equals("sec-websocket-protocol")) {
+                    protocol = handshakeHeaders.value(i).trim();
+                } else if (!HANDSHAKE_HEADERS.contains(name)) {
+                    responseHeaders.add(handshakeHeaders.name(i), handshakeHeaders.value(i));
+                }
+            }
+        }
+        List<String> protocols = protocols(exchange.getRequest(), protocol);
+        AtomicReference<WebSocketSession> opened = new AtomicReference<>();
+        return webSocketService.handleRequest(exchange, new WebSocketHandler() {
+                    @Override
+                    public List<String> getSubProtocols() {
+                        return protocols;
+                    }
+
+                    @Override
+                    public Mono<Void> handle(WebSocketSession session) {
+                        opened.set(session);
+                        long start = System.currentTimeMillis();
+                        return bridge(session, fromAgent, toAgent, tunnelBuffers)
+                                .doFinally(s -> log.debug("Proxy websocket closed: sessionId={}, signal={}, duration={}ms, reqId={}",
+                                        session.getId(), s, System.currentTimeMillis() - start, requestId));
+                    }
+                })
+                .doFinally(s -> {
+                    if (opened.get() == null) {
+                        toAgent.tryEmitEmpty();
+                        fromAgent.subscribe(DataBufferUtils::release, ex -> { }).dispose();
+                    }
+                });
+    }
+
+    /**
+     * HandshakeWebSocketService 按逗号拆分调用方的 Sec-WebSocket-Protocol 后不去空格（"chat, v2" 得到 " v2"），
+     * 这里返回调用方原样写出的那一项，使上游选定的子协议能被匹配
+     */
+    private static List<String> protocols(ServerHttpRequest request, String selected) {
+        if (selected == null) {
+            return List.of();
+        }
+        String requested = request.getHeaders().getFirst("Sec-WebSocket-Protocol");
+        if (requested != null) {
+            for (String token : StringUtils.commaDelimitedListToStringArray(requested)) {
+                if (token.trim().equals(selected)) {
+                    return List.of(token);
+                }
+            }
+        }
+        return List.of(selected);
+    }
+
+    private static Mono<Void> bridge(WebSocketSession session, Flux<DataBuffer> fromAgent,
+                                     Sinks.One<Flux<DataBuffer>> toAgent, DataBufferFactory tunnelBuffers) {
+        // 消息内容在 receive 的 onNext 返回后即被释放，须在 map 中同步复制
+        toAgent.tryEmitValue(session.receive()
+                .map(message -> WebSocketFrames.encode(tunnelBuffers, opcode(message.getType()), message.getPayload()))
+                .concatWith(session.closeStatus()
+                        .map(status -> WebSocketFrames.close(tunnelBuffers, status.getCode(), status.getReason()))));
+
+        AtomicReference<CloseStatus> closeStatus = new AtomicReference<>(CloseStatus.NORMAL);
+        Flux<WebSocketMessage> messages = fromAgent.handle((frame, sink) -> {
+            int opcode = WebSocketFrames.opcode(frame);
+            WebSocketMessage.Type type = type(opcode);
+            if (type != null) {
+                sink.next(new WebSocketMessage(type, frame));
+                return;
+            }
+            if (opcode == WebSocketFrames.CLOSE) {
+                // 立即发送：Agent 随后结束隧道、取消调用方一侧的接收时，Reactor Netty 会发出不带关闭码的 CLOSE
+                CloseStatus status = closeStatus(WebSocketFrames.closeCode(frame), WebSocketFrames.closeReason(frame));
+                closeStatus.set(status);
+                session.close(status).subscribe(null, ex -> { });
+            }
+            DataBufferUtils.release(frame);
+        });
+        return session.send(messages)
+                .then(Mono.defer(() -> session.close(closeStatus.get())))
+                .onErrorResume(ex -> {
+                    log.debug("WebSocket tunnel error: sessionId={}, err={}", session.getId(), ex.toString());
+                    return session.close(BAD_GATEWAY);
+                });
+    }
+
+    /** 上游未带关闭码（1005）或关闭码不可在线路上发送时按正常关闭处理 */
+    private static CloseStatus closeStatus(int code, String reason) {
+        return WebSocketFrames.isSendableCloseCode(code) ? new CloseStatus(code, reason.isEmpty() ? null : reason) : CloseStatus.NORMAL;
+    }
+
+    private static int opcode(WebSocketMessage.Type type) {
+        switch (type) {
+            case TEXT:
+                return WebSocketFrames.TEXT;
+            case PING:
+                return WebSocketFrames.PING;
+            case PONG:
+                return WebSocketFrames.PONG;
+            default:
+                return WebSocketFrames.BINARY;
+        }
+    }
+
+    private static WebSocketMessage.Type type(int opcode) {
+        switch (opcode) {
+            case WebSocketFrames.TEXT:
+                return WebSocketMessage.Type.TEXT;
+            case WebSocketFrames.BINARY:
+                return WebSocketMessage.Type.BINARY;
+            case WebSocketFrames.PING:
+                return WebSocketMessage.Type.PING;
+            case WebSocketFrames.PONG:
+                return WebSocketMessage.Type.PONG;
+            default:
+                return null;
+        }
+    }
+}
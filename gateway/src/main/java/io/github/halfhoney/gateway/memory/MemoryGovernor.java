@@ -0,0 +1,134 @@
+package io.github.halfhoney.gateway.memory;
+
+import com.achance.gateway.common.memory.MemoryBudget;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.routing.ClientRoutes;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 网关的在途字节预算：缓冲模式的请求体在读取之前按 Content-Length 预留（预算不足时排队，超时 503），
+ * 收到的响应体追加记账，二者在写回调用方结束后一并归还。流式与 WebSocket 转发按背压窗口持有分块，不经此记账。
+ * 指标：gateway.proxy.memory.reserved / limit / waiting、gateway.proxy.memory.client.reserved{client}、
+ * gateway.proxy.memory.rejected{client}。
+ */
+@Component
+public class MemoryGovernor {
+
+    /** 未开启预算时发放的预留来自这里，不影响 gauge */
+    private static final MemoryBudget NOOP = new MemoryBudget();
+
+    private final GatewayProxyProperties props;
+    private final MemoryBudget budget = new MemoryBudget();
+    private final MeterRegistry meterRegistry;
+    private final Set<String> clientGauges = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public MemoryGovernor(GatewayProxyProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(props, meterRegistry.getIfAvailable());
+    }
+
+    public MemoryGovernor(GatewayProxyProperties props, MeterRegistry meterRegistry) {
+        this.props = props;
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            Gauge.builder("gateway.proxy.memory.reserved", budget, MemoryBudget::reserved)
+                    .description("Bytes of buffered proxy bodies currently held").baseUnit("bytes").register(meterRegistry);
+            Gauge.builder("gateway.proxy.memory.limit", this, MemoryGovernor::limit)
+                    .description("In-flight body byte budget").baseUnit("bytes").register(meterRegistry);
+            Gauge.builder("gateway.proxy.memory.waiting", budget, MemoryBudget::waiting)
+                    .description("Buffered requests waiting for body byte budget").register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return props.getMemory().isEnabled();
+    }
+
+    /** 预算总量：memory.max-bytes，未配置时为最大堆的 25% */
+    public long limit() {
+        long configured = props.getMemory().getMaxBytes();
+        return configured > 0 ? configured : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /** 该 clientId 最多可占用的字节数 */
+    public long clientLimit(ClientRoutes routes) {
+        int share = Math.max(0, Math.min(100, routes.getMemorySharePercent()));
+        return limit() / 100 * share;
+    }
+
+    /** 已知长度的请求体超出 clientId 的请求体上限或其预算份额（永远无法预留），应直接 413 */
+    public boolean isTooLarge(ClientRoutes routes, long requestBytes) {
+        return routes.isBodyTooLarge(requestBytes) || (isEnabled() && requestBytes > clientLimit(routes));
+    }
+
+    /**
+     * 预留 bytes，预算不足时排队至多 memory.max-wait-ms（不超过截止时间）；仍不足时为空，调用方返回 503。
+     * 未开启时发放一个不计入预算的空预留。
+     */
+    public Mono<MemoryBudget.Lease> reserve(String clientId, ClientRoutes routes, long bytes, long deadlineNanos) {
+        if (!isEnabled()) {
+            return Mono.just(NOOP.tryReserve("", 0, 0, 0));
+        }
+        registerClient(clientId);
+        long waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(props.getMemory().getMaxWaitMs()),
+                Math.max(0, deadlineNanos - System.nanoTime()));
+        return budget.reserve(clientId, Math.max(0, bytes), limit(), clientLimit(routes), Duration.ofNanos(waitNanos))
+                .onErrorResume(TimeoutException.class, ex -> {
+                    if (meterRegistry != null) {
+                        meterRegistry.counter("gateway.proxy.memory.rejected", "client", clientId).increment();
+                    }
+                    return Mono.empty();
+                });
+    }
+
+    public int getRetryAfterSeconds() {
+        return Math.max(1, props.getMemory().getRetryAfterSeconds());
+    }
+
+    /** 在响应（含响应体）写完、出错或取消后归还预留 */
+    public Mono<ResponseEntity<Flux<DataBuffer>>> guard(MemoryBudget.Lease lease, Mono<ResponseEntity<Flux<DataBuffer>>> response) {
+        AtomicBoolean handedOff = new AtomicBoolean();
+        return response
+                .map(entity -> {
+                    Flux<DataBuffer> body = entity.getBody();
+                    if (body == null) {
+                        lease.close();
+                        return entity;
+                    }
+                    handedOff.set(true);
+                    return new ResponseEntity<>(body.doFinally(signal -> lease.close()), entity.getHeaders(), entity.getStatusCode());
+                })
+                .doFinally(signal -> {
+                    if (!handedOff.get() || signal == SignalType.CANCEL) {
+                        lease.close();
+                    }
+                });
+    }
+
+    long reserved() {
+        return budget.reserved();
+    }
+
+    private void registerClient(String clientId) {
+        if (meterRegistry != null && clientGauges.add(clientId)) {
+            Gauge.builder("gateway.proxy.memory.client.reserved", budget.keyCounter(clientId), Number::doubleValue)
+                    .tag("client", clientId).baseUnit("bytes").register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.github.halfhoney.gateway.metrics;
+
+import com.achance.gateway.common.dto.ProxyResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * 代理热路径指标，替代逐请求 INFO 日志：
+ * <ul>
+ *     <li>gateway.proxy.requests{client,route,method,status}：端到端耗时（含响应体传输），分位数由
+ *     management.metrics.distribution 配置</li>
+ *     <li>gateway.proxy.upstream / gateway.proxy.tunnel{client,route}：首部到达时刻拆分为 agent 上游耗时与隧道耗时</li>
+ *     <li>gateway.proxy.request.bytes / gateway.proxy.response.bytes{client,route}：请求/响应体字节数</li>
+ *     <li>gateway.proxy.tunnel.bytes{client,route,encoding}：响应体在隧道内的字节数（encoding 为 identity 或 deflate），
+ *     与 response.bytes 对比即为压缩收益</li>
+ *     <li>gateway.proxy.inflight{client}：在途请求数</li>
+ *     <li>gateway.proxy.rejected{reason}：选定 agent 连接之前即被拒绝的请求，不带 client 标签以免未知 clientId 撑大基数</li>
+ * </ul>
+ * 未注册 MeterRegistry 时全部为空操作。
+ */
+@Component
+public class ProxyMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Meter.MeterProvider<Timer> requests;
+    private final Meter.MeterProvider<Timer> upstream;
+    private final Meter.MeterProvider<Timer> tunnel;
+    private final Meter.MeterProvider<DistributionSummary> requestBytes;
+    private final Meter.MeterProvider<DistributionSummary> responseBytes;
+    private final Meter.MeterProvider<DistributionSummary> tunnelBytes;
+    private final Meter.MeterProvider<Counter> rejected;
+
+    @Autowired
+    public ProxyMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(), System::nanoTime);
+    }
+
+    public ProxyMetrics(MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        if (meterRegistry == null) {
+            requests = upstream = tunnel = null;
+            requestBytes = responseBytes = tunnelBytes = null;
+            rejected = null;
+            return;
+        }
+        requests = Timer.builder("gateway.proxy.requests")
+                .description("End-to-end proxy latency including response body transfer")
+                .withRegistry(meterRegistry);
+        upstream = Timer.builder("gateway.proxy.upstream")
+                .description("Upstream latency reported by the agent")
+                .withRegistry(meterRegistry);
+        tunnel = Timer.builder("gateway.proxy.tunnel")
+                .description("Time to response header minus agent-reported upstream latency")
+                .withRegistry(meterRegistry);
+        requestBytes = DistributionSummary.builder("gateway.proxy.request.bytes")
+                .baseUnit("bytes")
+                .withRegistry(meterRegistry);
+        responseBytes = DistributionSummary.builder("gateway.proxy.response.bytes")
+                .baseUnit("bytes")
+                .withRegistry(meterRegistry);
+        tunnelBytes = DistributionSummary.builder("gateway.proxy.tunnel.bytes")
+                .description("Response body bytes carried over the agent tunnel")
+                .baseUnit("bytes")
+                .withRegistry(meterRegistry);
+        rejected = Counter.builder("gateway.proxy.rejected")
+                .description("Requests rejected before an agent connection was selected")
+                .withRegistry(meterRegistry);
+    }
+
+    public long now() {
+        return nanoClock.getAsLong();
+    }
+
+    /** 进入 agent 分发或缓存应答前调用；startNanos 取自请求入口 */
+    public Exchange begin(String clientId, String route, String method, long startNanos) {
+        if (meterRegistry == null) {
+            return Exchange.NOOP;
+        }
+        AtomicInteger gauge = inFlight.computeIfAbsent(clientId, this::newInFlightGauge);
+        gauge.incrementAndGet();
+        return new Exchange(this, gauge, Tags.of("client", clientId, "route", route), method, startNanos);
+    }
+
+    public void rejected(String reason) {
+        if (rejected != null) {
+            rejected.withTags("reason", reason).increment();
+        }
+    }
+
+    /**
+     * 记录响应：首部到达时刻拆分隧道/上游耗时，响应体结束（完成、出错或取消）时记录端到端耗时与字节数。
+     */
+    public Mono<ResponseEntity<Flux<DataBuffer>>> observe(Exchange exchange, Mono<ResponseEntity<Flux<DataBuffer>>> response) {
+        if (exchange == Exchange.NOOP) {
+            return response;
+        }
+        AtomicBoolean handedOff = new AtomicBoolean();
+        return response
+                .map(entity -> {
+                    String status = Integer.toString(entity.getStatusCode().value());
+                    Flux<DataBuffer> body = entity.getBody();
+                    if (body == null) {
+                        exchange.finish(status, 0);
+                        return entity;
+                    }
+                    handedOff.set(true);
+                    long[] bytes = new long[1];
+                    Flux<DataBuffer> counted = body
+                            .doOnNext(b -> bytes[0] += b.readableByteCount())
+                            .doFinally(signal -> exchange.finish(signal == SignalType.CANCEL ? "CANCELLED" : status, bytes[0]));
+                    return new ResponseEntity<>(counted, entity.getHeaders(), entity.getStatusCode());
+                })
+                .doFinally(signal -> {
+                    if (!handedOff.get()) {
+                        exchange.finish(signal == SignalType.CANCEL ? "CANCELLED" : "ERROR", 0);
+                    }
+                });
+    }
+
+    private AtomicInteger newInFlightGauge(String clientId) {
+        AtomicInteger value = new AtomicInteger();
+        Gauge.builder("gateway.proxy.inflight", value, AtomicInteger::get)
+                .description("In-flight proxy requests")
+                .tag("client", clientId)
+                .register(meterRegistry);
+        return value;
+    }
+
+    /**
+     * 单次代理请求的观测上下文；finish 幂等。
+     */
+    public static final class Exchange {
+
+        static final Exchange NOOP = new Exchange(null, null, Tags.empty(), null, 0);
+
+        private final ProxyMetrics metrics;
+        private final AtomicInteger inFlight;
+        private final Tags tags;
+        private final String method;
+        private final long startNanos;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Exchange(ProxyMetrics metrics, AtomicInteger inFlight, Tags tags, String method, long startNanos) {
+            this.metrics = metrics;
+            this.inFlight = inFlight;
+            this.tags = tags;
+            this.method = method;
+            this.startNanos = startNanos;
+        }
+
+        public void requestBytes(long bytes) {
+            if (metrics != null) {
+                metrics.requestBytes.withTags(tags).record(bytes);
+            }
+        }
+
+        /** 响应体在隧道内的字节数，encoding 为 null 表示未压缩 */
+        public void tunnelBytes(String encoding, long bytes) {
+            if (metrics != null) {
+                metrics.tunnelBytes.withTags(tags.and("encoding", encoding != null ? encoding : "identity")).record(bytes);
+            }
+        }
+
+        /** 响应首部到达：agent 上报了上游耗时时，剩余部分计为隧道耗时 */
+        public void headers(ProxyResponse resp) {
+            if (metrics == null || resp.getUpstreamMs() == null) {
+                return;
+            }
+            long elapsedNanos = metrics.now() - startNanos;
+            long upstreamNanos = TimeUnit.MILLISECONDS.toNanos(resp.getUpstreamMs());
+            metrics.upstream.withTags(tags).record(upstreamNanos, TimeUnit.NANOSECONDS);
+            metrics.tunnel.withTags(tags).record(Math.max(0, elapsedNanos - upstreamNanos), TimeUnit.NANOSECONDS);
+        }
+
+        void finish(String status, long responseBytes) {
+            if (metrics == null || !finished.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            metrics.requests.withTags(tags.and("method", method, "status", status))
+                    .record(metrics.now() - startNanos, TimeUnit.NANOSECONDS);
+            metrics.responseBytes.withTags(tags).record(responseBytes);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.halfhoney.gateway.routing;
+
+import com.achance.gateway.common.dto.Lane;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 单个 clientId 编译后的路由与 ACL 快照（不可变）。超时、默认目标、流式开关均已按全局配置解析完毕。
+ */
+public final class ClientRoutes {
+
+    private static final HttpMethod[] KNOWN_METHODS = {
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.POST, HttpMethod.PUT,
+            HttpMethod.PATCH, HttpMethod.DELETE, HttpMethod.OPTIONS, HttpMethod.TRACE
+    };
+    static final long ALL_METHODS = -1L;
+
+    private final String clientId;
+    private final boolean enabled;
+    /** 标准方法的允许位图，ALL_METHODS 表示不限制 */
+    private final long methodMask;
+    /** 非标准方法名（大写），仅在 methodMask 受限时使用 */
+    private final Set<String> extraMethods;
+    private final PrefixTrie<Boolean> allowedPrefixes;
+    private final PrefixTrie<GatewayProxyProperties.Route> routes;
+    private final String defaultTargetBaseUrl;
+    private final int timeoutMs;
+    private final boolean streaming;
+    private final List<LaneRule> laneRules;
+    /** 请求体上限（字节），0 表示不限 */
+    private final long maxBodyBytes;
+    /** 在途字节预算中该 clientId 的份额（百分比） */
+    private final int memorySharePercent;
+    /** 原始策略（缓存等附加功能的配置），未配置策略的 clientId 为 null */
+    private final GatewayProxyProperties.ClientPolicy policy;
+
+    ClientRoutes(String clientId, boolean enabled, long methodMask, Set<String> extraMethods,
+                 PrefixTrie<Boolean> allowedPrefixes, PrefixTrie<GatewayProxyProperties.Route> routes,
+                 String defaultTargetBaseUrl, int timeoutMs, boolean streaming, List<LaneRule> laneRules,
+                 long maxBodyBytes, int memorySharePercent, GatewayProxyProperties.ClientPolicy policy) {
+        this.clientId = clientId;
+        this.enabled = enabled;
+        this.methodMask = methodMask;
+        this.extraMethods = extraMethods;
+        this.allowedPrefixes = allowedPrefixes;
+        this.routes = routes;
+        this.defaultTargetBaseUrl = defaultTargetBaseUrl;
+        this.timeoutMs = timeoutMs;
+        this.streaming = streaming;
+        this.laneRules = laneRules;
+        this.maxBodyBytes = maxBodyBytes;
+        this.memorySharePercent = memorySharePercent;
+        this.policy = policy;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public int getMemorySharePercent() {
+        return memorySharePercent;
+    }
+
+    /** 已声明的请求体长度超出上限；requestBytes 未知时传 -1 */
+    public boolean isBodyTooLarge(long requestBytes) {
+        return maxBodyBytes > 0 && requestBytes > maxBodyBytes;
+    }
+
+    /** 启用时返回缓存配置，否则 null */
+    public GatewayProxyProperties.Cache getCache() {
+        return policy != null && policy.getCache() != null && policy.getCache().isEnabled() ? policy.getCache() : null;
+    }
+
+    /** 启用时返回 single-flight 配置，否则 null */
+    public GatewayProxyProperties.SingleFlight getSingleFlight() {
+        return policy != null && policy.getSingleFlight() != null && policy.getSingleFlight().isEnabled() ? policy.getSingleFlight() : null;
+    }
+
+    /** 启用时返回对冲与重试配置，否则 null */
+    public GatewayProxyProperties.Hedging getHedging() {
+        return policy != null && policy.getHedging() != null && policy.getHedging().isEnabled() ? policy.getHedging() : null;
+    }
+
+    /** 配置了准入控制时返回配置，否则 null */
+    public GatewayProxyProperties.Admission getAdmission() {
+        return policy != null ? policy.getAdmission() : null;
+    }
+
+    /**
+     * 请求所属的优先级通道：按声明顺序取首个命中的规则，均未命中为 interactive。
+     * requestBytes 为请求的 Content-Length，未知时传 -1。
+     */
+    public Lane lane(String method, String path, long requestBytes) {
+        for (LaneRule rule : laneRules) {
+            if (rule.matches(method, path, requestBytes)) {
+                return rule.lane;
+            }
+        }
+        return Lane.INTERACTIVE;
+    }
+
+    public int getRouteCount() {
+        return routes.size();
+    }
+
+    public int getLaneRuleCount() {
+        return laneRules.size();
+    }
+
+    /** 目标地址：routes 中声明最早的命中前缀 > client 默认 > 全局默认；均未配置时返回 null */
+    public String resolveTarget(String path) {
+        return resolveTarget(matchRoute(path));
+    }
+
+    /** routes 中声明最早的命中路由；无命中返回 null（此时按默认目标转发） */
+    public GatewayProxyProperties.Route matchRoute(String path) {
+        return routes.firstMatch(path);
+    }
+
+    /** 由 {@link #matchRoute(String)} 的结果解析目标地址，避免同一路径重复查找 */
+    public String resolveTarget(GatewayProxyProperties.Route route) {
+        String target = route != null ? route.getTargetBaseUrl() : null;
+        return target != null ? target : defaultTargetBaseUrl;
+    }
+
+    public boolean isMethodAllowed(HttpMethod method) {
+        if (methodMask == ALL_METHODS) {
+            return true;
+        }
+        int bit = methodBit(method);
+        if (bit >= 0) {
+            return (methodMask & (1L << bit)) != 0;
+        }
+        return extraMethods.contains(method.name());
+    }
+
+    public boolean isPathAllowed(String path) {
+        return allowedPrefixes.isEmpty() || allowedPrefixes.matchesAny(path);
+    }
+
+    /** 编译后的通道规则，各条件同时满足才命中 */
+    static final class LaneRule {
+        final Lane lane;
+        final PrefixTrie<Boolean> prefixes;
+        /** 大写方法名，空集合表示不限 */
+        final Set<String> methods;
+        final long minRequestBytes;
+
+        LaneRule(Lane lane, PrefixTrie<Boolean> prefixes, Set<String> methods, long minRequestBytes) {
+            this.lane = lane;
+            this.prefixes = prefixes;
+            this.methods = methods;
+            this.minRequestBytes = minRequestBytes;
+        }
+
+        boolean matches(String method, String path, long requestBytes) {
+            return (methods.isEmpty() || methods.contains(method))
+                    && (minRequestBytes <= 0 || requestBytes >= minRequestBytes)
+                    && (prefixes.isEmpty() || prefixes.matchesAny(path));
+        }
+    }
+
+    static int methodBit(HttpMethod method) {
+        for (int i = 0; i < KNOWN_METHODS.length; i++) {
+            if (KNOWN_METHODS[i] == method) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,145 @@
+package io.github.halfhoney.gateway.routing;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 不可变的字符前缀树，语义与 {@code path.startsWith(prefix)} 一致（按字符匹配，不按路径段）。
+ * 每个前缀带有声明顺序；{@link #firstMatch} 在所有命中的前缀中返回声明最早的一个，
+ * 与原先“按顺序匹配第一个 prefix”的线性扫描结果相同。查询过程不分配对象。
+ */
+public final class PrefixTrie<V> {
+
+    private static final PrefixTrie<?> EMPTY = new PrefixTrie<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PrefixTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PrefixTrie<V> empty() {
+        return (PrefixTrie<V>) EMPTY;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** 所有命中前缀中声明最早者的值；无命中返回 null */
+    @SuppressWarnings("unchecked")
+    public V firstMatch(String path) {
+        Node node = root;
+        if (node == null) {
+            return null;
+        }
+        int bestOrder = node.order;
+        Object best = node.value;
+        for (int i = 0, n = path.length(); i < n; i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.order < bestOrder) {
+                bestOrder = node.order;
+                best = node.value;
+            }
+        }
+        return (V) best;
+    }
+
+    /** 是否存在任一前缀命中 */
+    public boolean matchesAny(String path) {
+        Node node = root;
+        if (node == null) {
+            return false;
+        }
+        if (node.order != Integer.MAX_VALUE) {
+            return true;
+        }
+        for (int i = 0, n = path.length(); i < n; i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.order != Integer.MAX_VALUE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    public static final class Builder<V> {
+        private final MutableNode root = new MutableNode();
+        private int order;
+        private int size;
+
+        /** 按声明顺序添加；重复前缀保留最早的一个 */
+        public Builder<V> add(String prefix, V value) {
+            MutableNode node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new MutableNode());
+            }
+            int o = order++;
+            if (node.order == Integer.MAX_VALUE) {
+                node.order = o;
+                node.value = value;
+                size++;
+            }
+            return this;
+        }
+
+        public PrefixTrie<V> build() {
+            return size == 0 ? empty() : new PrefixTrie<>(root.freeze(), size);
+        }
+    }
+
+    private static final class MutableNode {
+        private final Map<Character, MutableNode> children = new TreeMap<>();
+        private int order = Integer.MAX_VALUE;
+        private Object value;
+
+        Node freeze() {
+            char[] keys = new char[children.size()];
+            Node[] next = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode> e : children.entrySet()) {
+                keys[i] = e.getKey();
+                next[i] = e.getValue().freeze();
+                i++;
+            }
+            return new Node(keys, next, order, value);
+        }
+    }
+
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] next;
+        private final int order;
+        private final Object value;
+
+        Node(char[] keys, Node[] next, int order, Object value) {
+            this.keys = keys;
+            this.next = next;
+            this.order = order;
+            this.value = value;
+        }
+
+        Node child(char c) {
+            int idx = keys.length == 1 ? (keys[0] == c ? 0 : -1) : Arrays.binarySearch(keys, c);
+            return idx >= 0 ? next[idx] : null;
+        }
+    }
+}
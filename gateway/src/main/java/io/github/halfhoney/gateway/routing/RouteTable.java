@@ -0,0 +1,153 @@
+package io.github.halfhoney.gateway.routing;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 由 {@link GatewayProxyProperties} 编译出的不可变路由/ACL 快照，整体原子替换。
+ * 未配置策略的 clientId 使用仅含全局默认值的 {@link #defaults()}。
+ */
+public final class RouteTable {
+
+    private final Map<String, ClientRoutes> clients;
+    private final ClientRoutes defaults;
+    private final long version;
+    private final long compiledAt = System.currentTimeMillis();
+
+    private RouteTable(Map<String, ClientRoutes> clients, ClientRoutes defaults, long version) {
+        this.clients = clients;
+        this.defaults = defaults;
+        this.version = version;
+    }
+
+    public ClientRoutes client(String clientId) {
+        ClientRoutes routes = clients.get(clientId);
+        return routes != null ? routes : defaults;
+    }
+
+    public ClientRoutes defaults() {
+        return defaults;
+    }
+
+    public Map<String, ClientRoutes> clients() {
+        return clients;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getCompiledAt() {
+        return compiledAt;
+    }
+
+    public static RouteTable compile(GatewayProxyProperties props, long version) {
+        ClientRoutes defaults = new ClientRoutes(null, true, ClientRoutes.ALL_METHODS, Set.of(),
+                PrefixTrie.empty(), PrefixTrie.empty(), blankToNull(props.getDefaultTargetBaseUrl()),
+                props.getDefaultTimeoutMs(), props.isStreaming(), List.of(),
+                props.getMemory().getMaxBodyBytes(), props.getMemory().getClientSharePercent(), null);
+        Map<String, ClientRoutes> clients = new HashMap<>();
+        if (props.getClients() != null) {
+            props.getClients().forEach((clientId, policy) -> {
+                if (policy != null) {
+                    clients.put(clientId, compileClient(clientId, policy, props));
+                }
+            });
+        }
+        return new RouteTable(Map.copyOf(clients), defaults, version);
+    }
+
+    private static ClientRoutes compileClient(String clientId, GatewayProxyProperties.ClientPolicy policy,
+                                              GatewayProxyProperties props) {
+        long mask = ClientRoutes.ALL_METHODS;
+        Set<String> extra = Set.of();
+        List<String> methods = policy.getAllowedMethods();
+        if (methods != null && !methods.isEmpty()) {
+            mask = 0L;
+            Set<String> names = new HashSet<>();
+            for (String m : methods) {
+                if (m == null || m.isBlank()) {
+                    continue;
+                }
+                HttpMethod method = HttpMethod.valueOf(m.trim().toUpperCase(Locale.ROOT));
+                int bit = ClientRoutes.methodBit(method);
+                if (bit >= 0) {
+                    mask |= 1L << bit;
+                } else {
+                    names.add(method.name());
+                }
+            }
+            extra = Set.copyOf(names);
+        }
+
+        PrefixTrie.Builder<Boolean> allowed = PrefixTrie.builder();
+        if (policy.getAllowedPathPrefixes() != null) {
+            for (String p : policy.getAllowedPathPrefixes()) {
+                if (p != null) {
+                    allowed.add(p, Boolean.TRUE);
+                }
+            }
+        }
+        PrefixTrie.Builder<GatewayProxyProperties.Route> routes = PrefixTrie.builder();
+        if (policy.getRoutes() != null) {
+            for (GatewayProxyProperties.Route r : policy.getRoutes()) {
+                if (r.getPrefix() != null) {
+                    routes.add(r.getPrefix(), r);
+                }
+            }
+        }
+        String defaultTarget = policy.getDefaultTargetBaseUrl() != null
+                ? blankToNull(policy.getDefaultTargetBaseUrl())
+                : blankToNull(props.getDefaultTargetBaseUrl());
+        int timeoutMs = policy.getTimeoutMs() != null ? policy.getTimeoutMs() : props.getDefaultTimeoutMs();
+        boolean streaming = policy.getStreaming() != null ? policy.getStreaming() : props.isStreaming();
+        long maxBodyBytes = policy.getMaxBodyBytes() != null ? policy.getMaxBodyBytes() : props.getMemory().getMaxBodyBytes();
+        int memoryShare = policy.getMemorySharePercent() != null ? policy.getMemorySharePercent() : props.getMemory().getClientSharePercent();
+        return new ClientRoutes(clientId, !Boolean.FALSE.equals(policy.getEnabled()), mask, extra,
+                allowed.build(), routes.build(), defaultTarget, timeoutMs, streaming, compileLanes(policy.getLanes()),
+                maxBodyBytes, memoryShare, policy);
+    }
+
+    private static List<ClientRoutes.LaneRule> compileLanes(List<GatewayProxyProperties.LaneRule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return List.of();
+        }
+        List<ClientRoutes.LaneRule> compiled = new ArrayList<>(rules.size());
+        for (GatewayProxyProperties.LaneRule rule : rules) {
+            if (rule == null || rule.getLane() == null) {
+                continue;
+            }
+            PrefixTrie.Builder<Boolean> prefixes = PrefixTrie.builder();
+            if (rule.getPathPrefixes() != null) {
+                for (String p : rule.getPathPrefixes()) {
+                    if (p != null) {
+                        prefixes.add(p, Boolean.TRUE);
+                    }
+                }
+            }
+            Set<String> methods = new HashSet<>();
+            if (rule.getMethods() != null) {
+                for (String m : rule.getMethods()) {
+                    if (m != null && !m.isBlank()) {
+                        methods.add(m.trim().toUpperCase(Locale.ROOT));
+                    }
+                }
+            }
+            long minBytes = rule.getMinRequestBytes() != null ? rule.getMinRequestBytes() : 0;
+            compiled.add(new ClientRoutes.LaneRule(rule.getLane(), prefixes.build(), Set.copyOf(methods), minBytes));
+        }
+        return List.copyOf(compiled);
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.halfhoney.gateway.routing;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * /actuator/proxyroutes：GET 查看当前路由表快照，POST 重新加载配置并原子替换。
+ */
+@Component
+@Endpoint(id = "proxyroutes")
+public class RouteTableEndpoint {
+
+    private final RouteTableHolder holder;
+
+    public RouteTableEndpoint(RouteTableHolder holder) {
+        this.holder = holder;
+    }
+
+    @ReadOperation
+    public Map<String, Object> routes() {
+        return describe(holder.current());
+    }
+
+    @WriteOperation
+    public Map<String, Object> reload() {
+        return describe(holder.refresh());
+    }
+
+    private Map<String, Object> describe(RouteTable table) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("version", table.getVersion());
+        out.put("compiledAt", table.getCompiledAt());
+        Map<String, Object> clients = new TreeMap<>();
+        table.clients().forEach((id, c) -> {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("enabled", c.isEnabled());
+            info.put("routes", c.getRouteCount());
+            info.put("timeoutMs", c.getTimeoutMs());
+            info.put("streaming", c.isStreaming());
+            info.put("laneRules", c.getLaneRuleCount());
+            clients.put(id, info);
+        });
+        out.put("clients", clients);
+        return out;
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.halfhoney.gateway.routing;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 持有当前 {@link RouteTable} 快照。刷新时重新绑定 gateway.proxy.*（可选叠加 reload-file），
+ * 编译成功后原子替换；编译失败保留旧快照。
+ */
+@Component
+public class RouteTableHolder {
+
+    private static final Logger log = LoggerFactory.getLogger(RouteTableHolder.class);
+
+    private final GatewayProxyProperties props;
+    private final ConfigurableEnvironment environment;
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicReference<RouteTable> current;
+    private volatile long reloadFileModified;
+    private Disposable watcher;
+
+    public RouteTableHolder(GatewayProxyProperties props, ConfigurableEnvironment environment) {
+        this.props = props;
+        this.environment = environment;
+        this.current = new AtomicReference<>(RouteTable.compile(props, versions.incrementAndGet()));
+    }
+
+    public RouteTable current() {
+        return current.get();
+    }
+
+    /** 重新加载并编译路由表，返回新快照 */
+    public synchronized RouteTable refresh() {
+        GatewayProxyProperties fresh = bind();
+        RouteTable table = RouteTable.compile(fresh, versions.incrementAndGet());
+        current.set(table);
+        log.info("Route table refreshed: version={}, clients={}", table.getVersion(), table.clients().size());
+        return table;
+    }
+
+    private GatewayProxyProperties bind() {
+        List<PropertySource<?>> sources = new ArrayList<>();
+        String reloadFile = props.getReloadFile();
+        if (reloadFile != null && !reloadFile.isBlank()) {
+            try {
+                // 外部文件优先于启动时加载的配置
+                sources.addAll(new YamlPropertySourceLoader().load("gateway-proxy-reload", new FileSystemResource(reloadFile)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read " + reloadFile + ": " + e.getMessage(), e);
+            }
+        }
+        environment.getPropertySources().forEach(sources::add);
+        return new Binder(ConfigurationPropertySources.from(sources))
+                .bind("gateway.proxy", GatewayProxyProperties.class)
+                .orElseGet(GatewayProxyProperties::new);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWatcher() {
+        String reloadFile = props.getReloadFile();
+        long interval = props.getReloadCheckIntervalMs();
+        if (reloadFile == null || reloadFile.isBlank() || interval <= 0) {
+            return;
+        }
+        File file = new File(reloadFile);
+        reloadFileModified = file.lastModified();
+        watcher = Flux.interval(Duration.ofMillis(interval), Schedulers.boundedElastic())
+                .subscribe(tick -> {
+                    long modified = file.lastModified();
+                    if (modified != 0 && modified != reloadFileModified) {
+                        reloadFileModified = modified;
+                        try {
+                            refresh();
+                        } catch (RuntimeException ex) {
+                            log.error("Route table refresh failed, keeping version={}: {}", current().getVersion(), ex.toString());
+                        }
+                    }
+                });
+        log.info("Watching {} for route changes every {}ms", reloadFile, interval);
+    }
+
+    @PreDestroy
+    public void stopWatcher() {
+        if (watcher != null) {
+            watcher.dispose();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.halfhoney.gateway.rsocket;
+
+import com.achance.gateway.common.dto.Lane;
+import com.achance.gateway.common.health.UpstreamHealth;
+import com.achance.gateway.common.stream.ProxyFrames;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一条已注册的 Agent 连接及其在途请求计数；同一 clientId 可同时持有多条连接，每条连接属于一个优先级通道（{@link Lane}）。
+ * 集群模式下也表示经对端网关节点转发的远端 Agent：requester 为到该节点的内部链路，路由改为 cluster.proxy.*。
+ * 本地连接还记录 Agent 上报的熔断打开的上游目标（{@link UpstreamHealth}），远端连接始终视为可用。
+ */
+public class AgentConnection {
+
+    private static final AtomicLong SEQ = new AtomicLong();
+
+    private final long id = SEQ.incrementAndGet();
+    private final String clientId;
+    private final RSocketRequester requester;
+    private final Lane lane;
+    /** 远端 Agent 所在的网关节点，本地连接为 null */
+    private final String node;
+    private final String requestRoute;
+    private final String streamRoute;
+    private final String webSocketRoute;
+    private final long connectedAt = System.currentTimeMillis();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /** Agent 上报的不可用目标 -> 上报时的剩余打开时长（毫秒），及收到该快照的时刻 */
+    private volatile Map<String, Long> downTargets = Map.of();
+    private volatile long downReportedAt;
+
+    public AgentConnection(String clientId, RSocketRequester requester) {
+        this(clientId, requester, Lane.INTERACTIVE);
+    }
+
+    public AgentConnection(String clientId, RSocketRequester requester, Lane lane) {
+        this(clientId, requester, lane, null, "agent.proxy.request", ProxyFrames.STREAM_ROUTE, ProxyFrames.WEBSOCKET_ROUTE);
+    }
+
+    private AgentConnection(String clientId, RSocketRequester requester, Lane lane, String node, String requestRoute,
+                            String streamRoute, String webSocketRoute) {
+        this.clientId = clientId;
+        this.requester = requester;
+        this.lane = lane;
+        this.node = node;
+        this.requestRoute = requestRoute;
+        this.streamRoute = streamRoute;
+        this.webSocketRoute = webSocketRoute;
+    }
+
+    /** 由 node 节点持有的 Agent，经到该节点的链路 peer 转发；通道由持有节点按自身规则选择 */
+    public static AgentConnection remote(String clientId, String node, RSocketRequester peer) {
+        return new AgentConnection(clientId, peer, Lane.INTERACTIVE, node,
+                "cluster.proxy.request." + clientId, "cluster.proxy.stream." + clientId, "cluster.proxy.websocket." + clientId);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public RSocketRequester getRequester() {
+        return requester;
+    }
+
+    public Lane getLane() {
+        return lane;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public boolean isRemote() {
+        return node != null;
+    }
+
+    /** 缓冲模式的请求路由 */
+    public String getRequestRoute() {
+        return requestRoute;
+    }
+
+    /** 流式模式的 requestChannel 路由 */
+    public String getStreamRoute() {
+        return streamRoute;
+    }
+
+    /** WebSocket 转发的 requestChannel 路由 */
+    public String getWebSocketRoute() {
+        return webSocketRoute;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /** 以 Agent 推送的最新快照替换不可用目标 */
+    public void updateUpstreamHealth(Map<String, Long> down) {
+        downReportedAt = System.nanoTime();
+        downTargets = down;
+    }
+
+    public boolean isAnyTargetDown() {
+        return !downTargets.isEmpty();
+    }
+
+    /** Agent 是否报告该目标熔断打开；直至 Agent 推送恢复的快照前一直成立 */
+    public boolean isTargetDown(String targetBaseUrl) {
+        Map<String, Long> down = downTargets;
+        return !down.isEmpty() && targetBaseUrl != null && down.containsKey(UpstreamHealth.normalize(targetBaseUrl));
+    }
+
+    /** 该目标距离 Agent 开始半开试探的剩余毫秒数（按上报时刻推算），未报告时为 0 */
+    public long targetRetryAfterMs(String targetBaseUrl) {
+        Long reported = targetBaseUrl != null ? downTargets.get(UpstreamHealth.normalize(targetBaseUrl)) : null;
+        if (reported == null) {
+            return 0;
+        }
+        return Math.max(0, reported - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - downReportedAt));
+    }
+
+    /** 订阅时计入在途请求，终止/取消时扣除 */
+    public <T> Mono<T> track(Mono<T> call) {
+        return Mono.defer(() -> {
+            inFlight.incrementAndGet();
+            return call.doFinally(s -> inFlight.decrementAndGet());
+        });
+    }
+
+    /** 同 {@link #track(Mono)}，用于流式转发，直至响应体结束才扣除 */
+    public <T> Flux<T> track(Flux<T> call) {
+        return Flux.defer(() -> {
+            inFlight.incrementAndGet();
+            return call.doFinally(s -> inFlight.decrementAndGet());
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "AgentConnection{clientId=" + clientId + ", id=" + id + ", lane=" + lane.wireName() + (node != null ? ", node=" + node : "")
+                + ", inFlight=" + inFlight.get() + "}";
+    }
+}
@@ -1,35 +1,265 @@
 package io.github.halfhoney.gateway.rsocket;
 
+import com.achance.gateway.common.dto.Lane;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.rsocket.RSocketRequester;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
 
+/**
+ * clientId -> 存活 Agent 连接池。同一 clientId 可来自多个 Agent 副本或单个 Agent 的多条连接，
+ * 断开时只移除对应的那一条连接；分发采用 power-of-two-choices（随机取两条，选在途请求少者），
+ * 只在请求所属通道的连接中选择，该通道没有连接时退回全部连接；指定目标地址时优先选择未报告该目标熔断打开的连接。
+ * 本节点持有的 clientId 集合变化时经 {@link #localClients()} 发布快照，集群模式下同步给其他网关节点。
+ * 最后一条连接断开后进入宽限期（reconnect-grace-ms），期间到达的请求经 {@link #awaitReconnect} 挂起等待重新注册。
+ * 指标：gateway.agents.connections{client}（clientId 首次注册时创建，断开后归零）、gateway.agents.clients。
+ */
 @Component
 public class ClientRegistry {
     private static final Logger log = LoggerFactory.getLogger(ClientRegistry.class);
-    private final Map<String, RSocketRequester> clients = new ConcurrentHashMap<>();
+    private final Map<String, List<AgentConnection>> clients = new ConcurrentHashMap<>();
+    /** 最后一条连接已断开、仍在宽限期内的 clientId；重新注册或过期后移除 */
+    private final Map<String, Gap> gaps = new ConcurrentHashMap<>();
+    private final Set<String> gauged = ConcurrentHashMap.newKeySet();
+    private final Sinks.Many<Set<String>> localClients = Sinks.many().replay().latest();
+    private final MeterRegistry meterRegistry;
+    private final long graceNanos;
+    private final LongSupplier nanoClock;
 
-    public void register(String clientId, RSocketRequester requester) {
-        clients.put(clientId, requester);
-        log.info("RSocket client registered: clientId={}", clientId);
+    public ClientRegistry() {
+        this(null, 0, System::nanoTime);
+    }
+
+    @Autowired
+    public ClientRegistry(GatewayProxyProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(), props.getReconnectGraceMs(), System::nanoTime);
+    }
+
+    public ClientRegistry(MeterRegistry meterRegistry, long reconnectGraceMs, LongSupplier nanoClock) {
+        this.meterRegistry = meterRegistry;
+        this.graceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, reconnectGraceMs));
+        this.nanoClock = nanoClock;
+        localClients.tryEmitNext(Set.of());
+        if (meterRegistry != null) {
+            Gauge.builder("gateway.agents.clients", clients, Map::size)
+                    .description("ClientIds with at least one connected agent")
+                    .register(meterRegistry);
+        }
+    }
+
+    public AgentConnection register(String clientId, RSocketRequester requester) {
+        return register(clientId, requester, Lane.INTERACTIVE);
+    }
+
+    public AgentConnection register(String clientId, RSocketRequester requester, Lane lane) {
+        AgentConnection conn = new AgentConnection(clientId, requester, lane);
+        // 增删都在 compute 内完成，避免与最后一条连接的移除并发时把新连接加进已被摘除的列表
+        Gap[] closedGap = new Gap[1];
+        boolean[] first = new boolean[1];
+        List<AgentConnection> pool = clients.compute(clientId, (k, existing) -> {
+            first[0] = existing == null;
+            List<AgentConnection> p = existing != null ? existing : new CopyOnWriteArrayList<>();
+            p.add(conn);
+            closedGap[0] = gaps.remove(k);
+            return p;
+        });
+        log.info("RSocket client registered: clientId={}, connId={}, lane={}, connections={}", clientId, conn.getId(), lane.wireName(), pool.size());
+        if (first[0]) {
+            publishLocalClients();
+        }
+        // compute 返回后新连接才对 select 可见，此时再唤醒宽限期内等待的请求
+        if (closedGap[0] != null) {
+            log.info("RSocket client reconnected within grace period: clientId={}, gap={}ms", clientId,
+                    TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - closedGap[0].sinceNanos));
+            closedGap[0].reconnected.tryEmitEmpty();
+        }
+        if (meterRegistry != null && gauged.add(clientId)) {
+            Gauge.builder("gateway.agents.connections", this, r -> r.connectionCount(clientId))
+                    .description("Connected agent connections")
+                    .tag("client", clientId)
+                    .register(meterRegistry);
+        }
         requester.rsocket().onClose()
-                .doFirst(() -> log.debug("onClose subscribed for clientId={}", clientId))
+                .doFirst(() -> log.debug("onClose subscribed for clientId={}, connId={}", clientId, conn.getId()))
                 .doFinally(s -> {
-                    clients.remove(clientId);
-                    log.warn("RSocket client disconnected: clientId={}, signal={}", clientId, s);
+                    remove(conn);
+                    log.warn("RSocket client disconnected: clientId={}, connId={}, signal={}", clientId, conn.getId(), s);
                 })
-                .subscribe();
+                .subscribe(null, ex -> log.debug("onClose error for clientId={}, connId={}: {}", clientId, conn.getId(), ex.toString()));
+        return conn;
+    }
+
+    private void remove(AgentConnection conn) {
+        boolean[] last = new boolean[1];
+        clients.computeIfPresent(conn.getClientId(), (k, pool) -> {
+            pool.remove(conn);
+            if (!pool.isEmpty()) {
+                return pool;
+            }
+            if (graceNanos > 0) {
+                gaps.put(k, new Gap(nanoClock.getAsLong()));
+            }
+            last[0] = true;
+            return null;
+        });
+        if (last[0]) {
+            publishLocalClients();
+        }
+    }
+
+    /** 在锁内取快照并发布，保证发布顺序与快照先后一致 */
+    private synchronized void publishLocalClients() {
+        localClients.tryEmitNext(Set.copyOf(clients.keySet()));
+    }
+
+    /** 本节点已连接的 clientId 快照，订阅时先收到最新一份，此后每次增减发布一份 */
+    public Flux<Set<String>> localClients() {
+        return localClients.asFlux();
+    }
+
+    /**
+     * clientId 未连接时等待其重新注册：仅在最后一条连接断开后的宽限期内有效，等待不超过宽限期剩余时间与 maxWait。
+     * 重新注册后返回选中的连接；不在宽限期内或等待超时返回空。
+     */
+    public Mono<AgentConnection> awaitReconnect(String clientId, Duration maxWait) {
+        return awaitReconnect(clientId, Lane.INTERACTIVE, maxWait);
+    }
+
+    /** 同 {@link #awaitReconnect(String, Duration)}，重新注册后按通道选择连接 */
+    public Mono<AgentConnection> awaitReconnect(String clientId, Lane lane, Duration maxWait) {
+        Mono<AgentConnection> pick = Mono.fromSupplier(() -> {
+            List<AgentConnection> pool = clients.get(clientId);
+            return pool != null ? pickLeastLoaded(pool, lane) : null;
+        });
+        Gap gap = gaps.get(clientId);
+        if (gap == null) {
+            // 调用方 select 落空后可能恰好已重新注册
+            return pick;
+        }
+        long left = Math.min(graceNanos - (nanoClock.getAsLong() - gap.sinceNanos), maxWait.toNanos());
+        if (left <= 0) {
+            if (nanoClock.getAsLong() - gap.sinceNanos >= graceNanos) {
+                gaps.remove(clientId, gap);
+            }
+            return pick;
+        }
+        return gap.reconnected.asMono()
+                .then(pick)
+                .timeout(Duration.ofNanos(left), Mono.empty())
+                .doOnSubscribe(s -> log.debug("Awaiting reconnect of clientId={} for up to {}ms", clientId,
+                        TimeUnit.NANOSECONDS.toMillis(left)));
+    }
+
+    /** 在 interactive 通道选择一条连接用于分发，未连接时返回 null */
+    public AgentConnection select(String clientId) {
+        return select(clientId, Lane.INTERACTIVE);
+    }
+
+    /** 在指定通道选择一条连接，该通道无连接时退回其他通道，未连接时返回 null */
+    public AgentConnection select(String clientId, Lane lane) {
+        return select(clientId, lane, null);
+    }
+
+    /**
+     * 同 {@link #select(String, Lane)}，并优先选择目标可用的连接；所有连接都报告该目标不可用时仍返回其中一条，
+     * 由调用方据 {@link AgentConnection#isTargetDown} 快速失败。
+     */
+    public AgentConnection select(String clientId, Lane lane, String targetBaseUrl) {
+        List<AgentConnection> pool = clients.get(clientId);
+        AgentConnection conn = pool != null ? pickLeastLoaded(pool, lane, targetBaseUrl) : null;
+        if (conn == null) {
+            log.debug("RSocket client not connected to this node: clientId={}", clientId);
+        }
+        return conn;
+    }
+
+    /** 该 clientId 当前的全部连接（只读快照） */
+    public List<AgentConnection> connections(String clientId) {
+        List<AgentConnection> pool = clients.get(clientId);
+        return pool != null ? List.copyOf(pool) : List.of();
+    }
+
+    private int connectionCount(String clientId) {
+        List<AgentConnection> pool = clients.get(clientId);
+        return pool != null ? pool.size() : 0;
+    }
+
+    private static final class Gap {
+        final long sinceNanos;
+        final Sinks.Empty<Void> reconnected = Sinks.empty();
+
+        Gap(long sinceNanos) {
+            this.sinceNanos = sinceNanos;
+        }
+    }
+
+    public static AgentConnection pickLeastLoaded(List<AgentConnection> pool) {
+        Object[] snapshot = pool.toArray();
+        return pickLeastLoaded(snapshot, snapshot.length);
     }
 
-    public RSocketRequester get(String clientId) {
-        RSocketRequester r = clients.get(clientId);
-        if (r == null) {
-            log.warn("RSocket client not found: clientId={}", clientId);
+    /** 只在 lane 通道的连接中选择；该通道没有连接时在全部连接中选择 */
+    public static AgentConnection pickLeastLoaded(List<AgentConnection> pool, Lane lane) {
+        return pickLeastLoaded(pool, lane, null);
+    }
+
+    /** 先排除报告 targetBaseUrl 不可用的连接（全部不可用时不排除），再按通道选择 */
+    public static AgentConnection pickLeastLoaded(List<AgentConnection> pool, Lane lane, String targetBaseUrl) {
+        Object[] snapshot = pool.toArray();
+        int n = snapshot.length;
+        if (targetBaseUrl != null) {
+            int healthy = compact(snapshot, n, o -> !o.isTargetDown(targetBaseUrl));
+            n = healthy > 0 ? healthy : n;
+        }
+        int matching = compact(snapshot, n, o -> o.getLane() == lane);
+        return pickLeastLoaded(snapshot, matching > 0 ? matching : n);
+    }
+
+    /** 把前 n 个中满足条件的连接原地前移并返回其个数；没有满足的时数组不变，否则只有前 matching 个有效 */
+    private static int compact(Object[] snapshot, int n, Predicate<AgentConnection> filter) {
+        int matching = 0;
+        for (int i = 0; i < n; i++) {
+            if (filter.test((AgentConnection) snapshot[i])) {
+                snapshot[matching++] = snapshot[i];
+            }
+        }
+        return matching;
+    }
+
+    private static AgentConnection pickLeastLoaded(Object[] snapshot, int n) {
+        if (n == 0) {
+            return null;
+        }
+        if (n == 1) {
+            return (AgentConnection) snapshot[0];
+        }
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int i = rnd.nextInt(n);
+        int j = rnd.nextInt(n - 1);
+        if (j >= i) {
+            j++;
         }
-        return r;
+        AgentConnection a = (AgentConnection) snapshot[i];
+        AgentConnection b = (AgentConnection) snapshot[j];
+        return a.getInFlight() <= b.getInFlight() ? a : b;
     }
 }
@@ -1,10 +1,26 @@
 package io.github.halfhoney.gateway.rsocket;
 
+import com.achance.gateway.common.dto.Lane;
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.dto.ProxyResponse;
+import com.achance.gateway.common.health.UpstreamHealth;
+import io.rsocket.exceptions.ApplicationErrorException;
+import io.rsocket.exceptions.RejectedSetupException;
+import io.rsocket.lease.MissingLeaseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.annotation.ConnectMapping;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
 
 @Controller
 public class GatewayRSocketController {
@@ -15,10 +31,63 @@ public class GatewayRSocketController {
         this.registry = registry;
     }
 
-    @MessageMapping("register")
+    /**
+     * 编解码协商：Agent 在 SETUP 中声明 data MimeType，网关无法编码 ProxyRequest 或解码 ProxyResponse 时拒绝连接，
+     * Agent 收到 RejectedSetupException 后以 JSON 重连。
+     */
+    @ConnectMapping
+    public Mono<Void> onConnect(RSocketRequester requester) {
+        MimeType dataMimeType = requester.dataMimeType();
+        try {
+            requester.strategies().encoder(ResolvableType.forClass(ProxyRequest.class), dataMimeType);
+            requester.strategies().decoder(ResolvableType.forClass(ProxyResponse.class), dataMimeType);
+        } catch (IllegalArgumentException ex) {
+            log.warn("Rejecting RSocket setup: unsupported data mime type {}", dataMimeType);
+            return Mono.error(new RejectedSetupException("Unsupported data mime type: " + dataMimeType));
+        }
+        log.debug("RSocket setup accepted: dataMimeType={}", dataMimeType);
+        return Mono.empty();
+    }
+
+    @MessageMapping(Lane.REGISTER_ROUTE)
     public void register(String clientId, RSocketRequester requester) {
         log.info("Received register from clientId={}", clientId);
-        registry.register(clientId, requester);
+        watchUpstreamHealth(registry.register(clientId, requester));
         log.debug("Client {} registered and requester stored", clientId);
     }
+
+    /** 非默认通道的连接注册，例如 register.lane.bulk；未知通道拒绝注册，连接不参与分发 */
+    @MessageMapping(Lane.LANE_REGISTER_ROUTE_PREFIX + "{lane}")
+    public void registerLane(@DestinationVariable String lane, String clientId, RSocketRequester requester) {
+        Lane parsed = Lane.of(lane);
+        if (parsed == null) {
+            log.warn("Ignoring register from clientId={}: unknown lane {}", clientId, lane);
+            return;
+        }
+        log.info("Received register from clientId={}, lane={}", clientId, parsed.wireName());
+        watchUpstreamHealth(registry.register(clientId, requester, parsed));
+    }
+
+    /**
+     * 订阅 Agent 的上游熔断状态，随连接关闭结束。lease 模式下首个许可到达前会被拒绝，稍后重试；
+     * 不支持该路由的旧版 Agent 返回应用错误，此时不再订阅，按目标全部可用处理。
+     */
+    private void watchUpstreamHealth(AgentConnection conn) {
+        conn.getRequester().route(UpstreamHealth.ROUTE).retrieveFlux(String.class)
+                .retryWhen(Retry.backoff(5, Duration.ofMillis(200)).filter(MissingLeaseException.class::isInstance))
+                .subscribe(snapshot -> {
+                            Map<String, Long> down = UpstreamHealth.decode(snapshot);
+                            if (!down.isEmpty() || conn.isAnyTargetDown()) {
+                                log.info("Upstream health from clientId={}, connId={}: down={}", conn.getClientId(), conn.getId(), down.keySet());
+                            }
+                            conn.updateUpstreamHealth(down);
+                        },
+                        ex -> {
+                            if (ex instanceof ApplicationErrorException) {
+                                log.debug("Agent does not report upstream health: clientId={}, connId={}, err={}", conn.getClientId(), conn.getId(), ex.getMessage());
+                            } else {
+                                log.debug("Upstream health stream ended: clientId={}, connId={}, err={}", conn.getClientId(), conn.getId(), ex.toString());
+                            }
+                        });
+    }
 }
@@ -0,0 +1,80 @@
+package io.github.halfhoney.gateway.rsocket;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.transport.netty.server.CloseableChannel;
+import io.rsocket.transport.netty.server.TcpServerTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.rsocket.server.RSocketServerCustomizer;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.stereotype.Component;
+import reactor.netty.resources.LoopResources;
+import reactor.netty.tcp.TcpResources;
+import reactor.netty.tcp.TcpServer;
+
+import java.time.Duration;
+
+/**
+ * RSocket over TCP 监听：与 WebSocket 端点共用同一个 RSocketMessageHandler 与全部 RSocketServerCustomizer
+ * （lease、resume、帧解码等），Agent 以 tcp:// 地址连接时省去 WebSocket 帧头与 HTTP 升级。
+ * 两个端点上注册的连接进入同一个 ClientRegistry，分发时不区分传输。
+ */
+@Component
+@ConditionalOnProperty(prefix = "gateway.proxy.tcp", name = "enabled", havingValue = "true")
+public class TcpTunnelServer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpTunnelServer.class);
+
+    private final GatewayProxyProperties props;
+    private final RSocketMessageHandler messageHandler;
+    private final ObjectProvider<RSocketServerCustomizer> customizers;
+    private volatile CloseableChannel channel;
+
+    public TcpTunnelServer(GatewayProxyProperties props, RSocketMessageHandler messageHandler,
+                           ObjectProvider<RSocketServerCustomizer> customizers) {
+        this.props = props;
+        this.messageHandler = messageHandler;
+        this.customizers = customizers;
+    }
+
+    @Override
+    public void start() {
+        GatewayProxyProperties.Tcp tcp = props.getTcp();
+        RSocketServer server = RSocketServer.create(messageHandler.responder());
+        customizers.orderedStream().forEach(customizer -> customizer.customize(server));
+        String address = tcp.getAddress() != null && !tcp.getAddress().isBlank() ? tcp.getAddress() : "0.0.0.0";
+        boolean preferNative = props.isNativeTransport();
+        TcpServer transport = TcpServer.create()
+                .host(address)
+                .port(tcp.getPort())
+                .runOn(TcpResources.get(), preferNative);
+        channel = server.bind(TcpServerTransport.create(transport)).block(Duration.ofSeconds(30));
+        log.info("RSocket TCP transport listening on {} (nativeTransport={})", channel.address(),
+                preferNative && LoopResources.hasNativeSupport());
+    }
+
+    @Override
+    public void stop() {
+        CloseableChannel current = channel;
+        channel = null;
+        if (current != null) {
+            current.dispose();
+            current.onClose().block(Duration.ofSeconds(10));
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return channel != null;
+    }
+
+    /** 实际监听端口（port 配置为 0 时由系统分配） */
+    public int getPort() {
+        CloseableChannel current = channel;
+        return current != null ? current.address().getPort() : -1;
+    }
+}
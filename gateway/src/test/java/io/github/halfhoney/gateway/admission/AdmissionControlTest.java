@@ -0,0 +1,108 @@
+package io.github.halfhoney.gateway.admission;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    private final long[] nanos = {0L};
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final AdmissionControl control = new AdmissionControl(meters, () -> nanos[0]);
+    private final GatewayProxyProperties.Admission policy = new GatewayProxyProperties.Admission();
+
+    @Test
+    void tokenBucketRejectsWith429AndRetryAfter() {
+        policy.setRatePerSecond(2);
+        assertTrue(control.tryAcquire("c1", policy).isAdmitted());
+        assertTrue(control.tryAcquire("c1", policy).isAdmitted());
+        AdmissionControl.Ticket rejected = control.tryAcquire("c1", policy);
+        assertFalse(rejected.isAdmitted());
+        assertEquals(429, rejected.getStatus());
+        assertEquals(1, rejected.getRetryAfterSeconds());
+
+        nanos[0] += 500_000_000L;
+        assertTrue(control.tryAcquire("c1", policy).isAdmitted());
+        assertFalse(control.tryAcquire("c1", policy).isAdmitted());
+    }
+
+    @Test
+    void maxInFlightRejectsWith503UntilReleased() {
+        policy.setMaxInFlight(1);
+        policy.setRetryAfterSeconds(3);
+        AdmissionControl.Ticket first = control.tryAcquire("c1", policy);
+        AdmissionControl.Ticket second = control.tryAcquire("c1", policy);
+        assertFalse(second.isAdmitted());
+        assertEquals(503, second.getStatus());
+        assertEquals(3, second.getRetryAfterSeconds());
+        assertTrue(control.tryAcquire("c2", policy).isAdmitted());
+
+        first.release(true);
+        first.release(true);
+        assertTrue(control.tryAcquire("c1", policy).isAdmitted());
+        assertFalse(control.tryAcquire("c1", policy).isAdmitted());
+        assertEquals(2.0, meters.counter("gateway.proxy.admission", "client", "c1", "result", "rejected_concurrency").count());
+    }
+
+    @Test
+    void guardReleasesAfterStreamingBodyCompletes() {
+        policy.setMaxInFlight(1);
+        AdmissionControl.Ticket ticket = control.tryAcquire("c1", policy);
+        Flux<DataBuffer> body = Flux.just(DefaultDataBufferFactory.sharedInstance.wrap("x".getBytes(StandardCharsets.UTF_8)));
+        ResponseEntity<Flux<DataBuffer>> entity = control.guard(ticket, Mono.just(ResponseEntity.ok(body))).block();
+
+        assertFalse(control.tryAcquire("c1", policy).isAdmitted());
+        StepVerifier.create(entity.getBody()).expectNextCount(1).verifyComplete();
+        assertTrue(control.tryAcquire("c1", policy).isAdmitted());
+    }
+
+    @Test
+    void guardReleasesOnError() {
+        policy.setMaxInFlight(1);
+        AdmissionControl.Ticket ticket = control.tryAcquire("c1", policy);
+        StepVerifier.create(control.guard(ticket, Mono.error(new IllegalStateException("boom")))).verifyError();
+        assertTrue(control.tryAcquire("c1", policy).isAdmitted());
+    }
+
+    @Test
+    void adaptiveLimitShrinksOnFailureAndRecoversOnSuccess() {
+        policy.setMaxInFlight(10);
+        policy.setMinLimit(2);
+        policy.setLimitMode("adaptive");
+        for (int i = 0; i < 30; i++) {
+            control.tryAcquire("c1", policy).release(false);
+        }
+        assertEquals(2, admitted());
+
+        for (int i = 0; i < 200; i++) {
+            control.tryAcquire("c1", policy).release(true);
+        }
+        assertEquals(10, admitted());
+    }
+
+    private int admitted() {
+        int n = 0;
+        List<AdmissionControl.Ticket> held = new ArrayList<>();
+        AdmissionControl.Ticket t;
+        while ((t = control.tryAcquire("c1", policy)).isAdmitted()) {
+            held.add(t);
+            n++;
+        }
+        held.forEach(h -> h.release(true));
+        return n;
+    }
+}
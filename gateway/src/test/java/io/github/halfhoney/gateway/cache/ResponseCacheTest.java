@@ -0,0 +1,169 @@
+package io.github.halfhoney.gateway.cache;
+
+import com.achance.gateway.common.dto.ProxyHeaders;
+import com.achance.gateway.common.dto.ProxyResponse;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+
+    private final long[] now = {1_000_000L};
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ResponseCache cache = new ResponseCache(meters, () -> now[0]);
+    private final GatewayProxyProperties.Cache policy = new GatewayProxyProperties.Cache();
+
+    @Test
+    void freshHitIsServedFromCacheUntilMaxAge() {
+        ResponseCache.Lookup miss = lookup(MockServerHttpRequest.get("/proxy/c1/a?x=1"));
+        assertFalse(miss.isFresh());
+        cache.store(miss, response(200, "hello", Map.of("Cache-Control", "max-age=60")));
+
+        ResponseCache.Lookup hit = lookup(MockServerHttpRequest.get("/proxy/c1/a?x=1"));
+        assertTrue(hit.isFresh());
+        assertBody(cache.hit(hit, DefaultDataBufferFactory.sharedInstance), 200, "hello");
+        assertFalse(lookup(MockServerHttpRequest.get("/proxy/c1/a?x=2")).isFresh());
+
+        now[0] += 61_000;
+        assertFalse(lookup(MockServerHttpRequest.get("/proxy/c1/a?x=1")).isFresh());
+        assertEquals(1.0, meters.counter("gateway.proxy.cache", "client", "c1", "result", "hit").count());
+    }
+
+    @Test
+    void nonCacheableRequestsAndResponsesBypass() {
+        assertNull(lookup(MockServerHttpRequest.post("/proxy/c1/a")));
+        assertNull(lookup(MockServerHttpRequest.get("/proxy/c1/a").header("Authorization", "Bearer x")));
+
+        ResponseCache.Lookup l = lookup(MockServerHttpRequest.get("/proxy/c1/a"));
+        cache.store(l, response(200, "x", Map.of("Cache-Control", "no-store, max-age=60")));
+        cache.store(l, response(200, "x", Map.of("Cache-Control", "private, max-age=60")));
+        cache.store(l, response(200, "x", Map.of("Cache-Control", "max-age=60", "Vary", "*")));
+        cache.store(l, response(500, "x", Map.of("Cache-Control", "max-age=60")));
+        cache.store(l, response(200, "x", Map.of()));
+        ResponseCache.Lookup again = lookup(MockServerHttpRequest.get("/proxy/c1/a"));
+        assertFalse(again.isFresh());
+        ProxyHeaders upstream = new ProxyHeaders();
+        cache.addValidators(again, upstream);
+        assertTrue(upstream.isEmpty());
+    }
+
+    @Test
+    void staleEntryIsRevalidatedWithoutBody() {
+        ResponseCache.Lookup first = lookup(MockServerHttpRequest.get("/proxy/c1/doc"));
+        cache.store(first, response(200, "v1", Map.of("Cache-Control", "max-age=10", "ETag", "\"abc\"")));
+        now[0] += 11_000;
+
+        ResponseCache.Lookup stale = lookup(MockServerHttpRequest.get("/proxy/c1/doc"));
+        assertFalse(stale.isFresh());
+        ProxyHeaders upstream = new ProxyHeaders();
+        cache.addValidators(stale, upstream);
+        assertEquals("\"abc\"", upstream.getFirst("If-None-Match"));
+
+        assertTrue(cache.revalidated(stale, response(304, null, Map.of("Cache-Control", "max-age=30"))));
+        assertBody(cache.hit(stale, DefaultDataBufferFactory.sharedInstance), 200, "v1");
+        assertTrue(lookup(MockServerHttpRequest.get("/proxy/c1/doc")).isFresh());
+    }
+
+    @Test
+    void clientConditionalRequestGets304OnFreshHit() {
+        cache.store(lookup(MockServerHttpRequest.get("/proxy/c1/doc")),
+                response(200, "v1", Map.of("Cache-Control", "max-age=60", "ETag", "W/\"abc\"")));
+        ResponseCache.Lookup hit = lookup(MockServerHttpRequest.get("/proxy/c1/doc").header("If-None-Match", "\"abc\""));
+        assertBody(cache.hit(hit, DefaultDataBufferFactory.sharedInstance), 304, "");
+    }
+
+    @Test
+    void varyHeadersSelectVariant() {
+        Map<String, String> headers = Map.of("Cache-Control", "max-age=60", "Vary", "Accept-Language");
+        cache.store(lookup(MockServerHttpRequest.get("/proxy/c1/i18n").header("Accept-Language", "en")), response(200, "hello", headers));
+        cache.store(lookup(MockServerHttpRequest.get("/proxy/c1/i18n").header("Accept-Language", "zh")), response(200, "ni hao", headers));
+
+        ResponseCache.Lookup zh = lookup(MockServerHttpRequest.get("/proxy/c1/i18n").header("Accept-Language", "zh"));
+        assertBody(cache.hit(zh, DefaultDataBufferFactory.sharedInstance), 200, "ni hao");
+        assertFalse(lookup(MockServerHttpRequest.get("/proxy/c1/i18n").header("Accept-Language", "fr")).isFresh());
+    }
+
+    @Test
+    void lruEvictsByEntryCountAndBytes() {
+        policy.setMaxEntries(2);
+        store("/a", "1");
+        store("/b", "2");
+        assertTrue(lookup(MockServerHttpRequest.get("/proxy/c1/a")).isFresh());
+        store("/c", "3");
+        assertTrue(lookup(MockServerHttpRequest.get("/proxy/c1/a")).isFresh());
+        assertFalse(lookup(MockServerHttpRequest.get("/proxy/c1/b")).isFresh());
+
+        policy.setMaxBytes(2);
+        store("/d", "4");
+        assertTrue(lookup(MockServerHttpRequest.get("/proxy/c1/d")).isFresh());
+        assertTrue(lookup(MockServerHttpRequest.get("/proxy/c1/a")).isFresh());
+        assertFalse(lookup(MockServerHttpRequest.get("/proxy/c1/c")).isFresh());
+        assertEquals(2.0, meters.counter("gateway.proxy.cache.evictions", "client", "c1").count());
+    }
+
+    @Test
+    void streamingCaptureStoresOnlyCompleteBodiesWithinLimit() {
+        policy.setMaxEntryBytes(8);
+        Map<String, String> headers = Map.of("Cache-Control", "max-age=60");
+        ResponseCache.Lookup small = lookup(MockServerHttpRequest.get("/proxy/c1/small"));
+        StepVerifier.create(cache.capture(small, response(200, null, headers), chunks("abc", "def")))
+                .expectNextCount(2).verifyComplete();
+        ResponseCache.Lookup big = lookup(MockServerHttpRequest.get("/proxy/c1/big"));
+        StepVerifier.create(cache.capture(big, response(200, null, headers), chunks("abcde", "fghij")))
+                .expectNextCount(2).verifyComplete();
+
+        ResponseCache.Lookup hit = lookup(MockServerHttpRequest.get("/proxy/c1/small"));
+        assertBody(cache.hit(hit, DefaultDataBufferFactory.sharedInstance), 200, "abcdef");
+        assertFalse(lookup(MockServerHttpRequest.get("/proxy/c1/big")).isFresh());
+    }
+
+    private void store(String path, String body) {
+        cache.store(lookup(MockServerHttpRequest.get("/proxy/c1" + path)), response(200, body, Map.of("Cache-Control", "max-age=60")));
+    }
+
+    private ResponseCache.Lookup lookup(MockServerHttpRequest.BaseBuilder<?> builder) {
+        MockServerHttpRequest request = builder.build();
+        return cache.lookup("c1", policy, request, request.getURI().getPath().substring("/proxy/c1".length()));
+    }
+
+    private static ProxyResponse response(int status, String body, Map<String, String> headers) {
+        ProxyResponse resp = new ProxyResponse();
+        resp.setStatus(status);
+        ProxyHeaders proxyHeaders = new ProxyHeaders();
+        headers.forEach(proxyHeaders::add);
+        resp.setHeaders(proxyHeaders);
+        if (body != null) {
+            resp.setBody(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return resp;
+    }
+
+    private static Flux<DataBuffer> chunks(String... parts) {
+        return Flux.fromArray(parts).map(p -> DefaultDataBufferFactory.sharedInstance.wrap(p.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertBody(ResponseEntity<Flux<DataBuffer>> resp, int status, String body) {
+        assertEquals(status, resp.getStatusCode().value());
+        assertNotNull(resp.getBody());
+        String actual = resp.getBody()
+                .map(buf -> buf.toString(StandardCharsets.UTF_8))
+                .reduce("", String::concat)
+                .block();
+        assertEquals(body, actual);
+    }
+}
@@ -0,0 +1,65 @@
+package io.github.halfhoney.gateway.cluster;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.rsocket.AgentConnection;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.rsocket.RSocketRequester;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ClusterPeersTest {
+
+    @SuppressWarnings("unchecked")
+    private final ClusterPeers cluster = new ClusterPeers(new GatewayProxyProperties(),
+            mock(ObjectProvider.class), mock(ObjectProvider.class));
+
+    @Test
+    void snapshotResolvesRemoteClientsThroughPeerLink() {
+        RSocketRequester link = mock(RSocketRequester.class);
+        ClusterPeers.Peer peer = cluster.addPeer(URI.create("ws://gw-2:9000/rsocket"));
+        peer.update(ClusterPeers.encodeSnapshot("gw-2", List.of("c1", "c2")), link);
+
+        AgentConnection conn = cluster.select("c1");
+        assertNotNull(conn);
+        assertTrue(conn.isRemote());
+        assertEquals("gw-2", conn.getNode());
+        assertSame(link, conn.getRequester());
+        assertEquals("cluster.proxy.request.c1", conn.getRequestRoute());
+        assertEquals("cluster.proxy.stream.c1", conn.getStreamRoute());
+        assertNull(cluster.select("c3"));
+    }
+
+    @Test
+    void laterSnapshotKeepsExistingConnectionsAndDropsDeparted() {
+        RSocketRequester link = mock(RSocketRequester.class);
+        ClusterPeers.Peer peer = cluster.addPeer(URI.create("ws://gw-2:9000/rsocket"));
+        peer.update(ClusterPeers.encodeSnapshot("gw-2", List.of("c1", "c2")), link);
+        AgentConnection c1 = cluster.select("c1");
+
+        peer.update(ClusterPeers.encodeSnapshot("gw-2", List.of("c1")), link);
+        // 同一链路上的连接对象沿用，在途计数不丢失
+        assertSame(c1, cluster.select("c1"));
+        assertNull(cluster.select("c2"));
+
+        peer.update(ClusterPeers.encodeSnapshot("gw-2", List.of()), link);
+        assertNull(cluster.select("c1"));
+    }
+
+    @Test
+    void disconnectedPeerNoLongerOwnsClients() {
+        ClusterPeers.Peer peer = cluster.addPeer(URI.create("ws://gw-2:9000/rsocket"));
+        peer.update(ClusterPeers.encodeSnapshot("gw-2", List.of("c1")), mock(RSocketRequester.class));
+        peer.clear();
+        assertNull(cluster.select("c1"));
+        assertNull(peer.node);
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.halfhoney.gateway.coalesce;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final SingleFlight singleFlight = new SingleFlight(meters);
+    private final GatewayProxyProperties.SingleFlight policy = new GatewayProxyProperties.SingleFlight();
+
+    @Test
+    void concurrentCallsShareOneRoundTrip() {
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+        Mono<String> a = singleFlight.execute("c1", "k", () -> upstream.asMono().doOnSubscribe(s -> calls.incrementAndGet()));
+        Mono<String> b = singleFlight.execute("c1", "k", () -> upstream.asMono().doOnSubscribe(s -> calls.incrementAndGet()));
+
+        StepVerifier.create(Mono.zip(a, b))
+                .then(() -> upstream.tryEmitValue("resp"))
+                .expectNextMatches(t -> t.getT1().equals("resp") && t.getT2().equals("resp"))
+                .verifyComplete();
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightKeys());
+        assertEquals(1.0, meters.counter("gateway.proxy.singleflight", "client", "c1", "role", "collapsed").count());
+
+        // 完成后的新请求重新发起
+        StepVerifier.create(singleFlight.execute("c1", "k", () -> Mono.just("again"))).expectNext("again").verifyComplete();
+    }
+
+    @Test
+    void underlyingCallCancelledOnlyWhenAllWaitersCancel() {
+        AtomicInteger cancelled = new AtomicInteger();
+        Mono<String> never = Mono.<String>never().doOnCancel(cancelled::incrementAndGet);
+        var first = singleFlight.execute("c1", "k", () -> never).subscribe();
+        var second = singleFlight.execute("c1", "k", () -> never).subscribe();
+        first.dispose();
+        assertEquals(0, cancelled.get());
+        second.dispose();
+        assertEquals(1, cancelled.get());
+        assertEquals(0, singleFlight.inFlightKeys());
+    }
+
+    @Test
+    void keyCoversMethodQueryAndIdentityHeaders() {
+        String base = key(MockServerHttpRequest.get("/a?x=1").header("Accept", "application/json"));
+        assertEquals(base, key(MockServerHttpRequest.get("/a?x=1").header("Accept", "application/json").header("X-Trace", "1")));
+        assertNotEquals(base, key(MockServerHttpRequest.get("/a?x=2").header("Accept", "application/json")));
+        assertNotEquals(base, key(MockServerHttpRequest.get("/a?x=1").header("Accept", "text/html")));
+        assertNotEquals(base, key(MockServerHttpRequest.get("/a?x=1").header("Accept", "application/json").header("Authorization", "Bearer t")));
+
+        assertNull(key(MockServerHttpRequest.post("/a")));
+        assertNull(key(MockServerHttpRequest.get("/a").header("Content-Length", "3")));
+    }
+
+    private String key(MockServerHttpRequest.BaseBuilder<?> builder) {
+        MockServerHttpRequest request = builder.build();
+        return singleFlight.key("c1", policy, request, request.getURI().getPath());
+    }
+}
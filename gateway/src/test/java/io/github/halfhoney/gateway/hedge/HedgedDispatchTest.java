@@ -0,0 +1,151 @@
+package io.github.halfhoney.gateway.hedge;
+
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.rsocket.AgentConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.rsocket.exceptions.ConnectionErrorException;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class HedgedDispatchTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final AgentConnection a = new AgentConnection("c1", mock(RSocketRequester.class));
+    private final AgentConnection b = new AgentConnection("c1", mock(RSocketRequester.class));
+
+    @Test
+    void slowAttemptIsHedgedToAnotherConnectionAndLoserCancelled() {
+        HedgedDispatch dispatch = new HedgedDispatch(meters, System::nanoTime);
+        GatewayProxyProperties.Hedging policy = policy();
+        warmUp(dispatch, policy);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), dispatch.hedgeDelayNanos("c1", "/api", policy));
+
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        Mono<String> result = dispatch.execute("c1", "/api", policy, a, tried -> tried.contains(b) ? null : b,
+                conn -> conn == a
+                        ? Mono.<String>never().doOnCancel(() -> primaryCancelled.set(true))
+                        : Mono.just("from-b").delayElement(Duration.ofMillis(5)),
+                deadline(1_000));
+
+        StepVerifier.create(result).expectNext("from-b").verifyComplete();
+        assertTrue(primaryCancelled.get());
+        assertEquals(1.0, meters.counter("gateway.proxy.hedging", "client", "c1", "event", "hedge").count());
+        assertEquals(1.0, meters.counter("gateway.proxy.hedging", "client", "c1", "event", "hedge_won").count());
+    }
+
+    @Test
+    void fastAttemptAndShortDeadlineAreNotHedged() {
+        HedgedDispatch dispatch = new HedgedDispatch(meters, System::nanoTime);
+        GatewayProxyProperties.Hedging policy = policy();
+        warmUp(dispatch, policy);
+
+        AtomicInteger calls = new AtomicInteger();
+        StepVerifier.create(dispatch.execute("c1", "/api", policy, a, tried -> b,
+                        conn -> Mono.just("ok").doOnSubscribe(s -> calls.incrementAndGet()), deadline(1_000)))
+                .expectNext("ok").verifyComplete();
+        // 截止时间早于对冲延迟
+        StepVerifier.create(dispatch.execute("c1", "/api", policy, a, tried -> b,
+                        conn -> Mono.just("late").delayElement(Duration.ofMillis(60)).doOnSubscribe(s -> calls.incrementAndGet()),
+                        deadline(15)))
+                .expectNext("late").verifyComplete();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void transportErrorIsRetriedOnAnotherConnectionOnly() {
+        HedgedDispatch dispatch = new HedgedDispatch(meters, System::nanoTime);
+        GatewayProxyProperties.Hedging policy = policy();
+
+        StepVerifier.create(dispatch.execute("c1", "/api", policy, a, tried -> tried.contains(b) ? null : b,
+                        conn -> conn == a ? Mono.error(new ConnectionErrorException("closed")) : Mono.just("from-b"),
+                        deadline(1_000)))
+                .expectNext("from-b").verifyComplete();
+        assertEquals(1.0, meters.counter("gateway.proxy.hedging", "client", "c1", "event", "retry").count());
+
+        // 应用层错误与没有其他连接时都不重试
+        StepVerifier.create(dispatch.execute("c1", "/api", policy, a, tried -> b,
+                        conn -> Mono.error(new IllegalStateException("boom")), deadline(1_000)))
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(dispatch.execute("c1", "/api", policy, a, tried -> null,
+                        conn -> Mono.error(new ConnectionErrorException("closed")), deadline(1_000)))
+                .verifyError(ConnectionErrorException.class);
+        assertEquals(1.0, meters.counter("gateway.proxy.hedging", "client", "c1", "event", "retry").count());
+    }
+
+    @Test
+    void retryBudgetCapsRetriesAndRefillsOverTime() {
+        AtomicLong clock = new AtomicLong();
+        HedgedDispatch dispatch = new HedgedDispatch(meters, clock::get);
+        GatewayProxyProperties.Hedging policy = policy();
+        policy.setBudgetPercent(0);
+        policy.setBudgetMinPerSecond(1);
+        Function<AgentConnection, Mono<String>> failOnA =
+                conn -> conn == a ? Mono.error(new ConnectionErrorException("closed")) : Mono.just("from-b");
+        Function<Set<AgentConnection>, AgentConnection> alternatives = tried -> tried.contains(b) ? null : b;
+
+        // 初始余额为 10 秒的保底额度
+        for (int i = 0; i < 10; i++) {
+            StepVerifier.create(dispatch.execute("c1", "/api", policy, a, alternatives, failOnA, Long.MAX_VALUE))
+                    .expectNext("from-b").verifyComplete();
+        }
+        StepVerifier.create(dispatch.execute("c1", "/api", policy, a, alternatives, failOnA, Long.MAX_VALUE))
+                .verifyError(ConnectionErrorException.class);
+        assertEquals(1.0, meters.counter("gateway.proxy.hedging", "client", "c1", "event", "budget_exhausted").count());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        StepVerifier.create(dispatch.execute("c1", "/api", policy, a, alternatives, failOnA, Long.MAX_VALUE))
+                .expectNext("from-b").verifyComplete();
+    }
+
+    @Test
+    void budgetGrowsWithOriginalRequests() {
+        HedgedDispatch.RetryBudget budget = new HedgedDispatch.RetryBudget(() -> 0L);
+        GatewayProxyProperties.Hedging policy = policy();
+        policy.setBudgetMinPerSecond(0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(budget.tryWithdraw(policy));
+        }
+        assertFalse(budget.tryWithdraw(policy));
+        for (int i = 0; i < 10; i++) {
+            budget.deposit(policy);
+        }
+        // 10% 预算：10 个原始请求换一次重试
+        assertEquals(1.0, budget.tokens(), 1e-9);
+        assertTrue(budget.tryWithdraw(policy));
+        assertFalse(budget.tryWithdraw(policy));
+    }
+
+    private static GatewayProxyProperties.Hedging policy() {
+        GatewayProxyProperties.Hedging policy = new GatewayProxyProperties.Hedging();
+        policy.setEnabled(true);
+        policy.setMinDelayMs(20);
+        policy.setMinSamples(5);
+        return policy;
+    }
+
+    /** 以立即成功的请求填满样本，分位数约为 0，延迟取 min-delay-ms */
+    private void warmUp(HedgedDispatch dispatch, GatewayProxyProperties.Hedging policy) {
+        for (int i = 0; i < policy.getMinSamples(); i++) {
+            dispatch.execute("c1", "/api", policy, a, tried -> null, conn -> Mono.just("warm"), deadline(1_000)).block();
+        }
+    }
+
+    private static long deadline(long ms) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+}
@@ -0,0 +1,266 @@
+package io.github.halfhoney.gateway.http;
+
+import com.achance.gateway.common.codec.BodyCompression;
+import com.achance.gateway.common.dto.ProxyRequest;
+import com.achance.gateway.common.dto.ProxyResponse;
+import com.achance.gateway.common.memory.MemoryBudget;
+import com.achance.gateway.common.stream.ProxyFrames;
+import io.github.halfhoney.gateway.admission.AdmissionControl;
+import io.github.halfhoney.gateway.cache.ResponseCache;
+import io.github.halfhoney.gateway.cluster.ClusterPeers;
+import io.github.halfhoney.gateway.coalesce.SingleFlight;
+import io.github.halfhoney.gateway.hedge.HedgedDispatch;
+import io.github.halfhoney.gateway.memory.MemoryGovernor;
+import io.github.halfhoney.gateway.metrics.ProxyMetrics;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import io.github.halfhoney.gateway.rsocket.AgentConnection;
+import io.github.halfhoney.gateway.rsocket.ClientRegistry;
+import io.github.halfhoney.gateway.routing.RouteTableHolder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ProxyControllerTest {
+
+    @Test
+    void streamClosedWithoutHeaderMapsTo502() {
+        RSocketRequester requester = mock(RSocketRequester.class, RETURNS_DEEP_STUBS);
+        when(requester.route(ProxyFrames.STREAM_ROUTE).data(any(), any(Class.class)).retrieveFlux(DataBuffer.class))
+                .thenReturn(Flux.empty());
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/proxy/client-001/ip"));
+        StepVerifier.create(controller(requester, true).proxy("client-001", exchange, Mono.empty()))
+                .expectNextMatches(resp -> resp.getStatusCode().value() == 502)
+                .verifyComplete();
+    }
+
+    @Test
+    void eventStreamRequestUsesStreamingChannelWhenBufferedByDefault() {
+        AtomicBoolean streamed = new AtomicBoolean();
+        RSocketRequester requester = mock(RSocketRequester.class, RETURNS_DEEP_STUBS);
+        when(requester.route(ProxyFrames.STREAM_ROUTE).data(any(), any(Class.class)).retrieveFlux(DataBuffer.class))
+                .thenReturn(Flux.<DataBuffer>empty().doOnSubscribe(s -> streamed.set(true)));
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/proxy/client-001/events")
+                .header(HttpHeaders.ACCEPT, "text/event-stream"));
+        StepVerifier.create(controller(requester, false).proxy("client-001", exchange, Mono.empty()))
+                .expectNextMatches(resp -> resp.getStatusCode().value() == 502)
+                .verifyComplete();
+        assertTrue(streamed.get());
+    }
+
+    @Test
+    void deadlineExpiryReturns504AndCancelsTunnelCall() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ArgumentCaptor<ProxyRequest> sent = ArgumentCaptor.forClass(ProxyRequest.class);
+        RSocketRequester requester = mock(RSocketRequester.class, RETURNS_DEEP_STUBS);
+        when(requester.route("agent.proxy.request").data(sent.capture()).retrieveMono(ProxyResponse.class))
+                .thenReturn(Mono.<ProxyResponse>never().doOnCancel(() -> cancelled.set(true)));
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/proxy/client-001/slow")
+                .header(ProxyController.TIMEOUT_HEADER, "200"));
+        StepVerifier.create(controller(requester, false).proxy("client-001", exchange, Mono.empty()))
+                .expectNextMatches(resp -> resp.getStatusCode().value() == 504)
+                .verifyComplete();
+        assertTrue(cancelled.get());
+        // 下发的是剩余预算，不超过原始值
+        int budget = sent.getValue().getTimeoutMs();
+        assertTrue(budget > 0 && budget <= 200, "budget=" + budget);
+    }
+
+    @Test
+    void disconnectedClientReturns503OnceGraceWaitEnds() {
+        ClientRegistry registry = mock(ClientRegistry.class);
+        when(registry.awaitReconnect(eq("client-002"), any(), any())).thenReturn(Mono.empty());
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/proxy/client-002/ip"));
+        StepVerifier.create(controller(registry, false).proxy("client-002", exchange, Mono.empty()))
+                .expectNextMatches(resp -> resp.getStatusCode().value() == 503)
+                .verifyComplete();
+    }
+
+    @Test
+    void remoteClientIsForwardedToOwningNode() {
+        RSocketRequester peerLink = mock(RSocketRequester.class, RETURNS_DEEP_STUBS);
+        ProxyResponse ok = new ProxyResponse();
+        ok.setStatus(200);
+        when(peerLink.route("cluster.proxy.request.client-002").data(any()).retrieveMono(ProxyResponse.class))
+                .thenReturn(Mono.just(ok));
+        ClusterPeers cluster = mock(ClusterPeers.class);
+        when(cluster.select("client-002")).thenReturn(AgentConnection.remote("client-002", "gw-2", peerLink));
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/proxy/client-002/ip"));
+        StepVerifier.create(controller(mock(ClientRegistry.class), cluster, false).proxy("client-002", exchange, Mono.empty()))
+                .expectNextMatches(resp -> resp.getStatusCode().value() == 200)
+                .verifyComplete();
+    }
+
+    @Test
+    void deflatedTunnelBodyIsInflatedBeforeReachingCaller() {
+        byte[] plain = "{\"items\":[1,2,3,4,5,6,7,8,9,10]}".repeat(100).getBytes(StandardCharsets.UTF_8);
+        ProxyResponse ok = new ProxyResponse();
+        ok.setStatus(200);
+        ok.setBody(BodyCompression.deflate(plain, 1));
+        ok.setBodyEncoding(BodyCompression.DEFLATE);
+        ArgumentCaptor<ProxyRequest> sent = ArgumentCaptor.forClass(ProxyRequest.class);
+        RSocketRequester requester = mock(RSocketRequester.class, RETURNS_DEEP_STUBS);
+        when(requester.route("agent.proxy.request").data(sent.capture()).retrieveMono(ProxyResponse.class))
+                .thenReturn(Mono.just(ok));
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/proxy/client-001/items"));
+        Flux<DataBuffer> body = controller(requester, false).proxy("client-001", exchange, Mono.empty()).block().getBody();
+        String received = DataBufferUtils.join(body).map(b -> b.toString(StandardCharsets.UTF_8)).block();
+
+        assertEquals(BodyCompression.DEFLATE, sent.getValue().getAcceptBodyEncoding());
+        assertEquals(new String(plain, StandardCharsets.UTF_8), received);
+    }
+
+    @Test
+    void targetReportedDownFailsFastWithoutTunnelCall() {
+        RSocketRequester requester = mock(RSocketRequester.class);
+        AgentConnection conn = new AgentConnection("client-001", requester);
+        conn.updateUpstreamHealth(Map.of("http://127.0.0.1:7001", 60_000L));
+        ClientRegistry registry = mock(ClientRegistry.class);
+        when(registry.select(eq("client-001"), any(), any())).thenReturn(conn);
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/proxy/client-001/ip"));
+        StepVerifier.create(controller(registry, false).proxy("client-001", exchange, Mono.empty()))
+                // Retry-After 按上报时刻推算剩余时间，向上取整到秒
+                .expectNextMatches(resp -> resp.getStatusCode().value() == 503
+                        && Long.parseLong(resp.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)) > 50
+                        && Long.parseLong(resp.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)) <= 60)
+                .verifyComplete();
+        verifyNoInteractions(requester);
+
+        // agent 推送恢复后照常分发
+        conn.updateUpstreamHealth(Map.of());
+        assertFalse(conn.isTargetDown("http://127.0.0.1:7001/"));
+    }
+
+    @Test
+    void invalidTimeoutHeaderFallsBackToPolicy() {
+        assertEquals(1500, ProxyController.parseTimeout("abc", 1500));
+        assertEquals(1500, ProxyController.parseTimeout("-1", 1500));
+        assertEquals(1500, ProxyController.parseTimeout(null, 1500));
+        assertEquals(250, ProxyController.parseTimeout(" 250 ", 1500));
+    }
+
+    @Test
+    void declaredBodyOverLimitIsRejectedWith413BeforeReading() {
+        RSocketRequester requester = mock(RSocketRequester.class);
+        GatewayProxyProperties props = props(false);
+        props.getMemory().setMaxBodyBytes(1024);
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/proxy/client-001/upload")
+                .contentLength(4096));
+        AtomicBoolean read = new AtomicBoolean();
+        StepVerifier.create(controller(registry(requester), mock(ClusterPeers.class), props, new MemoryGovernor(props, (MeterRegistry) null))
+                        .proxy("client-001", exchange, Mono.fromCallable(() -> {
+                            read.set(true);
+                            return new byte[4096];
+                        })))
+                .expectNextMatches(resp -> resp.getStatusCode().value() == 413)
+                .verifyComplete();
+        assertFalse(read.get());
+        verifyNoInteractions(requester);
+    }
+
+    @Test
+    void exhaustedMemoryBudgetReturns503AndReservationIsReturnedAfterBodyIsWritten() {
+        ProxyResponse ok = new ProxyResponse();
+        ok.setStatus(200);
+        ok.setBody(new byte[300]);
+        RSocketRequester requester = mock(RSocketRequester.class, RETURNS_DEEP_STUBS);
+        when(requester.route("agent.proxy.request").data(any()).retrieveMono(ProxyResponse.class)).thenReturn(Mono.just(ok));
+        GatewayProxyProperties props = props(false);
+        props.getMemory().setMaxBytes(1000);
+        props.getMemory().setClientSharePercent(100);
+        props.getMemory().setMaxWaitMs(50);
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        MemoryGovernor governor = new MemoryGovernor(props, meters);
+        RouteTableHolder routes = new RouteTableHolder(props, new StandardEnvironment());
+        ProxyController controller = new ProxyController(registry(requester), props, routes,
+                new ResponseCache(null, System::currentTimeMillis), new SingleFlight((MeterRegistry) null),
+                new AdmissionControl(null, System::nanoTime), new ProxyMetrics(null, System::nanoTime), mock(ClusterPeers.class),
+                new WebSocketProxy(props), new HedgedDispatch(null, System::nanoTime), governor);
+
+        MemoryBudget.Lease held = governor.reserve("client-001", routes.current().client("client-001"), 900, Long.MAX_VALUE).block();
+        StepVerifier.create(controller.proxy("client-001", upload(200), Mono.just(new byte[200])))
+                .expectNextMatches(resp -> resp.getStatusCode().value() == 503
+                        && "1".equals(resp.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)))
+                .verifyComplete();
+        assertEquals(1.0, meters.counter("gateway.proxy.memory.rejected", "client", "client-001").count());
+
+        held.close();
+        ResponseEntity<Flux<DataBuffer>> resp = controller.proxy("client-001", upload(200), Mono.just(new byte[200])).block();
+        assertEquals(200, resp.getStatusCode().value());
+        // 请求体与响应体在响应体写完之前一直记账
+        assertEquals(500.0, meters.get("gateway.proxy.memory.reserved").gauge().value());
+        DataBufferUtils.join(resp.getBody()).map(DataBufferUtils::release).block();
+        assertEquals(0.0, meters.get("gateway.proxy.memory.reserved").gauge().value());
+    }
+
+    private static MockServerWebExchange upload(int length) {
+        return MockServerWebExchange.from(MockServerHttpRequest.post("/proxy/client-001/upload").contentLength(length));
+    }
+
+    private static ClientRegistry registry(RSocketRequester requester) {
+        ClientRegistry registry = mock(ClientRegistry.class);
+        when(registry.select(eq("client-001"), any(), any())).thenReturn(new AgentConnection("client-001", requester));
+        return registry;
+    }
+
+    private static ProxyController controller(RSocketRequester requester, boolean streaming) {
+        return controller(registry(requester), streaming);
+    }
+
+    private static ProxyController controller(ClientRegistry registry, boolean streaming) {
+        return controller(registry, mock(ClusterPeers.class), streaming);
+    }
+
+    private static ProxyController controller(ClientRegistry registry, ClusterPeers cluster, boolean streaming) {
+        GatewayProxyProperties props = props(streaming);
+        return controller(registry, cluster, props, new MemoryGovernor(props, (MeterRegistry) null));
+    }
+
+    private static ProxyController controller(ClientRegistry registry, ClusterPeers cluster, GatewayProxyProperties props,
+                                              MemoryGovernor governor) {
+        return new ProxyController(registry, props, new RouteTableHolder(props, new StandardEnvironment()),
+                new ResponseCache(null, System::currentTimeMillis), new SingleFlight((MeterRegistry) null),
+                new AdmissionControl(null, System::nanoTime), new ProxyMetrics(null, System::nanoTime), cluster, new WebSocketProxy(props),
+                new HedgedDispatch(null, System::nanoTime), governor);
+    }
+
+    private static GatewayProxyProperties props(boolean streaming) {
+        GatewayProxyProperties props = new GatewayProxyProperties();
+        props.setStreaming(streaming);
+        props.setDefaultTargetBaseUrl("http://127.0.0.1:7001");
+        return props;
+    }
+}
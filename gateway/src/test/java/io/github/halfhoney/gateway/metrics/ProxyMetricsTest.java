@@ -0,0 +1,87 @@
+package io.github.halfhoney.gateway.metrics;
+
+import com.achance.gateway.common.dto.ProxyResponse;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ProxyMetricsTest {
+
+    private final long[] nanos = {0L};
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ProxyMetrics metrics = new ProxyMetrics(meters, () -> nanos[0]);
+
+    @Test
+    void recordsLatencyAtBodyCompletionAndSplitsTunnelFromUpstream() {
+        ProxyMetrics.Exchange exchange = metrics.begin("c1", "/api", "GET", 0);
+        assertEquals(1.0, meters.get("gateway.proxy.inflight").tag("client", "c1").gauge().value());
+
+        nanos[0] = TimeUnit.MILLISECONDS.toNanos(30);
+        ProxyResponse head = new ProxyResponse();
+        head.setUpstreamMs(20);
+        exchange.headers(head);
+
+        ResponseEntity<Flux<DataBuffer>> entity = metrics.observe(exchange, Mono.just(ResponseEntity.ok().body(Flux.just(body("hello"))))).block();
+        nanos[0] = TimeUnit.MILLISECONDS.toNanos(50);
+        StepVerifier.create(entity.getBody()).expectNextCount(1).verifyComplete();
+
+        Timer requests = meters.get("gateway.proxy.requests")
+                .tags("client", "c1", "route", "/api", "method", "GET", "status", "200").timer();
+        assertEquals(1, requests.count());
+        assertEquals(50, requests.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(20, meters.get("gateway.proxy.upstream").timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(10, meters.get("gateway.proxy.tunnel").timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(5, meters.get("gateway.proxy.response.bytes").summary().totalAmount());
+        assertEquals(0.0, meters.get("gateway.proxy.inflight").tag("client", "c1").gauge().value());
+    }
+
+    @Test
+    void cancelledBodyIsTaggedAndRecordedOnce() {
+        ProxyMetrics.Exchange exchange = metrics.begin("c1", "default", "GET", 0);
+        ResponseEntity<Flux<DataBuffer>> entity = metrics.observe(exchange,
+                Mono.just(ResponseEntity.ok().body(Flux.concat(Flux.just(body("a")), Flux.<DataBuffer>never())))).block();
+        StepVerifier.create(entity.getBody()).expectNextCount(1).thenCancel().verify();
+
+        assertEquals(1, meters.get("gateway.proxy.requests").tag("status", "CANCELLED").timer().count());
+        assertEquals(1, meters.get("gateway.proxy.requests").timers().size());
+        assertEquals(0.0, meters.get("gateway.proxy.inflight").gauge().value());
+    }
+
+    @Test
+    void errorBeforeResponseIsRecordedAsError() {
+        ProxyMetrics.Exchange exchange = metrics.begin("c1", "default", "POST", 0);
+        StepVerifier.create(metrics.observe(exchange, Mono.error(new IllegalStateException("boom"))))
+                .verifyError(IllegalStateException.class);
+
+        assertEquals(1, meters.get("gateway.proxy.requests").tags("method", "POST", "status", "ERROR").timer().count());
+    }
+
+    @Test
+    void withoutRegistryEverythingIsNoop() {
+        ProxyMetrics noop = new ProxyMetrics(null, System::nanoTime);
+        ProxyMetrics.Exchange exchange = noop.begin("c1", "default", "GET", 0);
+        exchange.requestBytes(10);
+        exchange.headers(new ProxyResponse());
+        noop.rejected("forbidden");
+        StepVerifier.create(noop.observe(exchange, Mono.just(ResponseEntity.ok().<Flux<DataBuffer>>build())))
+                .expectNextMatches(e -> e.getBody() == null)
+                .verifyComplete();
+        assertNull(meters.find("gateway.proxy.requests").timer());
+    }
+
+    private static DataBuffer body(String s) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
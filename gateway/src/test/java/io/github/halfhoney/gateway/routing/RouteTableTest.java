@@ -0,0 +1,130 @@
+package io.github.halfhoney.gateway.routing;
+
+import com.achance.gateway.common.dto.Lane;
+import io.github.halfhoney.gateway.config.GatewayProxyProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteTableTest {
+
+    @Test
+    void firstDeclaredPrefixWinsLikeLinearScan() {
+        GatewayProxyProperties.ClientPolicy policy = new GatewayProxyProperties.ClientPolicy();
+        policy.setRoutes(List.of(route("/api", "http://a"), route("/api/v2", "http://b"), route("/open", "http://c")));
+        policy.setDefaultTargetBaseUrl("http://client-default");
+        ClientRoutes routes = compile(policy).client("c1");
+
+        assertEquals("http://a", routes.resolveTarget("/api/v2/users"));
+        assertEquals("http://c", routes.resolveTarget("/openapi"));
+        assertEquals("http://client-default", routes.resolveTarget("/other"));
+    }
+
+    @Test
+    void matchedRouteExposesPrefixForMetricsAndFallsBackWithoutTarget() {
+        GatewayProxyProperties.ClientPolicy policy = new GatewayProxyProperties.ClientPolicy();
+        policy.setRoutes(List.of(route("/api", null), route("/open", "http://c")));
+        policy.setDefaultTargetBaseUrl("http://client-default");
+        ClientRoutes routes = compile(policy).client("c1");
+
+        GatewayProxyProperties.Route api = routes.matchRoute("/api/x");
+        assertEquals("/api", api.getPrefix());
+        assertEquals("http://client-default", routes.resolveTarget(api));
+        assertEquals("/open", routes.matchRoute("/open/1").getPrefix());
+        assertNull(routes.matchRoute("/other"));
+    }
+
+    @Test
+    void laterShorterPrefixDoesNotOverrideEarlierLongerOne() {
+        GatewayProxyProperties.ClientPolicy policy = new GatewayProxyProperties.ClientPolicy();
+        policy.setRoutes(List.of(route("/api/v2", "http://b"), route("/api", "http://a")));
+        ClientRoutes routes = compile(policy).client("c1");
+
+        assertEquals("http://b", routes.resolveTarget("/api/v2/x"));
+        assertEquals("http://a", routes.resolveTarget("/api/v1/x"));
+    }
+
+    @Test
+    void unknownClientUsesGlobalDefaults() {
+        RouteTable table = compile(new GatewayProxyProperties.ClientPolicy());
+        ClientRoutes routes = table.client("unknown");
+        assertEquals("http://global", routes.resolveTarget("/x"));
+        assertEquals(30_000, routes.getTimeoutMs());
+        assertTrue(routes.isMethodAllowed(HttpMethod.DELETE));
+        assertTrue(routes.isPathAllowed("/anything"));
+    }
+
+    @Test
+    void aclMethodsAndPrefixes() {
+        GatewayProxyProperties.ClientPolicy policy = new GatewayProxyProperties.ClientPolicy();
+        policy.setAllowedMethods(List.of("get", "POST", "PROPFIND"));
+        policy.setAllowedPathPrefixes(List.of("/open", "/pub"));
+        policy.setTimeoutMs(5_000);
+        policy.setEnabled(false);
+        ClientRoutes routes = compile(policy).client("c1");
+
+        assertFalse(routes.isEnabled());
+        assertEquals(5_000, routes.getTimeoutMs());
+        assertTrue(routes.isMethodAllowed(HttpMethod.GET));
+        assertTrue(routes.isMethodAllowed(HttpMethod.POST));
+        assertTrue(routes.isMethodAllowed(HttpMethod.valueOf("PROPFIND")));
+        assertFalse(routes.isMethodAllowed(HttpMethod.DELETE));
+        assertTrue(routes.isPathAllowed("/open/1"));
+        assertTrue(routes.isPathAllowed("/public"));
+        assertFalse(routes.isPathAllowed("/op"));
+        assertFalse(routes.isPathAllowed("/admin"));
+    }
+
+    @Test
+    void firstMatchingLaneRuleWinsAndAllConditionsMustHold() {
+        GatewayProxyProperties.LaneRule downloads = new GatewayProxyProperties.LaneRule();
+        downloads.setPathPrefixes(List.of("/files", "/export"));
+        downloads.setMethods(List.of("get"));
+        GatewayProxyProperties.LaneRule pinned = new GatewayProxyProperties.LaneRule();
+        pinned.setLane(Lane.INTERACTIVE);
+        pinned.setPathPrefixes(List.of("/files/meta"));
+        GatewayProxyProperties.LaneRule uploads = new GatewayProxyProperties.LaneRule();
+        uploads.setMinRequestBytes(1_048_576L);
+        GatewayProxyProperties.ClientPolicy policy = new GatewayProxyProperties.ClientPolicy();
+        policy.setLanes(List.of(downloads, pinned, uploads));
+        ClientRoutes routes = compile(policy).client("c1");
+
+        assertEquals(Lane.BULK, routes.lane("GET", "/files/a.zip", -1));
+        // 先声明的规则优先，即便后面的规则前缀更长
+        assertEquals(Lane.BULK, routes.lane("GET", "/files/meta/1", -1));
+        assertEquals(Lane.INTERACTIVE, routes.lane("HEAD", "/files/meta/1", -1));
+        assertEquals(Lane.INTERACTIVE, routes.lane("PUT", "/files/a.zip", 1024));
+        assertEquals(Lane.BULK, routes.lane("PUT", "/files/a.zip", 2_000_000));
+        // 长度未知的请求体不满足大小条件
+        assertEquals(Lane.INTERACTIVE, routes.lane("POST", "/upload", -1));
+        assertEquals(Lane.INTERACTIVE, compile(new GatewayProxyProperties.ClientPolicy()).client("other").lane("GET", "/files/x", -1));
+    }
+
+    @Test
+    void blankClientDefaultDoesNotFallBackToGlobal() {
+        GatewayProxyProperties.ClientPolicy policy = new GatewayProxyProperties.ClientPolicy();
+        policy.setDefaultTargetBaseUrl(" ");
+        assertNull(compile(policy).client("c1").resolveTarget("/x"));
+    }
+
+    private RouteTable compile(GatewayProxyProperties.ClientPolicy policy) {
+        GatewayProxyProperties props = new GatewayProxyProperties();
+        props.setDefaultTargetBaseUrl("http://global");
+        props.setClients(Map.of("c1", policy));
+        return RouteTable.compile(props, 1);
+    }
+
+    private GatewayProxyProperties.Route route(String prefix, String target) {
+        GatewayProxyProperties.Route r = new GatewayProxyProperties.Route();
+        r.setPrefix(prefix);
+        r.setTargetBaseUrl(target);
+        return r;
+    }
+}
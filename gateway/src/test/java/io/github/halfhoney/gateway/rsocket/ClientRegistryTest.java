@@ -0,0 +1,177 @@
+package io.github.halfhoney.gateway.rsocket;
+
+import com.achance.gateway.common.dto.Lane;
+import io.rsocket.RSocket;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ClientRegistryTest {
+
+    private final ClientRegistry registry = new ClientRegistry();
+
+    @Test
+    void closingOldConnectionKeepsNewerOne() {
+        Sinks.Empty<Void> firstClose = Sinks.empty();
+        AgentConnection first = registry.register("c1", requester(firstClose));
+        AgentConnection second = registry.register("c1", requester(Sinks.empty()));
+        assertEquals(List.of(first, second), registry.connections("c1"));
+
+        firstClose.tryEmitEmpty();
+
+        assertEquals(List.of(second), registry.connections("c1"));
+        assertSame(second, registry.select("c1"));
+    }
+
+    @Test
+    void lastConnectionClosedMeansNotConnected() {
+        Sinks.Empty<Void> close = Sinks.empty();
+        registry.register("c1", requester(close));
+        close.tryEmitEmpty();
+        assertNull(registry.select("c1"));
+    }
+
+    @Test
+    void requestWithinGracePeriodResumesOnReRegister() {
+        AtomicLong now = new AtomicLong();
+        ClientRegistry graceful = new ClientRegistry(null, 3_000, now::get);
+        Sinks.Empty<Void> close = Sinks.empty();
+        graceful.register("c1", requester(close));
+        close.tryEmitEmpty();
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        StepVerifier.withVirtualTime(() -> graceful.awaitReconnect("c1", Duration.ofSeconds(30)))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(500))
+                .then(() -> graceful.register("c1", requester(Sinks.empty())))
+                .expectNextMatches(conn -> "c1".equals(conn.getClientId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void graceWaitIsBoundedByRemainingGraceAndDeadline() {
+        AtomicLong now = new AtomicLong();
+        ClientRegistry graceful = new ClientRegistry(null, 3_000, now::get);
+        Sinks.Empty<Void> close = Sinks.empty();
+        graceful.register("c1", requester(close));
+        close.tryEmitEmpty();
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        // 宽限期剩余 2s
+        StepVerifier.withVirtualTime(() -> graceful.awaitReconnect("c1", Duration.ofSeconds(30)))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(1_999))
+                .thenAwait(Duration.ofMillis(1))
+                .verifyComplete();
+        // 截止时间更早
+        StepVerifier.withVirtualTime(() -> graceful.awaitReconnect("c1", Duration.ofMillis(300)))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(299))
+                .thenAwait(Duration.ofMillis(1))
+                .verifyComplete();
+    }
+
+    @Test
+    void unknownOrExpiredClientIsNotHeld() {
+        AtomicLong now = new AtomicLong();
+        ClientRegistry graceful = new ClientRegistry(null, 3_000, now::get);
+        StepVerifier.create(graceful.awaitReconnect("never-connected", Duration.ofSeconds(30))).verifyComplete();
+
+        Sinks.Empty<Void> close = Sinks.empty();
+        graceful.register("c1", requester(close));
+        close.tryEmitEmpty();
+        now.addAndGet(Duration.ofSeconds(3).toNanos());
+        StepVerifier.create(graceful.awaitReconnect("c1", Duration.ofSeconds(30))).verifyComplete();
+
+        // 未开启宽限期
+        Sinks.Empty<Void> close2 = Sinks.empty();
+        registry.register("c2", requester(close2));
+        close2.tryEmitEmpty();
+        StepVerifier.create(registry.awaitReconnect("c2", Duration.ofSeconds(30))).verifyComplete();
+    }
+
+    @Test
+    void localClientSnapshotsFollowFirstAndLastConnection() {
+        Sinks.Empty<Void> first = Sinks.empty();
+        Sinks.Empty<Void> second = Sinks.empty();
+        StepVerifier.create(registry.localClients().take(3))
+                .expectNext(Set.of())
+                .then(() -> {
+                    registry.register("c1", requester(first));
+                    // 同一 clientId 的第二条连接不改变集合
+                    registry.register("c1", requester(second));
+                    first.tryEmitEmpty();
+                    second.tryEmitEmpty();
+                })
+                .expectNext(Set.of("c1"))
+                .expectNext(Set.of())
+                .verifyComplete();
+    }
+
+    @Test
+    void prefersLessLoadedConnection() {
+        AgentConnection busy = new AgentConnection("c1", mock(RSocketRequester.class));
+        AgentConnection idle = new AgentConnection("c1", mock(RSocketRequester.class));
+        busy.track(Mono.never()).subscribe();
+        for (int i = 0; i < 20; i++) {
+            assertSame(idle, ClientRegistry.pickLeastLoaded(List.of(busy, idle)));
+        }
+    }
+
+    @Test
+    void selectsWithinLaneAndFallsBackWhenLaneHasNoConnection() {
+        AgentConnection interactive = registry.register("c1", requester(Sinks.empty()));
+        Sinks.Empty<Void> bulkClose = Sinks.empty();
+        AgentConnection bulk = registry.register("c1", requester(bulkClose), Lane.BULK);
+        // bulk 连接更空闲也不会承接 interactive 请求
+        interactive.track(Mono.never()).subscribe();
+        for (int i = 0; i < 20; i++) {
+            assertSame(interactive, registry.select("c1"));
+            assertSame(bulk, registry.select("c1", Lane.BULK));
+        }
+
+        bulkClose.tryEmitEmpty();
+
+        assertSame(interactive, registry.select("c1", Lane.BULK));
+    }
+
+    @Test
+    void prefersConnectionsWhoseAgentReportsTargetUp() {
+        AgentConnection down = registry.register("c1", requester(Sinks.empty()));
+        AgentConnection up = registry.register("c1", requester(Sinks.empty()));
+        down.updateUpstreamHealth(Map.of("http://127.0.0.1:7001", 1_000L));
+        // 目标可用的连接更忙也优先；其他目标不受影响
+        up.track(Mono.never()).subscribe();
+        for (int i = 0; i < 20; i++) {
+            assertSame(up, registry.select("c1", Lane.INTERACTIVE, "http://127.0.0.1:7001/"));
+        }
+        assertSame(down, registry.select("c1", Lane.INTERACTIVE, "http://127.0.0.1:7002"));
+
+        up.updateUpstreamHealth(Map.of("http://127.0.0.1:7001", 1_000L));
+
+        assertTrue(registry.select("c1", Lane.INTERACTIVE, "http://127.0.0.1:7001").isTargetDown("http://127.0.0.1:7001"));
+    }
+
+    private RSocketRequester requester(Sinks.Empty<Void> close) {
+        RSocketRequester requester = mock(RSocketRequester.class);
+        RSocket rsocket = mock(RSocket.class);
+        when(rsocket.onClose()).thenReturn(close.asMono());
+        when(requester.rsocket()).thenReturn(rsocket);
+        return requester;
+    }
+}